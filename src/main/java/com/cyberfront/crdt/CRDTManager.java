@@ -22,15 +22,26 @@
  */
 package com.cyberfront.crdt;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.cyberfront.crdt.LastWriteWins.Delta;
+import com.cyberfront.crdt.log.OperationLog;
 import com.cyberfront.crdt.operation.Operation.OperationType;
 import com.cyberfront.crdt.operation.Operation;
 import com.cyberfront.crdt.operation.OperationManager;
 import com.cyberfront.crdt.sample.manager.GenericManager;
 import com.cyberfront.crdt.sample.manager.JsonManager;
 import com.cyberfront.crdt.sample.simulation.SimCRDTManager;
+import com.cyberfront.crdt.store.MappedSegmentStore;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -50,6 +61,7 @@ import com.github.fge.jsonpatch.diff.JsonDiff;	// Use this with jsonpatch
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY)
 @JsonSubTypes({
     @Type(value = GenericCRDTManager.class, name = "GenericCRDTManager"),
+    @Type(value = ConcurrentCRDTManager.class, name = "ConcurrentCRDTManager"),
     @Type(value = JsonManager.class, name = "JsonManager"),
     @Type(value = GenericManager.class, name = "GenericManager"),
     @Type(value = SimCRDTManager.class, name = "SimCRDTManager")
@@ -68,6 +80,15 @@ public class CRDTManager {
 	@JsonProperty(CRDT)
 	private LastWriteWins crdt;
 	
+	/** The log to which each operation manager pushed is appended before it is delivered; null when operations are not logged */
+	private OperationLog log;
+	
+	/** The acknowledgements of the replicas of the managed object, from which the causally stable timestamp is derived */
+	private final StabilityTracker stability = new StabilityTracker();
+	
+	/** Flag indicating whether to compact the CRDT each time the causally stable timestamp advances; off unless enabled explicitly */
+	private boolean autoCompaction = false;
+	
 	/**
 	 * Default constructor; performs no initialization of components
 	 */
@@ -93,6 +114,128 @@ public class CRDTManager {
 		return crdt;
 	}
 
+	/**
+	 * Retrieve the log to which operation managers pushed to this instance are appended
+	 * @return The operation log, or null if operations are not logged
+	 */
+	@JsonIgnore
+	public OperationLog getLog() {
+		return this.log;
+	}
+	
+	/**
+	 * Rebuild the CRDT by delivering each operation manager held in the log, then append each operation manager pushed afterward to
+	 * the log before it is delivered
+	 * @param log The operation log to replay and then append to
+	 * @throws IOException results when the log cannot be read
+	 */
+	public void recover(OperationLog log) throws IOException {
+		log.replay(this::deliver);
+		this.log = log;
+	}
+	
+	/**
+	 * Retrieve the tracker holding the acknowledgements of the replicas of the managed object
+	 * @return The stability tracker
+	 */
+	@JsonIgnore
+	public StabilityTracker getStability() {
+		return this.stability;
+	}
+	
+	/**
+	 * Retrieve the causally stable timestamp, at or before which every replica has seen every operation
+	 * @return The stable timestamp, or StabilityTracker.UNACKNOWLEDGED if some replica has acknowledged nothing
+	 */
+	@JsonIgnore
+	public long getStableTimestamp() {
+		return this.getStability().getStableTimestamp();
+	}
+	
+	/**
+	 * Record the acknowledgement of a replica that it has received every operation at or before the given timestamp.  When this
+	 * advances the stable timestamp and auto compaction is enabled, the operations at or before the new stable timestamp are compacted.
+	 * Compaction discards the history at or before the stable timestamp, so getDocument(long) can no longer reconstruct the document
+	 * at an earlier timestamp; auto compaction is therefore disabled unless setAutoCompaction(true) is called.
+	 * @param replica The identifier of the replica
+	 * @param timestamp The timestamp the replica acknowledges
+	 * @return The number of operations dropped by compaction
+	 */
+	public long acknowledge(UUID replica, long timestamp) {
+		if (this.getStability().acknowledge(replica, timestamp) && this.isAutoCompaction()) {
+			return this.compact(this.getStableTimestamp());
+		}
+		
+		return 0L;
+	}
+	
+	/**
+	 * Retrieve whether the CRDT is compacted each time the causally stable timestamp advances
+	 * @return True exactly when auto compaction is enabled
+	 */
+	@JsonIgnore
+	public boolean isAutoCompaction() {
+		return this.autoCompaction;
+	}
+	
+	/**
+	 * Set whether the CRDT is compacted each time the causally stable timestamp advances
+	 * @param autoCompaction True to enable auto compaction, false to disable it
+	 */
+	@JsonIgnore
+	public void setAutoCompaction(boolean autoCompaction) {
+		this.autoCompaction = autoCompaction;
+	}
+	
+	/**
+	 * Compact every operation at or before the given stable watermark into the baseline of the CRDT
+	 * @param watermark The latest timestamp of the operations to compact
+	 * @return The number of operations dropped from the CRDT
+	 */
+	public long compact(long watermark) {
+		return this.getCrdt().compact(watermark);
+	}
+	
+	/**
+	 * Merge the state of the CRDT of another replica of the managed object into the CRDT of this one.  The operations merged are not
+	 * appended to the operation log.
+	 * @param other The CRDT of the other replica
+	 * @return The number of operations newly inserted into the CRDT
+	 */
+	public long merge(LastWriteWins other) {
+		return this.getCrdt().merge(other);
+	}
+	
+	/**
+	 * Extract the operations of the CRDT which a peer with the given summary has not been sent
+	 * @param summary The summary of the peer, which maps the origin of each delta it applied to the sequence number of the latest one
+	 * @return The delta holding the operations the peer has not been sent
+	 */
+	public Delta getDelta(Map<UUID, Long> summary) {
+		return this.getCrdt().getDelta(summary);
+	}
+	
+	/**
+	 * Merge a delta extracted from the CRDT of another replica into the CRDT of this one.  The operations merged are not appended to the
+	 * operation log.
+	 * @param delta The delta to merge
+	 * @return The number of operations newly inserted into the CRDT
+	 */
+	public long applyDelta(Delta delta) {
+		return this.getCrdt().applyDelta(delta);
+	}
+	
+	/**
+	 * Move the patches of the UPDATE operations at or before the given horizon out of the heap and into the given store
+	 * @param horizon The latest timestamp of the operations to archive
+	 * @param store The store to hold the archived patches
+	 * @return The number of operations archived
+	 * @throws IOException results when a patch cannot be written to the store
+	 */
+	public long archive(long horizon, MappedSegmentStore store) throws IOException {
+		return this.getCrdt().archive(horizon, store);
+	}
+	
 	/**
 	 * Get the static class ObjectMapper for performing JSON conversions
 	 * @return The static ObjectMapper instance for performing JSON conversions
@@ -146,6 +289,7 @@ public class CRDTManager {
 	 */
 	public void clear() {
 		this.getCrdt().clear();
+		this.getStability().clear();
 	}
 
 	/**
@@ -165,10 +309,63 @@ public class CRDTManager {
 	}
 
 	/**
-	 * Deliver an operation embedded in the OperationManager and based upon the StatusType of that OperationManager
+	 * Deliver an operation embedded in the OperationManager and based upon the StatusType of that OperationManager.  When there is an
+	 * operation log, the OperationManager is appended to it first.
 	 * @param op OperationsManager instance wrapping the operation to persist in this CRDT
 	 */
 	protected void push(OperationManager op) {
+		if (null != this.log) {
+			try {
+				this.log.append(op);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		this.deliver(op);
+	}
+	
+	/**
+	 * Deliver a batch of operations embedded in OperationManagers.  The result is the same as pushing them one at a time, but the batch
+	 * is merged into the CRDT at once, so the materialized document is brought up to date at most once for the whole batch.  When there
+	 * is an operation log, every OperationManager is appended to it first.
+	 * @param ops OperationManager instances wrapping the operations to persist in this CRDT
+	 */
+	protected void pushAll(Collection<? extends OperationManager> ops) {
+		List<Operation> adds = new ArrayList<>(ops.size());
+		List<Operation> rems = new ArrayList<>();
+		
+		for (OperationManager op : ops) {
+			if (null != this.log) {
+				try {
+					this.log.append(op);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+			switch(op.getStatus()) {
+			case APPROVED:
+			case PENDING:
+				adds.add(op.getOperation());
+				break;
+			case REJECTED:
+				rems.add(op.getOperation());
+				break;
+			default:
+				break;
+			}
+		}
+		
+		this.getCrdt().addOperations(adds, rems);
+	}
+	
+	/**
+	 * Deliver an operation embedded in the OperationManager to the CRDT, without logging it, based upon the StatusType of that
+	 * OperationManager
+	 * @param op OperationsManager instance wrapping the operation to deliver to this CRDT
+	 */
+	private void deliver(OperationManager op) {
 		switch(op.getStatus()) {
 		case APPROVED:
 		case PENDING:
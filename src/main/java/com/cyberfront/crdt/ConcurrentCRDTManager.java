@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.cyberfront.crdt.LastWriteWins.Delta;
+import com.cyberfront.crdt.log.OperationLog;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.store.MappedSegmentStore;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The ConcurrentCRDTManager class is a CRDTManager which may be shared between threads.  Every change to the CRDT is serialized by a
+ * lock held for the object, and each change discards the immutable Snapshot of the materialized document published through a volatile
+ * field.  The first read after a change takes the lock to publish a new snapshot, so a burst of changes materializes the document
+ * once rather than once per change.  Later reads of the current document and flags take no lock; they see the snapshot of the latest
+ * completed change.
+ * 
+ * The CRDT returned by getCrdt() is not itself thread safe, since even its getters populate caches.  Code using it directly while
+ * other threads may change the manager must do so within execute().  The same holds for the StabilityTracker returned by
+ * getStability(); the other accessors of the manager take the lock themselves.
+ */
+public class ConcurrentCRDTManager extends CRDTManager {
+	/**
+	 * The Snapshot class is an immutable view of the CRDT as of a completed change.  The document it holds is the copy the CRDT hands
+	 * out, which the CRDT never modifies, and which callers must not modify either.
+	 */
+	public static final class Snapshot {
+		/** Number of changes made to the manager before this snapshot was published */
+		private final long version;
+		
+		/** The materialized document, or null if there is none */
+		private final JsonNode document;
+		
+		/** Flags indicating which operation types the CRDT included among its effective operations */
+		private final boolean created, read, updated, deleted;
+		
+		/**
+		 * Capture a snapshot of the CRDT.  The caller must hold the lock of the manager.
+		 * @param version Number of changes made to the manager so far
+		 * @param crdt The CRDT to capture
+		 */
+		private Snapshot(long version, LastWriteWins crdt) {
+			JsonNode document = crdt.getDocument();
+			
+			this.version = version;
+			this.document = null == document || document.isNull() ? null : document;
+			this.created = crdt.isCreated();
+			this.read = crdt.isRead();
+			this.updated = crdt.isUpdated();
+			this.deleted = crdt.isDeleted();
+		}
+		
+		/**
+		 * Retrieve the number of changes made to the manager before this snapshot was published
+		 * @return The version of the snapshot
+		 */
+		public long getVersion() {
+			return this.version;
+		}
+		
+		/**
+		 * Retrieve the materialized document.  The document is shared by every reader of this snapshot and must not be modified.
+		 * @return The document, or null if there is none
+		 */
+		public JsonNode getDocument() {
+			return this.document;
+		}
+		
+		/**
+		 * Retrieve whether the CRDT included an effective CREATE operation
+		 * @return True exactly when the CRDT included an effective CREATE operation
+		 */
+		public boolean isCreated() {
+			return this.created;
+		}
+		
+		/**
+		 * Retrieve whether the CRDT included an effective READ operation
+		 * @return True exactly when the CRDT included an effective READ operation
+		 */
+		public boolean isRead() {
+			return this.read;
+		}
+		
+		/**
+		 * Retrieve whether the CRDT included an effective UPDATE operation
+		 * @return True exactly when the CRDT included an effective UPDATE operation
+		 */
+		public boolean isUpdated() {
+			return this.updated;
+		}
+		
+		/**
+		 * Retrieve whether the CRDT included an effective DELETE operation
+		 * @return True exactly when the CRDT included an effective DELETE operation
+		 */
+		public boolean isDeleted() {
+			return this.deleted;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "{\"version\":" + this.getVersion() + ",\"created\":" + this.isCreated() + ",\"read\":" + this.isRead() +
+					",\"updated\":" + this.isUpdated() + ",\"deleted\":" + this.isDeleted() + ",\"document\":" + this.getDocument() + "}";
+		}
+	}
+	
+	/**
+	 * The Change interface is a unit of work performed on the manager while its lock is held
+	 * @param <R> The type of result the change produces
+	 * @param <E> The type of exception the change may throw
+	 */
+	@FunctionalInterface
+	public interface Change<R, E extends Exception> {
+		/**
+		 * Perform the change
+		 * @return The result of the change
+		 * @throws E results when the change fails
+		 */
+		R apply() throws E;
+	}
+	
+	/** The lock serializing every change to the CRDT */
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	/** Number of changes made to the CRDT; guarded by the lock */
+	private long version;
+	
+	/** The snapshot of the latest completed change, or null until it is first read after the change */
+	private volatile Snapshot snapshot;
+	
+	/**
+	 * Default constructor, which manages an empty CRDT.  The CRDT is created here rather than on first use, so threads sharing the
+	 * manager never race to create it.
+	 */
+	public ConcurrentCRDTManager() {
+		this.getCrdt();
+	}
+	
+	/**
+	 * Constructor specifying the CRDT to manage, which manages a copy of the CRDT provided
+	 * @param crdt LastWriteWins CRDT to manage with this instance
+	 */
+	@JsonCreator
+	public ConcurrentCRDTManager(@JsonProperty(CRDT) LastWriteWins crdt) {
+		super(crdt);
+	}
+	
+	/**
+	 * Perform a change on the manager while holding its lock, then discard the published snapshot of the CRDT.  Changes made by
+	 * different threads are applied one at a time.  A change may itself call execute(), in which case the snapshot is discarded once
+	 * the outermost change completes.  The snapshot is discarded even when the change fails part way, which costs nothing until the
+	 * next read.
+	 * @param <R> The type of result the change produces
+	 * @param <E> The type of exception the change may throw
+	 * @param change The change to perform
+	 * @return The result of the change
+	 * @throws E results when the change fails
+	 */
+	public <R, E extends Exception> R execute(Change<R, E> change) throws E {
+		this.lock.lock();
+		
+		try {
+			return change.apply();
+		} finally {
+			if (1 == this.lock.getHoldCount()) {
+				++this.version;
+				this.snapshot = null;
+			}
+			
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Retrieve the snapshot of the latest completed change.  This takes no lock unless the snapshot has yet to be published since the
+	 * change, in which case it takes the lock to materialize the document and publish the snapshot for later reads.
+	 * @return The latest snapshot
+	 */
+	@JsonIgnore
+	public Snapshot getSnapshot() {
+		Snapshot rv = this.snapshot;
+		
+		if (null == rv) {
+			this.lock.lock();
+			
+			try {
+				rv = this.snapshot;
+				
+				if (null == rv) {
+					rv = new Snapshot(this.version, this.getCrdt());
+					this.snapshot = rv;
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Retrieve the current materialized document, without taking the lock.  The document must not be modified.
+	 * @return The current document, or null if there is none
+	 */
+	@JsonIgnore
+	public JsonNode getDocument() {
+		return this.getSnapshot().getDocument();
+	}
+	
+	/**
+	 * Retrieve a copy of the document as it was at the given timestamp.  Historical documents are not held in snapshots, so this takes
+	 * the lock.
+	 * @param timestamp Latest timestamp of the operations to include
+	 * @return A copy of the document at the timestamp, or null if there is none
+	 */
+	public JsonNode getDocument(long timestamp) {
+		return this.inspect(() -> {
+			JsonNode document = this.getCrdt().getDocument(timestamp);
+			return null == document ? null : document.deepCopy();
+		});
+	}
+	
+	/**
+	 * Read the state of the manager while holding its lock.  Unlike execute(), this does not count as a change and leaves the
+	 * published snapshot in place, so the read must not change the CRDT or the stability tracker.
+	 * @param <R> The type of result the read produces
+	 * @param read The read to perform
+	 * @return The result of the read
+	 */
+	private <R> R inspect(Supplier<R> read) {
+		this.lock.lock();
+		
+		try {
+			return read.get();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Deliver an operation manager to the CRDT
+	 * @param mgr The operation manager to deliver
+	 */
+	public void apply(OperationManager mgr) {
+		this.push(mgr);
+	}
+	
+	/**
+	 * Deliver a batch of operation managers to the CRDT as a single change, publishing one snapshot for the whole batch
+	 * @param mgrs The operation managers to deliver
+	 */
+	public void applyAll(Collection<? extends OperationManager> mgrs) {
+		this.pushAll(mgrs);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#push(com.cyberfront.crdt.operation.OperationManager)
+	 */
+	@Override
+	protected void push(OperationManager op) {
+		this.execute(() -> {
+			super.push(op);
+			return null;
+		});
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#pushAll(java.util.Collection)
+	 */
+	@Override
+	protected void pushAll(Collection<? extends OperationManager> ops) {
+		this.execute(() -> {
+			super.pushAll(ops);
+			return null;
+		});
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#recover(com.cyberfront.crdt.log.OperationLog)
+	 */
+	@Override
+	public void recover(OperationLog log) throws IOException {
+		this.execute(() -> {
+			super.recover(log);
+			return null;
+		});
+	}
+	
+	/**
+	 * Retrieve the tracker holding the acknowledgements of the replicas of the managed object.  The tracker is not thread safe, so
+	 * while other threads may use the manager it must only be changed or read within execute().
+	 * @return The stability tracker
+	 */
+	@Override
+	@JsonIgnore
+	public StabilityTracker getStability() {
+		return this.inspect(super::getStability);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#getStableTimestamp()
+	 */
+	@Override
+	@JsonIgnore
+	public long getStableTimestamp() {
+		return this.inspect(super::getStableTimestamp);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#isAutoCompaction()
+	 */
+	@Override
+	@JsonIgnore
+	public boolean isAutoCompaction() {
+		return this.inspect(super::isAutoCompaction);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#setAutoCompaction(boolean)
+	 */
+	@Override
+	@JsonIgnore
+	public void setAutoCompaction(boolean autoCompaction) {
+		this.inspect(() -> {
+			super.setAutoCompaction(autoCompaction);
+			return null;
+		});
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#acknowledge(java.util.UUID, long)
+	 */
+	@Override
+	public long acknowledge(UUID replica, long timestamp) {
+		return this.execute(() -> super.acknowledge(replica, timestamp));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#compact(long)
+	 */
+	@Override
+	public long compact(long watermark) {
+		return this.execute(() -> super.compact(watermark));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#merge(com.cyberfront.crdt.LastWriteWins)
+	 */
+	@Override
+	public long merge(LastWriteWins other) {
+		return this.execute(() -> super.merge(other));
+	}
+	
+	/**
+	 * Extract the operations of the CRDT which a peer with the given summary has not been sent.  This only reads the CRDT, so it takes
+	 * the lock without counting as a change or discarding the published snapshot.
+	 * @param summary The summary of the peer, which maps the origin of each delta it applied to the sequence number of the latest one
+	 * @return The delta holding the operations the peer has not been sent
+	 */
+	@Override
+	public Delta getDelta(Map<UUID, Long> summary) {
+		return this.inspect(() -> super.getDelta(summary));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#applyDelta(com.cyberfront.crdt.LastWriteWins.Delta)
+	 */
+	@Override
+	public long applyDelta(Delta delta) {
+		return this.execute(() -> super.applyDelta(delta));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#archive(long, com.cyberfront.crdt.store.MappedSegmentStore)
+	 */
+	@Override
+	public long archive(long horizon, MappedSegmentStore store) throws IOException {
+		return this.execute(() -> super.archive(horizon, store));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#clear()
+	 */
+	@Override
+	public void clear() {
+		this.execute(() -> {
+			super.clear();
+			return null;
+		});
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#isCreated()
+	 */
+	@Override
+	@JsonIgnore
+	public boolean isCreated() {
+		return this.getSnapshot().isCreated();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#isRead()
+	 */
+	@Override
+	@JsonIgnore
+	public boolean isRead() {
+		return this.getSnapshot().isRead();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#isUpdated()
+	 */
+	@Override
+	@JsonIgnore
+	public boolean isUpdated() {
+		return this.getSnapshot().isUpdated();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#isDeleted()
+	 */
+	@Override
+	@JsonIgnore
+	public boolean isDeleted() {
+		return this.getSnapshot().isDeleted();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return this.inspect(() -> super.equals(obj));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return this.inspect(super::hashCode);
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#getSegment()
+	 */
+	@Override
+	protected String getSegment() {
+		return this.inspect(() -> super.getSegment() + ",\"snapshot\":" + this.getSnapshot());
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.CRDTManager#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.inspect(super::toString);
+	}
+}
@@ -23,19 +23,35 @@
 package com.cyberfront.crdt;
 
 import java.io.IOException;										// Use this with jsonpatch
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Set;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.ReplayEngine;
 import com.cyberfront.crdt.operation.Operation.OperationType;
+import com.cyberfront.crdt.store.MappedSegmentStore;
 import com.cyberfront.crdt.support.Support;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fge.jsonpatch.JsonPatchException;				// Use this with jsonpatch
@@ -45,6 +61,9 @@ import com.github.fge.jsonpatch.JsonPatchException;				// Use this with jsonpatc
  * The LastWriteWins class implements a Last Write Wins commutative CRDT.  Operations are stored and recalled in time stamp
  * order.  There is both an add and remove set, where removing an operation takes precedence over adding.  It also contains
  * a list of invalid operations which is used to hold operations which fail during reconstitution of the underlying data element
+ * 
+ * Once every operation at or before some timestamp is known to have arrived, the operations up to that timestamp can be compacted into
+ * a Baseline, which holds the document they produce.  Replays then start from the Baseline rather than from the first operation.
  */
 public class LastWriteWins extends OperationTwoSet {
 	/**
@@ -56,6 +75,15 @@ public class LastWriteWins extends OperationTwoSet {
 	 * 
 	 * TrialResults are used only for generating final values.  Since READ operations do not change the value of the resulting object, they are 
 	 * filtered from collection of operations used to generate the resulting JSON representation of the reconstructed object.
+	 * 
+	 * A TrialResult held by a LastWriteWins instance is kept current as operations arrive.  Operations which follow the last one processed
+	 * are applied directly to the current document, so only operations landing in the middle of the timeline, or the rejection of an
+	 * operation already processed, require the operations to be replayed.  Replays start from the latest checkpoint the CRDT holds at or
+	 * before the timestamp of the TrialResult, and the TrialResult records new checkpoints in the CRDT as it processes operations.
+	 * Operations are applied in place by a ReplayEngine, so the document is copied only when it is handed out or recorded in a checkpoint.
+	 * A checkpoint records a copy of its own, and the engine copies the document it starts from, so a document handed out never shares
+	 * nodes with a checkpoint or the Baseline.
+	 * Without a checkpoint, replays start from the Baseline of the CRDT if it has one.
 	 */
 	public static class TrialResult {
 		
@@ -63,21 +91,33 @@ public class LastWriteWins extends OperationTwoSet {
 //		@SuppressWarnings("unused")
 		private static final boolean LOG_JSON_PROCESSING_EXCEPTIONS = false;
 		
-		/** The set of operations to process; they are processed in timestamp order */
-		private final Set<Operation> operations;
+		/** The CRDT whose operations this TrialResult processes, and in which it records checkpoints */
+		private final LastWriteWins crdt;
+		
+		/** The last operation processed, or the position of the checkpoint the replay started from; null when there is neither */
+		private Operation last;
 		
 		/** The set of invalid operations detected.  Ideally this is empty, but there are reasons why it may not be empty. */
-		private final Collection<Operation> invalidOperations;
+		private final NavigableSet<Operation> invalidOperations;
 
 		/** Latest operation timestamp to include among the applicable operations */
 		private final long timestamp;
 
-		/** JsonNode document containing the result of executing the sequence of operations */
-		private final JsonNode document;
+		/** Number of effective operations of each OperationType, indexed by the ordinal of the OperationType */
+		private final long[] effectiveCounts;
+
+		/** The engine which applies the sequence of operations in place to produce the resulting document */
+		private ReplayEngine engine;
+		
+		/** Number of operations processed since the most recent checkpoint */
+		private int pending;
+		
+		/** Timestamp of the most recent checkpoint, or of the first operation when there is no checkpoint */
+		private long checkpointTimestamp;
 		
 		/**
-		 * Instantiates a new trial result given a CRDT to process; the operations list is copied from
-		 * the CRDT instance to be processed and used to generate the resulting JSON object.
+		 * Instantiates a new trial result given a CRDT to process; the operations are read in place from the effective operations of
+		 * the CRDT and used to generate the resulting JSON object.
 		 *
 		 * @param crdt The CRDT to process
 		 */
@@ -86,42 +126,128 @@ public class LastWriteWins extends OperationTwoSet {
 		}
 		
 		/**
-		 * Instantiates a new trial result given a CRDT to process; the operations list is copied from
-		 * the CRDT instance to be processed and used to generate the resulting JSON object.
+		 * Instantiates a new trial result given a CRDT to process; the operations are read in place from the effective operations of
+		 * the CRDT, from the latest checkpoint at or before the timestamp, and used to generate the resulting JSON object.
 		 *
 		 * @param timestamp Latest timestamp to process operations
 		 * @param crdt The CRDT to process
 		 */
 		public TrialResult(LastWriteWins crdt, long timestamp) {
+			this.crdt = crdt;
 			this.timestamp = timestamp;
-			this.operations = new TreeSet<>();
-			this.operations.addAll(
-					crdt.getOpsSet().
-					stream().
-					filter(op -> (OperationType.READ != op.getType())).
-					filter(op -> (op.getTimestamp() <= this.timestamp)).
-					collect(Collectors.toList()));
 			
-			JsonNode doc = null;
+			Checkpoint start = crdt.getCheckpoint(timestamp);
+			NavigableSet<Operation> replay = this.getRange();
+
 			this.invalidOperations = new TreeSet<>();
+			this.pending = 0;
+
+			if (null != start) {
+				this.engine = new ReplayEngine(start.getDocument());
+				this.invalidOperations.addAll(start.getInvalidOperations());
+				this.effectiveCounts = start.getEffectiveCounts().clone();
+				this.checkpointTimestamp = start.getPosition().getTimestamp();
+				this.last = start.getPosition();
+				replay = replay.tailSet(start.getPosition(), false);
+			} else if (null != crdt.getBaseline()) {
+				this.engine = new ReplayEngine(crdt.getBaseline().document);
+				this.effectiveCounts = crdt.getBaseline().effectiveCounts.clone();
+				this.checkpointTimestamp = crdt.getBaseline().getWatermark();
+			} else {
+				this.effectiveCounts = new long[OperationType.values().length];
+				this.engine = new ReplayEngine();
+				this.checkpointTimestamp = replay.isEmpty() ? 0L : replay.first().getTimestamp();
+			}
 			
-			for (Operation op : this.operations) {
-				try {
-					doc = op.processOperation(doc);
-				} catch (JsonPatchException | IOException e) {
-					if (LOG_JSON_PROCESSING_EXCEPTIONS) {
-						logger.error(e);
-						logger.error(" op: " + op.toString());
-						logger.error("doc: " + document);
-						for (StackTraceElement el : e.getStackTrace()) {
-							logger.error(el);
-						}
+			for (Operation op : replay) {
+				if (OperationType.READ != op.getType()) {
+					this.process(op);
+				}
+			}
+		}
+		
+		/**
+		 * Retrieve a live view of the effective operations of the CRDT at or before the timestamp of this TrialResult, READ operations
+		 * included.  No operation has a negative timestamp, so the view is empty for one.
+		 *
+		 * @return The effective operations of the CRDT at or before the timestamp
+		 */
+		private NavigableSet<Operation> getRange() {
+			return 0 > this.timestamp ? Collections.emptyNavigableSet() : this.crdt.getOpsSet().headSet(latestAt(this.timestamp), true);
+		}
+
+		/**
+		 * Apply a single operation to the current document.  Operations which cannot be applied are recorded as invalid and
+		 * leave the document unchanged.
+		 *
+		 * @param op The operation to apply to the current document
+		 */
+		private void process(Operation op) {
+			this.last = op;
+			
+			try {
+				this.engine.apply(op);
+				++this.effectiveCounts[op.getType().ordinal()];
+			} catch (JsonPatchException | IOException e) {
+				if (LOG_JSON_PROCESSING_EXCEPTIONS) {
+					logger.error(e);
+					logger.error(" op: " + op.toString());
+					logger.error("doc: " + this.engine.getDocument());
+					for (StackTraceElement el : e.getStackTrace()) {
+						logger.error(el);
 					}
-					this.invalidOperations.add(op);
 				}
+				this.invalidOperations.add(op);
+			}
+			
+			this.checkpoint(op);
+		}
+		
+		/**
+		 * Record a checkpoint in the CRDT following the given operation if enough operations or time have passed since the most
+		 * recent checkpoint.
+		 *
+		 * @param op The operation most recently processed
+		 */
+		private void checkpoint(Operation op) {
+			++this.pending;
+			
+			if (this.crdt.isCheckpointDue(this.pending, op.getTimestamp() - this.checkpointTimestamp)) {
+				this.crdt.addCheckpoint(op, this.engine.copyDocument(), this.invalidOperations, this.effectiveCounts);
+				this.pending = 0;
+				this.checkpointTimestamp = op.getTimestamp();
 			}
+		}
+		
+		/**
+		 * Determine whether the given operation has any bearing on the result of this TrialResult.  READ operations and operations
+		 * later than the timestamp of this TrialResult do not.
+		 *
+		 * @param op The operation to evaluate
+		 * @return True exactly when the operation could change the document or the invalid operations of this TrialResult
+		 */
+		private boolean isAffectedBy(Operation op) {
+			return OperationType.READ != op.getType() && op.getTimestamp() <= this.timestamp;
+		}
+
+		/**
+		 * Bring this TrialResult up to date with an operation newly added to the effective set of the CRDT.  When the operation
+		 * follows every operation already processed, only that operation is applied to the current document.  An operation which
+		 * belongs somewhere in the middle of the timeline cannot be handled this way, and the caller must rebuild the TrialResult.
+		 *
+		 * @param op The operation newly added to the effective set of operations
+		 * @return True exactly when this TrialResult remains valid after the operation is taken into account
+		 */
+		private boolean append(Operation op) {
+			if (!this.isAffectedBy(op)) {
+				return true;
+			} else if (null != this.last && this.last.compareTo(op) >= 0) {
+				return false;
+			}
+
+			this.process(op);
 			
-			this.document = doc;
+			return true;
 		}
 
 		/**
@@ -130,25 +256,28 @@ public class LastWriteWins extends OperationTwoSet {
 		 * @return The document resulting from running the operations in this TrialResult
 		 */
 		public JsonNode getDocument() {
-			return this.document;
+			return this.engine.getDocument();
 		}
 
 		/**
-		 * Retrieve the set of operations in this TrialResult.  
+		 * Retrieve the set of operations in this TrialResult, which are the effective operations of the CRDT other than READ operations
+		 * at or before its timestamp.  The result is a read only copy, which does not reflect operations appended later.
 		 *
 		 * @return A the set of operations in this TrialResult
 		 */
 		public Collection<Operation> getOperations() {
-			return Operation.copy(this.operations);
+			return Collections.unmodifiableNavigableSet(this.getRange().stream().
+					filter(op -> OperationType.READ != op.getType()).
+					collect(Collectors.toCollection(TreeSet::new)));
 		}
 		
 		/**
-		 * Gets the invalid.
+		 * Retrieve the invalid operations detected.  The result is a read only view which reflects operations appended later.
 		 *
-		 * @return the invalid
+		 * @return the invalid operations
 		 */
 		public Collection<Operation> getInvalidOperations() {
-			return Operation.copy(this.invalidOperations);
+			return Collections.unmodifiableNavigableSet(this.invalidOperations);
 		}
 		
 		/**
@@ -156,9 +285,20 @@ public class LastWriteWins extends OperationTwoSet {
 		 * @return The collection of operations which can be processed
 		 */
 		public Collection<Operation> getEffectiveOperations() {
-			Collection<Operation> ops = this.getOperations();
-			ops.removeAll(this.invalidOperations);
-			return ops;
+			return this.getRange().stream().
+					filter(op -> OperationType.READ != op.getType()).
+					filter(op -> !this.invalidOperations.contains(op)).
+					collect(Collectors.toCollection(TreeSet::new));
+		}
+
+		/**
+		 * Retrieve the number of effective operations of the given OperationType
+		 * 
+		 * @param type The OperationType to count
+		 * @return The number of effective operations of the given OperationType
+		 */
+		public long countEffectiveOperations(OperationType type) {
+			return this.effectiveCounts[type.ordinal()];
 		}
 
 		/**
@@ -183,7 +323,7 @@ public class LastWriteWins extends OperationTwoSet {
 			sb.append("\"invalid\":" + Support.convert(this.getInvalidOperations()) + ",");
 			sb.append("\"effective\":" + Support.convert(this.getEffectiveOperations()) + ",");
 			sb.append("\"timestamp\":" + this.getTimestamp() + ",");
-			sb.append("\"document\":" + (null == this.document ? "null" : this.document.toString()));
+			sb.append("\"document\":" + (null == this.getDocument() ? "null" : this.getDocument().toString()));
 			
 			return sb.toString();
 		}
@@ -196,12 +336,374 @@ public class LastWriteWins extends OperationTwoSet {
 		}
 	}
 
+	/**
+	 * The Checkpoint class holds the document and invalid operations which result from processing every effective operation up to and
+	 * including a given operation.  Replays can start from a Checkpoint rather than from the first operation.
+	 */
+	private static final class Checkpoint {
+		/** The last operation processed to produce this checkpoint */
+		private final Operation position;
+		
+		/** The document resulting from processing every operation up to and including the position */
+		private final JsonNode document;
+		
+		/** The invalid operations detected while processing the operations up to and including the position */
+		private final Collection<Operation> invalidOperations;
+		
+		/** The number of effective operations of each OperationType up to and including the position */
+		private final long[] effectiveCounts;
+		
+		/**
+		 * Instantiates a new checkpoint
+		 * 
+		 * @param position The last operation processed to produce the checkpoint
+		 * @param document The document resulting from processing the operations up to and including the position, which the checkpoint
+		 * owns and no caller may retain
+		 * @param invalidOperations The invalid operations detected up to and including the position
+		 * @param effectiveCounts The number of effective operations of each OperationType up to and including the position
+		 */
+		private Checkpoint(Operation position, JsonNode document, Collection<Operation> invalidOperations, long[] effectiveCounts) {
+			this.position = position;
+			this.document = document;
+			this.invalidOperations = invalidOperations.isEmpty()
+					? Collections.emptySet()
+					: Collections.unmodifiableSet(new TreeSet<>(invalidOperations));
+			this.effectiveCounts = effectiveCounts.clone();
+		}
+
+		/**
+		 * Retrieve the last operation processed to produce this checkpoint
+		 * @return The last operation processed to produce this checkpoint
+		 */
+		private Operation getPosition() {
+			return this.position;
+		}
+
+		/**
+		 * Retrieve the document resulting from processing the operations up to and including the position.  It is only ever given to a
+		 * ReplayEngine, which copies it, and is never handed out.
+		 * @return The document for this checkpoint
+		 */
+		private JsonNode getDocument() {
+			return this.document;
+		}
+
+		/**
+		 * Retrieve the invalid operations detected up to and including the position
+		 * @return The invalid operations for this checkpoint
+		 */
+		private Collection<Operation> getInvalidOperations() {
+			return this.invalidOperations;
+		}
+
+		/**
+		 * Retrieve the number of effective operations of each OperationType up to and including the position
+		 * @return The effective operation counts for this checkpoint, indexed by the ordinal of the OperationType
+		 */
+		private long[] getEffectiveCounts() {
+			return this.effectiveCounts;
+		}
+	}
+	
+	/**
+	 * The Baseline class holds the result of compacting the operations of a LastWriteWins CRDT at or before a watermark timestamp.  It
+	 * holds the document those operations produce, along with the number of operations of each OperationType they contributed, so the
+	 * operations themselves can be discarded.
+	 */
+	public static final class Baseline {
+		/** Property label for the watermark property */
+		private static final String WATERMARK = "watermark";
+		
+		/** Property label for the document property */
+		private static final String DOCUMENT = "document";
+		
+		/** Property label for the effective counts property */
+		private static final String EFFECTIVE = "effective";
+		
+		/** Property label for the folded counts property */
+		private static final String FOLDED = "folded";
+		
+		/** Latest timestamp of the operations compacted into this baseline */
+		private final long watermark;
+		
+		/** The document resulting from processing the operations compacted into this baseline, or null if there is none */
+		private final JsonNode document;
+		
+		/** Number of effective operations of each OperationType processed to produce the document */
+		private final long[] effectiveCounts;
+		
+		/** Number of operations of each OperationType removed from the effective set of the CRDT */
+		private final long[] foldedCounts;
+		
+		/**
+		 * Instantiates a new baseline
+		 * 
+		 * @param watermark Latest timestamp of the operations compacted into the baseline
+		 * @param document The document resulting from processing the operations compacted
+		 * @param effectiveCounts Number of effective operations of each OperationType processed to produce the document
+		 * @param foldedCounts Number of operations of each OperationType removed from the effective set of the CRDT
+		 */
+		@JsonCreator
+		public Baseline(@JsonProperty(WATERMARK) long watermark,
+						@JsonProperty(DOCUMENT) JsonNode document,
+						@JsonProperty(EFFECTIVE) long[] effectiveCounts,
+						@JsonProperty(FOLDED) long[] foldedCounts) {
+			this.watermark = watermark;
+			this.document = null == document || document.isNull() ? null : document.deepCopy();
+			this.effectiveCounts = Arrays.copyOf(effectiveCounts, OperationType.values().length);
+			this.foldedCounts = Arrays.copyOf(foldedCounts, OperationType.values().length);
+		}
+
+		/**
+		 * Retrieve the latest timestamp of the operations compacted into this baseline
+		 * @return The watermark of this baseline
+		 */
+		@JsonProperty(WATERMARK)
+		public long getWatermark() {
+			return this.watermark;
+		}
+
+		/**
+		 * Retrieve a copy of the document resulting from processing the operations compacted into this baseline
+		 * @return The document for this baseline, or null if there is none
+		 */
+		@JsonProperty(DOCUMENT)
+		public JsonNode getDocument() {
+			return null == this.document ? null : this.document.deepCopy();
+		}
+
+		/**
+		 * Retrieve the number of effective operations of each OperationType processed to produce the document
+		 * @return The effective operation counts, indexed by the ordinal of the OperationType
+		 */
+		@JsonProperty(EFFECTIVE)
+		public long[] getEffectiveCounts() {
+			return this.effectiveCounts.clone();
+		}
+
+		/**
+		 * Retrieve the number of operations of each OperationType removed from the effective set of the CRDT
+		 * @return The folded operation counts, indexed by the ordinal of the OperationType
+		 */
+		@JsonProperty(FOLDED)
+		public long[] getFoldedCounts() {
+			return this.foldedCounts.clone();
+		}
+		
+		/**
+		 * Retrieve the number of operations of the given OperationType removed from the effective set of the CRDT
+		 * @param type The OperationType to count
+		 * @return The number of folded operations of the given OperationType
+		 */
+		private long countFolded(OperationType type) {
+			return this.foldedCounts[type.ordinal()];
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			
+			sb.append("{\"" + WATERMARK + "\":" + this.getWatermark() + ",");
+			sb.append("\"" + EFFECTIVE + "\":" + Arrays.toString(this.effectiveCounts) + ",");
+			sb.append("\"" + FOLDED + "\":" + Arrays.toString(this.foldedCounts) + ",");
+			sb.append("\"" + DOCUMENT + "\":" + (null == this.document ? "null" : this.document.toString()) + "}");
+			
+			return sb.toString();
+		}
+	}
+	
+	/**
+	 * The Delta class holds the operations a LastWriteWins CRDT inserted into its ADD and REMOVE sets after a given sequence number, so a
+	 * peer can be sent only what it lacks rather than the whole of both sets.  It identifies the replica it came from and the sequence
+	 * number it extends to, which the receiving replica records in its summary so the next delta it requests starts where this one ends.
+	 * The baseline of the source is included only when the delta reaches back before the source was last compacted.
+	 */
+	public static final class Delta {
+		/** Property label for the origin property */
+		private static final String ORIGIN = "origin";
+		
+		/** Property label for the since property */
+		private static final String SINCE = "since";
+		
+		/** Property label for the sequence property */
+		private static final String SEQUENCE = "sequence";
+		
+		/** Identifier of the replica from which the delta was extracted */
+		private final UUID origin;
+		
+		/** The sequence number following which the operations of the delta were inserted */
+		private final long since;
+		
+		/** The sequence number of the most recent insertion included in the delta */
+		private final long sequence;
+		
+		/** The operations inserted into the ADD set of the source */
+		private final Collection<Operation> adds;
+		
+		/** The operations inserted into the REMOVE set of the source */
+		private final Collection<Operation> rems;
+		
+		/** The baseline of the source, or null if the receiver already holds it */
+		private final Baseline baseline;
+		
+		/**
+		 * Instantiates a new delta
+		 * 
+		 * @param origin Identifier of the replica from which the delta was extracted
+		 * @param since The sequence number following which the operations of the delta were inserted
+		 * @param sequence The sequence number of the most recent insertion included in the delta
+		 * @param adds The operations inserted into the ADD set of the source
+		 * @param rems The operations inserted into the REMOVE set of the source
+		 * @param baseline The baseline of the source, or null if the receiver already holds it
+		 */
+		@JsonCreator
+		public Delta(@JsonProperty(ORIGIN) UUID origin,
+					 @JsonProperty(SINCE) long since,
+					 @JsonProperty(SEQUENCE) long sequence,
+					 @JsonProperty(ADDSET) Collection<Operation> adds,
+					 @JsonProperty(REMSET) Collection<Operation> rems,
+					 @JsonProperty(BASELINE) Baseline baseline) {
+			this.origin = origin;
+			this.since = since;
+			this.sequence = sequence;
+			this.adds = null == adds ? Collections.emptyList() : Collections.unmodifiableCollection(adds);
+			this.rems = null == rems ? Collections.emptyList() : Collections.unmodifiableCollection(rems);
+			this.baseline = baseline;
+		}
+
+		/**
+		 * Retrieve the identifier of the replica from which the delta was extracted
+		 * @return The identifier of the source replica
+		 */
+		@JsonProperty(ORIGIN)
+		public UUID getOrigin() {
+			return this.origin;
+		}
+
+		/**
+		 * Retrieve the sequence number following which the operations of the delta were inserted
+		 * @return The sequence number the delta extends from
+		 */
+		@JsonProperty(SINCE)
+		public long getSince() {
+			return this.since;
+		}
+
+		/**
+		 * Retrieve the sequence number of the most recent insertion included in the delta
+		 * @return The sequence number the delta extends to
+		 */
+		@JsonProperty(SEQUENCE)
+		public long getSequence() {
+			return this.sequence;
+		}
+
+		/**
+		 * Retrieve the operations inserted into the ADD set of the source, in order of insertion
+		 * @return A read only view of the operations for the ADD set
+		 */
+		@JsonProperty(ADDSET)
+		public Collection<Operation> getAdds() {
+			return this.adds;
+		}
+
+		/**
+		 * Retrieve the operations inserted into the REMOVE set of the source, in order of insertion
+		 * @return A read only view of the operations for the REMOVE set
+		 */
+		@JsonProperty(REMSET)
+		public Collection<Operation> getRems() {
+			return this.rems;
+		}
+
+		/**
+		 * Retrieve the baseline of the source
+		 * @return The baseline of the source, or null if the receiver already holds it
+		 */
+		@JsonProperty(BASELINE)
+		@JsonInclude(Include.NON_NULL)
+		public Baseline getBaseline() {
+			return this.baseline;
+		}
+		
+		/**
+		 * Retrieve the number of operations in the delta
+		 * @return The number of operations for the ADD and REMOVE sets
+		 */
+		@JsonIgnore
+		public int size() {
+			return this.adds.size() + this.rems.size();
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			
+			sb.append("{\"" + ORIGIN + "\":\"" + this.getOrigin() + "\",");
+			sb.append("\"" + SINCE + "\":" + this.getSince() + ",");
+			sb.append("\"" + SEQUENCE + "\":" + this.getSequence() + ",");
+			sb.append("\"" + ADDSET + "\":" + Support.convert(this.getAdds()) + ",");
+			sb.append("\"" + REMSET + "\":" + Support.convert(this.getRems()) + ",");
+			sb.append("\"" + BASELINE + "\":" + this.getBaseline() + "}");
+			
+			return sb.toString();
+		}
+	}
+	
+	/** Property label for the baseline property */
+	protected static final String BASELINE = "baseline";
+	
+	/** Default number of effective operations processed between consecutive checkpoints; zero or less disables this criteria */
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+	
+	/** Default span of time between consecutive checkpoints; zero or less disables this criteria */
+	public static final long DEFAULT_CHECKPOINT_PERIOD = 0L;
+	
+	/** Default number of materialized versions retained for reading the document at different timestamps */
+	public static final int DEFAULT_VERSION_CAPACITY = 8;
+	
+	/** The greatest identifier an operation may have, which sentinel operations take to order after those at the same timestamp */
+	private static final UUID LATEST_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
 	/** Logger for writing data to the log. */
 //	@SuppressWarnings("unused")
 	private static final Logger logger = LogManager.getLogger(LastWriteWins.class);
 	
-	/** Trial contains the state of the object being managed at a particular point in time. */ 
-	private TrialResult trial = null;
+	/** Source of the identifiers of new replicas; random version 4 UUIDs unless replaced with setOriginSupplier() */
+	private static volatile Supplier<UUID> originSupplier = UUID::randomUUID;
+	
+	/** Versions contains the state of the object being managed at recently requested points in time, keyed by timestamp in access order */ 
+	private Map<Long, TrialResult> versions;
+	
+	/** Maximum number of versions to retain */
+	private int versionCapacity = DEFAULT_VERSION_CAPACITY;
+	
+	/** Checkpoints along the timeline of effective operations, keyed by the last operation each one includes */
+	private NavigableMap<Operation, Checkpoint> checkpoints;
+	
+	/** Number of effective operations processed between consecutive checkpoints */
+	private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+	
+	/** Span of time between consecutive checkpoints */
+	private long checkpointPeriod = DEFAULT_CHECKPOINT_PERIOD;
+	
+	/** The result of compacting the operations at or before its watermark; null if the CRDT has not been compacted */
+	private Baseline baseline;
+	
+	/** The sequence number at which the baseline was last replaced; a delta reaching back to this or before includes the baseline */
+	private long baselineSequence = 0L;
+	
+	/** Identifier of this replica in the deltas extracted from it, distinct for each instance since sequence numbers are local */
+	private final UUID origin = originSupplier.get();
+	
+	/** The sequence number of the latest delta applied from each replica, keyed by the origin of the delta */
+	private Map<UUID, Long> summary;
 
 	/**
 	 * Default constructor
@@ -212,19 +714,294 @@ public class LastWriteWins extends OperationTwoSet {
 	 * Copy constructor to extract the contents of the given CRDT to populate this one 
 	 * @param crdt Source CRDT to copy
 	 */
-	public LastWriteWins(LastWriteWins crdt) { super(crdt); }
+	public LastWriteWins(LastWriteWins crdt) {
+		super(crdt);
+		this.setCheckpointInterval(crdt.getCheckpointInterval());
+		this.setCheckpointPeriod(crdt.getCheckpointPeriod());
+		this.setVersionCapacity(crdt.getVersionCapacity());
+		this.getCheckpoints().putAll(crdt.getCheckpoints());
+		this.baseline = crdt.getBaseline();
+		this.baselineSequence = this.getSequence();
+	}
 	
 	/**
 	 * Constructor specifying the add and remove sets comprising a CRDT 
 	 * @param addset Add set to use in this CRDT
 	 * @param remset Remove set to use in this CRDT
 	 */
+	public LastWriteWins(Collection<Operation> addset, Collection<Operation> remset) {
+		this(addset, remset, null);
+	}
+	
+	/**
+	 * Constructor specifying the add and remove sets comprising a CRDT, along with the baseline of the operations compacted before them
+	 * @param addset Add set to use in this CRDT
+	 * @param remset Remove set to use in this CRDT
+	 * @param baseline Baseline of the operations compacted, or null if there is none
+	 */
 	@JsonCreator
 	public LastWriteWins(@JsonProperty(ADDSET) Collection<Operation> addset,
-						 @JsonProperty(REMSET) Collection<Operation> remset) {
+						 @JsonProperty(REMSET) Collection<Operation> remset,
+						 @JsonProperty(BASELINE) Baseline baseline) {
 		super(addset, remset);
+		this.baseline = baseline;
+		this.baselineSequence = this.getSequence();
+	}
+
+	/**
+	 * Retrieve the versions of the document retained, in least recently used order.  The least recently used version is evicted
+	 * whenever the number of versions exceeds the version capacity.
+	 * @return The versions of the document keyed by the timestamp of each
+	 */
+	private Map<Long, TrialResult> getVersions() {
+		if (null == this.versions) {
+			this.versions = new LinkedHashMap<Long, TrialResult>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, TrialResult> eldest) {
+					return this.size() > LastWriteWins.this.getVersionCapacity();
+				}
+			};
+		}
+		
+		return this.versions;
+	}
+	
+	/**
+	 * Retrieve the TrialResult for the given timestamp, reusing a retained version when there is one
+	 * @param timestamp Latest timestamp of the operations to process
+	 * @return The TrialResult for the given timestamp
+	 */
+	private TrialResult getTrial(long timestamp) {
+		TrialResult rv = this.getVersions().get(timestamp);
+		
+		if (null == rv) {
+			rv = new TrialResult(this, timestamp);
+			
+			if (0 < this.getVersionCapacity()) {
+				this.getVersions().put(timestamp, rv);
+			}
+		}
+		
+		return rv;
+	}
+
+	/**
+	 * Retrieve the maximum number of versions of the document retained for reading at different timestamps
+	 * @return The maximum number of versions retained
+	 */
+	@JsonIgnore
+	public int getVersionCapacity() {
+		return this.versionCapacity;
 	}
 
+	/**
+	 * Set the maximum number of versions of the document retained for reading at different timestamps.  The least recently used
+	 * versions are discarded if more than this are currently retained.
+	 * @param versionCapacity The maximum number of versions to retain; zero or less disables retention
+	 */
+	@JsonIgnore
+	public void setVersionCapacity(int versionCapacity) {
+		this.versionCapacity = versionCapacity;
+		
+		Iterator<Long> iterator = this.getVersions().keySet().iterator();
+		while (this.getVersions().size() > Math.max(0, versionCapacity) && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+	
+	/**
+	 * Retrieve the number of versions of the document currently retained
+	 * @return The number of versions retained
+	 */
+	@JsonIgnore
+	public int getVersionCount() {
+		return this.getVersions().size();
+	}
+	
+	/**
+	 * Retrieve the checkpoints along the timeline of effective operations
+	 * @return The checkpoints keyed by the last operation each one includes
+	 */
+	private NavigableMap<Operation, Checkpoint> getCheckpoints() {
+		if (null == this.checkpoints) {
+			this.checkpoints = new TreeMap<>();
+		}
+		
+		return this.checkpoints;
+	}
+	
+	/**
+	 * Retrieve the baseline holding the result of compacting the operations at or before its watermark
+	 * @return The baseline, or null if the CRDT has not been compacted
+	 */
+	@JsonProperty(BASELINE)
+	@JsonInclude(Include.NON_NULL)
+	public Baseline getBaseline() {
+		return this.baseline;
+	}
+	
+	/**
+	 * Determine whether the given operation is at or before the watermark of the baseline, and so has been compacted or arrived too late
+	 * to be included
+	 * @param op The operation to evaluate
+	 * @return True exactly when the CRDT has a baseline and the operation is at or before its watermark
+	 */
+	private boolean isCompacted(Operation op) {
+		return null != this.getBaseline() && op.getTimestamp() <= this.getBaseline().getWatermark();
+	}
+	
+	/**
+	 * Compact every operation at or before the given watermark into the baseline.  The document those operations produce becomes the
+	 * starting point for every later replay, and the operations are dropped from the ADD and REMOVE sets, including those which cancel
+	 * each other out.  The watermark must be stable; that is, no operation at or before it, nor the rejection of one, may arrive
+	 * afterward.  Any which do are ignored.
+	 * 
+	 * The documents at or after the watermark are unchanged by compaction.  Those before the watermark are no longer available, and
+	 * reading one yields the baseline document.  The invalid operations at or before the watermark are discarded with the rest.
+	 * 
+	 * @param watermark The latest timestamp of the operations to compact
+	 * @return The number of operations dropped from the ADD and REMOVE sets
+	 */
+	public long compact(long watermark) {
+		if (null != this.getBaseline() && watermark <= this.getBaseline().getWatermark()) {
+			return 0L;
+		}
+		
+		TrialResult trial = new TrialResult(this, watermark);
+		long count = this.getAddCount() + this.getRemCount();
+		long[] folded = this.truncate(watermark);
+		
+		if (null != this.getBaseline()) {
+			for (OperationType type : OperationType.values()) {
+				folded[type.ordinal()] += this.getBaseline().countFolded(type);
+			}
+		}
+		
+		this.baseline = new Baseline(watermark, trial.getDocument(), trial.effectiveCounts, folded);
+		this.baselineSequence = this.getSequence();
+		this.getCheckpoints().clear();
+		this.getVersions().clear();
+		
+		return count - this.getAddCount() - this.getRemCount();
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.OperationTwoSet#countFolded(com.cyberfront.crdt.operation.Operation.OperationType)
+	 */
+	@Override
+	protected long countFolded(OperationType type) {
+		return null == this.getBaseline() ? 0L : this.getBaseline().countFolded(type);
+	}
+	
+	/**
+	 * Retrieve the number of checkpoints currently held along the timeline of effective operations
+	 * @return The number of checkpoints
+	 */
+	@JsonIgnore
+	public int getCheckpointCount() {
+		return this.getCheckpoints().size();
+	}
+
+	/**
+	 * Retrieve the number of effective operations processed between consecutive checkpoints
+	 * @return The number of effective operations between consecutive checkpoints; zero or less when this criteria is disabled 
+	 */
+	@JsonIgnore
+	public int getCheckpointInterval() {
+		return this.checkpointInterval;
+	}
+
+	/**
+	 * Set the number of effective operations processed between consecutive checkpoints
+	 * @param checkpointInterval The number of effective operations between consecutive checkpoints; zero or less disables this criteria
+	 */
+	@JsonIgnore
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Retrieve the span of time between consecutive checkpoints
+	 * @return The span of time between consecutive checkpoints; zero or less when this criteria is disabled
+	 */
+	@JsonIgnore
+	public long getCheckpointPeriod() {
+		return this.checkpointPeriod;
+	}
+
+	/**
+	 * Set the span of time between consecutive checkpoints
+	 * @param checkpointPeriod The span of time between consecutive checkpoints; zero or less disables this criteria
+	 */
+	@JsonIgnore
+	public void setCheckpointPeriod(long checkpointPeriod) {
+		this.checkpointPeriod = checkpointPeriod;
+	}
+	
+	/**
+	 * Determine whether a new checkpoint is due given the operations processed and time elapsed since the most recent one
+	 * @param count Number of operations processed since the most recent checkpoint
+	 * @param elapsed Time elapsed since the most recent checkpoint
+	 * @return True exactly when either of the checkpoint criteria is enabled and met
+	 */
+	private boolean isCheckpointDue(int count, long elapsed) {
+		return (0 < this.getCheckpointInterval() && count >= this.getCheckpointInterval()) ||
+				(0 < this.getCheckpointPeriod() && elapsed >= this.getCheckpointPeriod());
+	}
+	
+	/**
+	 * Record a checkpoint following the given operation.  The checkpoint is only recorded when it follows every existing checkpoint,
+	 * so replays of earlier portions of the timeline do not add checkpoints between those already held.
+	 * @param position The last operation processed to produce the checkpoint
+	 * @param document The document resulting from processing the operations up to and including the position
+	 * @param invalidOperations The invalid operations detected up to and including the position
+	 * @param effectiveCounts The number of effective operations of each OperationType up to and including the position
+	 */
+	private void addCheckpoint(Operation position, JsonNode document, Collection<Operation> invalidOperations, long[] effectiveCounts) {
+		if (this.getCheckpoints().isEmpty() || this.getCheckpoints().lastKey().compareTo(position) < 0) {
+			this.getCheckpoints().put(position, new Checkpoint(position, document, invalidOperations, effectiveCounts));
+		}
+	}
+	
+	/**
+	 * Retrieve the latest checkpoint which includes only operations at or before the given timestamp
+	 * @param timestamp The latest timestamp the checkpoint may include
+	 * @return The latest checkpoint at or before the given timestamp, or null if there is none
+	 */
+	private Checkpoint getCheckpoint(long timestamp) {
+		if (0 > timestamp) {
+			return null;
+		}
+		
+		Map.Entry<Operation, Checkpoint> entry = this.getCheckpoints().floorEntry(latestAt(timestamp));
+		return null == entry ? null : entry.getValue();
+	}
+	
+	/**
+	 * Create a sentinel operation which orders after every operation at the given timestamp and before every later one, to bound
+	 * searches of the sets and maps keyed by operation.  Operations at the same timestamp are ordered by type, then identifier, then
+	 * content, so the sentinel takes the last type, the greatest identifier and no content, as a READ operation has.
+	 * @param timestamp The timestamp of the sentinel, which may not be negative
+	 * @return The sentinel operation
+	 */
+	private static Operation latestAt(long timestamp) {
+		return new Operation(LATEST_ID, OperationType.READ, null, timestamp);
+	}
+	
+	/**
+	 * Discard the checkpoints invalidated by a change to the effective operations at the given operation, which are those at or
+	 * following it
+	 * @param op The operation added to or removed from the effective operations
+	 */
+	private void dropCheckpoints(Operation op) {
+		if (OperationType.READ != op.getType()) {
+			this.getCheckpoints().tailMap(op, true).clear();
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.cyberfront.cmrdt.manager.AbstractCRDT#readValue()
 	 */
@@ -240,24 +1017,17 @@ public class LastWriteWins extends OperationTwoSet {
 	@Override
 	@JsonIgnore
 	public JsonNode getDocument(long timestamp) {
-		if (null == this.trial || this.trial.getTimestamp() != timestamp) {
-			this.trial = new TrialResult(this, timestamp);
-		}
-
-		return this.trial.getDocument();
+		return this.getTrial(timestamp).getDocument();
 	}
 	
 	/**
-	 * Get the list of invalid operations for the current configuration
+	 * Get the list of invalid operations for the current configuration.  The result is a read only view, which is not guaranteed to
+	 * reflect operations added or removed later.
 	 * @return List of invalid operations
 	 */
 	@JsonIgnore
 	public Collection<Operation> getInvalidOperations() {
-		if (null == trial) {
-			this.trial = new TrialResult(this);
-		}
-		
-		return this.trial.getInvalidOperations();
+		return this.getTrial(Long.MAX_VALUE).getInvalidOperations();
 	}
 	
 	/**
@@ -266,11 +1036,7 @@ public class LastWriteWins extends OperationTwoSet {
 	 */
 	@JsonIgnore
 	public Collection<Operation> getEffectiveOperations() {
-		if (null == trial) {
-			this.trial = new TrialResult(this);
-		}
-		
-		return this.trial.getEffectiveOperations();
+		return this.getTrial(Long.MAX_VALUE).getEffectiveOperations();
 	}
 	
 	/* (non-Javadoc)
@@ -279,7 +1045,7 @@ public class LastWriteWins extends OperationTwoSet {
 	@Override
 	@JsonIgnore
 	public boolean isCreated() {
-		return doesTypeExist(this.getEffectiveOperations(), OperationType.CREATE);
+		return 0 < this.getTrial(Long.MAX_VALUE).countEffectiveOperations(OperationType.CREATE);
 	}
 
 	/* (non-Javadoc)
@@ -288,7 +1054,7 @@ public class LastWriteWins extends OperationTwoSet {
 	@Override
 	@JsonIgnore
 	public boolean isRead() {
-		return doesTypeExist(this.getEffectiveOperations(), OperationType.READ);
+		return 0 < this.getTrial(Long.MAX_VALUE).countEffectiveOperations(OperationType.READ);
 	}
 
 	/* (non-Javadoc)
@@ -297,7 +1063,7 @@ public class LastWriteWins extends OperationTwoSet {
 	@Override
 	@JsonIgnore
 	public boolean isUpdated() {
-		return doesTypeExist(this.getEffectiveOperations(), OperationType.UPDATE);
+		return 0 < this.getTrial(Long.MAX_VALUE).countEffectiveOperations(OperationType.UPDATE);
 	}
 
 	/* (non-Javadoc)
@@ -306,59 +1072,302 @@ public class LastWriteWins extends OperationTwoSet {
 	@Override
 	@JsonIgnore
 	public boolean isDeleted() {
-		return doesTypeExist(this.getEffectiveOperations(), OperationType.DELETE);
+		return 0 < this.getTrial(Long.MAX_VALUE).countEffectiveOperations(OperationType.DELETE);
 	}
 	
 	/**
-	 * Insert an operation to the ADD set 
+	 * Insert an operation to the ADD set.  Operations at or before the watermark of the baseline are ignored.
 	 *
 	 * @param op The operation to add to the ADD set
 	 */
 	@Override
-	protected void addOperation(Operation op) {
-		if (null != op) {
-			super.addOperation(op);
-			this.trial = null;
+	protected boolean addOperation(Operation op) {
+		if (null == op || this.isCompacted(op) || !super.addOperation(op)) {
+			return false;
+		}
+		
+		if (this.isRemoved(op)) {
+			return true;
 		}
+		
+		this.dropCheckpoints(op);
+		
+		this.getVersions().values().removeIf(version -> !version.append(op));
+		
+		return true;
 	}
 	
 	/**
-	 * Add a collection of operations to the current ADD set
+	 * Add a collection of operations to the current ADD set as a single batch
 	 * 
 	 * @param operations Operations to add to the ADD set
 	 */
 	protected void addOperation(Collection<Operation> operations) {
-		if (null != operations) {
-			for (Operation op : operations) {
-				this.addOperation(op);
+		this.addOperations(operations, Collections.emptyList());
+	}
+	
+	/**
+	 * Insert a batch of operations into the ADD and REMOVE sets.  The result is the same as inserting them one at a time, but the batch
+	 * is sorted once and the checkpoints and retained versions are brought up to date once for the whole batch.  Each retained version
+	 * either has the new effective operations following its last one applied to it in order, or is discarded; the next read of a
+	 * discarded version replays from the latest checkpoint before the earliest operation the batch affects.  Operations at or before the
+	 * watermark of the baseline are ignored.
+	 *
+	 * @param adds The operations to add to the ADD set
+	 * @param rems The operations to add to the REMOVE set
+	 * @return The number of operations newly inserted into either set
+	 */
+	protected long addOperations(Collection<Operation> adds, Collection<Operation> rems) {
+		return this.insert(sort(adds), sort(rems));
+	}
+	
+	/**
+	 * Insert a batch of operations, each already sorted by timestamp and free of null entries, into the ADD and REMOVE sets
+	 *
+	 * @param adds The operations to add to the ADD set, in timestamp order
+	 * @param rems The operations to add to the REMOVE set, in timestamp order
+	 * @return The number of operations newly inserted into either set
+	 */
+	private long insert(Collection<Operation> adds, Collection<Operation> rems) {
+		NavigableSet<Operation> appended = new TreeSet<>();
+		NavigableSet<Operation> removed = new TreeSet<>();
+		long rv = 0;
+		
+		for (Operation op : rems) {
+			if (!this.isCompacted(op) && super.remOperation(op)) {
+				++rv;
+				
+				if (this.isAdded(op)) {
+					removed.add(op);
+				}
 			}
 		}
+		
+		for (Operation op : adds) {
+			if (!this.isCompacted(op) && super.addOperation(op)) {
+				++rv;
+				
+				if (!this.isRemoved(op)) {
+					appended.add(op);
+				}
+			}
+		}
+		
+		Operation earliest = Stream.concat(appended.stream(), removed.stream())
+				.filter(op -> OperationType.READ != op.getType())
+				.min(Operation::compareTo)
+				.orElse(null);
+		
+		if (null != earliest) {
+			this.dropCheckpoints(earliest);
+		}
+		
+		this.getVersions().values().removeIf(version ->
+				removed.stream().anyMatch(version::isAffectedBy) || !appended.stream().allMatch(version::append));
+		
+		return rv;
 	}
 	
 	/**
-	 * Insert an operation to the REMOVE set 
+	 * Merge the state of the given replica into this one.  The ADD and REMOVE sets only grow, so the result is their union, which is
+	 * the same however often and in whichever order replicas are merged.  The operations this replica lacks are found by a sorted merge
+	 * of the sets of both replicas and inserted as a single batch, so the checkpoints and retained versions preceding the earliest of
+	 * them remain valid and later reads replay only from there.  This serves both for anti-entropy between replicas and for bootstrapping
+	 * an empty replica from the deserialized state of a peer.
+	 * 
+	 * When the given replica has been compacted to a later watermark than this one, its baseline is adopted and the operations of this
+	 * replica at or before that watermark are dropped.  Since watermarks are stable, those operations are all folded into the baseline.
+	 * The summary records that every operation of the given replica has been received, so later deltas from it start after them.  The
+	 * given replica must not change while it is merged.
+	 *
+	 * @param other The replica to merge into this one
+	 * @return The number of operations newly inserted into either set
+	 */
+	public long merge(LastWriteWins other) {
+		if (null == other || this == other) {
+			return 0L;
+		}
+		
+		this.adopt(other.getBaseline());
+		
+		long rv = this.insert(this.getMissingAdds(other), this.getMissingRems(other));
+		
+		this.getSummary();
+		this.summary.merge(other.getOrigin(), other.getSequence(), Math::max);
+		
+		return rv;
+	}
+	
+	/**
+	 * Adopt the given baseline of another replica when it has a later watermark than the baseline of this one, dropping the operations
+	 * at or before its watermark
+	 * @param source The baseline of the other replica, which may be null
+	 */
+	private void adopt(Baseline source) {
+		if (null != source && (null == this.getBaseline() || this.getBaseline().getWatermark() < source.getWatermark())) {
+			this.truncate(source.getWatermark());
+			this.baseline = source;
+			this.baselineSequence = this.getSequence();
+			this.getCheckpoints().clear();
+			this.getVersions().clear();
+		}
+	}
+	
+	/**
+	 * Retrieve the identifier of this replica in the deltas extracted from it
+	 * @return The identifier of this replica
+	 */
+	@JsonIgnore
+	public UUID getOrigin() {
+		return this.origin;
+	}
+	
+	/**
+	 * Replace the source of the identifiers given to new replicas.  A simulation replayed from a seed supplies identifiers drawn from
+	 * its seeded generator, so the deltas its replicas exchange are the same on each replay.
+	 * @param supplier The source of identifiers, or null to restore random version 4 UUIDs
+	 */
+	public static void setOriginSupplier(Supplier<UUID> supplier) {
+		originSupplier = null == supplier ? UUID::randomUUID : supplier;
+	}
+	
+	/**
+	 * Retrieve the sequence number of the latest delta applied from each replica
+	 * @return A read only view of the sequence numbers keyed by the origin of the deltas
+	 */
+	@JsonIgnore
+	public Map<UUID, Long> getSummary() {
+		if (null == this.summary) {
+			this.summary = new HashMap<>();
+		}
+		
+		return Collections.unmodifiableMap(this.summary);
+	}
+	
+	/**
+	 * Extract the operations inserted into this replica after the given sequence number
+	 * @param since The sequence number following which to extract the operations; zero for every operation
+	 * @return The delta holding the operations inserted after the given sequence number
+	 */
+	public Delta getDelta(long since) {
+		return new Delta(this.getOrigin(), since, this.getSequence(), this.getAddsSince(since), this.getRemsSince(since),
+				since <= this.baselineSequence ? this.getBaseline() : null);
+	}
+	
+	/**
+	 * Extract the operations inserted into this replica which a peer with the given summary has not been sent
+	 * @param summary The summary of the peer, which maps the origin of each delta it applied to the sequence number of the latest one
+	 * @return The delta holding the operations the peer has not been sent
+	 */
+	public Delta getDelta(Map<UUID, Long> summary) {
+		return this.getDelta(null == summary ? 0L : summary.getOrDefault(this.getOrigin(), 0L));
+	}
+	
+	/**
+	 * Merge a delta extracted from another replica into this one.  The operations are inserted as a single batch, as they are for a full
+	 * merge, and applying a delta more than once changes nothing further.  The sequence number the delta extends to is recorded in the
+	 * summary only when the delta starts at or before the sequence number already recorded for its origin, so a delta which arrives
+	 * ahead of an earlier one never hides the operations the earlier one holds.  A baseline in the delta is adopted when its watermark
+	 * is later than that of the baseline of this replica.
+	 * @param delta The delta to merge
+	 * @return The number of operations newly inserted into either set
+	 */
+	public long applyDelta(Delta delta) {
+		if (null == delta) {
+			return 0L;
+		}
+		
+		this.adopt(delta.getBaseline());
+		
+		long rv = this.addOperations(delta.getAdds(), delta.getRems());
+		
+		if (null != delta.getOrigin() && delta.getSince() <= this.getSummary().getOrDefault(delta.getOrigin(), 0L)) {
+			this.summary.merge(delta.getOrigin(), delta.getSequence(), Math::max);
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Sort a batch of operations by timestamp, discarding null entries
+	 * @param operations The operations to sort, which may be null
+	 * @return The sorted operations
+	 */
+	private static NavigableSet<Operation> sort(Collection<Operation> operations) {
+		NavigableSet<Operation> rv = new TreeSet<>();
+		
+		if (null != operations) {
+			operations.stream().filter(Objects::nonNull).forEach(rv::add);
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Insert an operation to the REMOVE set.  Operations at or before the watermark of the baseline are ignored.
 	 *
 	 * @param op The operation to add to the REMOVE set
 	 */
 	@Override
-	protected void remOperation(Operation op) {
-		if (null != op) {
-			super.remOperation(op);
-			this.trial = null;
+	protected boolean remOperation(Operation op) {
+		if (null == op || this.isCompacted(op) || !super.remOperation(op)) {
+			return false;
+		}
+		
+		if (!this.isAdded(op)) {
+			return true;
 		}
+		
+		this.dropCheckpoints(op);
+		
+		this.getVersions().values().removeIf(version -> version.isAffectedBy(op));
+		
+		return true;
 	}
 
 	/**
-	 * Add a collection of operations to the current REMOVE set
+	 * Add a collection of operations to the current REMOVE set as a single batch
 	 * 
 	 * @param operations Operations to add to the REMOVE set
 	 */
 	protected void remOperation(Collection<Operation> operations) {
-		if (null != operations) {
-			for (Operation op : operations) {
-				this.remOperation(op);
-			}
+		this.addOperations(Collections.emptyList(), operations);
+	}
+	
+	/**
+	 * Move the patches of the UPDATE operations at or before the given horizon into the given store.  The retained versions are
+	 * discarded, since they hold the operations being archived, along with the checkpoints preceding the latest one at or before the
+	 * horizon.  Later replays start from that checkpoint or one after it, so the archived patches are only read when an operation
+	 * arrives or is rejected at or before the horizon.
+	 *
+	 * @param horizon The latest timestamp of the operations to archive
+	 * @param store The store to hold the archived patches
+	 * @return The number of operations archived
+	 * @throws IOException results when a patch cannot be written to the store
+	 */
+	@Override
+	public long archive(long horizon, MappedSegmentStore store) throws IOException {
+		long rv = super.archive(horizon, store);
+		Checkpoint checkpoint = this.getCheckpoint(horizon);
+		
+		this.getVersions().clear();
+		
+		if (null != checkpoint) {
+			this.getCheckpoints().headMap(checkpoint.getPosition(), false).clear();
 		}
+		
+		return rv;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.OperationTwoSet#clear()
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		this.getCheckpoints().clear();
+		this.getVersions().clear();
+		this.baseline = null;
 	}
 	
 	/* (non-Javadoc)
@@ -369,7 +1378,8 @@ public class LastWriteWins extends OperationTwoSet {
 		StringBuilder sb = new StringBuilder();
 		
 		sb.append(super.getSegment() + ",");
-		sb.append("\"trial\":" + (null == this.trial ? "null" : this.trial.toString()));
+		sb.append("\"baseline\":" + this.getBaseline() + ",");
+		sb.append("\"trials\":" + Support.convert(this.getVersions().values()));
 
 		return sb.toString();
 	}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.support.Support;
+
+/**
+ * The MerkleDigest class maintains a tree of hashes over the ADD and REMOVE sets of a CRDT, so two replicas can determine whether
+ * they hold the same operations by comparing a single root hash, and where they differ by descending only into the subtrees whose
+ * hashes differ.  The operations are bucketed by timestamp into ranges of a fixed span.  Each bucket holds the combined hash of the
+ * operations within it, and each level above combines the hashes of up to FANOUT buckets or nodes of the level below.  The top level
+ * is combined into the root.
+ * 
+ * Hashes are combined by exclusive or, so the digest does not depend on the order in which operations arrive, and inserting or removing
+ * an operation updates one node on each level.  Nodes whose hash is zero are not held, so a node which is absent hashes to zero.  An
+ * operation hashes differently in the ADD set than in the REMOVE set.  Two digests are only comparable when they use the same span.
+ */
+public class MerkleDigest {
+	/** Default span of time covered by each bucket */
+	public static final long DEFAULT_BUCKET_SPAN = 1024L;
+	
+	/** Number of bits of the index of a node consumed by each level */
+	private static final int FANOUT_BITS = 4;
+	
+	/** Maximum number of children of each node */
+	public static final int FANOUT = 1 << FANOUT_BITS;
+	
+	/** Number of levels of nodes, including the buckets, beneath the root */
+	public static final int DEPTH = 4;
+	
+	/** Span of time covered by each bucket */
+	private final long bucketSpan;
+	
+	/** The hashes of the nodes on each level, keyed by their index; the buckets are on level zero */
+	private final List<NavigableMap<Long, Long>> levels = new ArrayList<>();
+	
+	/** The hash combining every operation */
+	private long root = 0L;
+	
+	/** The number of operations combined into the digest */
+	private long size = 0L;
+	
+	/**
+	 * Instantiate an empty digest with the default bucket span
+	 */
+	public MerkleDigest() {
+		this(DEFAULT_BUCKET_SPAN);
+	}
+	
+	/**
+	 * Instantiate an empty digest with the given bucket span
+	 * @param bucketSpan Span of time covered by each bucket, which must be positive
+	 */
+	public MerkleDigest(long bucketSpan) {
+		if (bucketSpan <= 0) {
+			throw new IllegalArgumentException("Bucket span must be positive: " + bucketSpan);
+		}
+		
+		this.bucketSpan = bucketSpan;
+		
+		for (int level = 0; level < DEPTH; ++level) {
+			this.levels.add(new TreeMap<>());
+		}
+	}
+	
+	/**
+	 * Retrieve the span of time covered by each bucket
+	 * @return The bucket span
+	 */
+	public long getBucketSpan() {
+		return this.bucketSpan;
+	}
+	
+	/**
+	 * Retrieve the index of the bucket holding operations with the given timestamp
+	 * @param timestamp The timestamp of an operation
+	 * @return The index of the bucket covering the timestamp
+	 */
+	public long getBucket(long timestamp) {
+		return Math.floorDiv(timestamp, this.getBucketSpan());
+	}
+	
+	/**
+	 * Retrieve the earliest timestamp covered by the given bucket
+	 * @param bucket The index of the bucket
+	 * @return The earliest timestamp of the bucket
+	 */
+	public long getStart(long bucket) {
+		return bucket * this.getBucketSpan();
+	}
+	
+	/**
+	 * Retrieve the latest timestamp covered by the given bucket
+	 * @param bucket The index of the bucket
+	 * @return The latest timestamp of the bucket
+	 */
+	public long getEnd(long bucket) {
+		return this.getStart(bucket) + this.getBucketSpan() - 1;
+	}
+	
+	/**
+	 * Retrieve the hash combining every operation in the digest
+	 * @return The root hash
+	 */
+	public long getRoot() {
+		return this.root;
+	}
+	
+	/**
+	 * Retrieve the number of operations combined into the digest
+	 * @return The number of operations
+	 */
+	public long getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * Retrieve the hash of a node
+	 * @param level The level of the node, zero for a bucket and DEPTH for the root
+	 * @param index The index of the node on its level; ignored for the root
+	 * @return The hash of the node, which is zero if it holds no operations
+	 */
+	public long getHash(int level, long index) {
+		return level >= DEPTH ? this.getRoot() : this.levels.get(level).getOrDefault(index, 0L);
+	}
+	
+	/**
+	 * Retrieve the hashes of the children of a node which hold operations.  The children of the root are the nodes on the top level.
+	 * @param level The level of the node, which must be greater than zero; DEPTH for the root
+	 * @param index The index of the node on its level; ignored for the root
+	 * @return A read only view of the hashes of the children on the level below, keyed by their index
+	 */
+	public NavigableMap<Long, Long> getChildren(int level, long index) {
+		NavigableMap<Long, Long> children = this.levels.get(Math.min(level, DEPTH) - 1);
+		
+		if (level < DEPTH) {
+			children = children.subMap(index << FANOUT_BITS, true, (index << FANOUT_BITS) + FANOUT - 1, true);
+		}
+		
+		return Collections.unmodifiableNavigableMap(children);
+	}
+	
+	/**
+	 * Insert the given operation into the digest, or remove it if it was already inserted
+	 * @param op The operation to toggle
+	 * @param removed True when the operation is in the REMOVE set, false when it is in the ADD set
+	 */
+	public void toggle(Operation op, boolean removed) {
+		long hash = hash(op, removed);
+		long index = this.getBucket(op.getTimestamp());
+		
+		for (NavigableMap<Long, Long> level : this.levels) {
+			long value = level.getOrDefault(index, 0L) ^ hash;
+			
+			if (0L == value) {
+				level.remove(index);
+			} else {
+				level.put(index, value);
+			}
+			
+			index >>= FANOUT_BITS;
+		}
+		
+		this.root ^= hash;
+	}
+	
+	/**
+	 * Insert the given operation into the digest
+	 * @param op The operation to insert
+	 * @param removed True when the operation is in the REMOVE set, false when it is in the ADD set
+	 */
+	public void add(Operation op, boolean removed) {
+		this.toggle(op, removed);
+		++this.size;
+	}
+	
+	/**
+	 * Remove the given operation, which must have been inserted, from the digest
+	 * @param op The operation to remove
+	 * @param removed True when the operation is in the REMOVE set, false when it is in the ADD set
+	 */
+	public void remove(Operation op, boolean removed) {
+		this.toggle(op, removed);
+		--this.size;
+	}
+	
+	/**
+	 * Determine the buckets whose operations differ from those of the given digest.  Starting at the root, only the children of nodes
+	 * whose hashes differ are compared, so the work is proportional to the number of differing buckets and the depth of the tree rather
+	 * than to the number of operations.  A replica holding a remote digest follows the same descent by requesting the children of each
+	 * differing node in turn.
+	 * @param other The digest to compare against, which must use the same bucket span
+	 * @return The indices of the differing buckets, in order
+	 */
+	public NavigableSet<Long> diverge(MerkleDigest other) {
+		if (this.getBucketSpan() != other.getBucketSpan()) {
+			throw new IllegalArgumentException("Digests with different bucket spans are not comparable: " + this.getBucketSpan() + " and " + other.getBucketSpan());
+		}
+		
+		NavigableSet<Long> rv = new TreeSet<>();
+		
+		if (this.getRoot() != other.getRoot()) {
+			this.diverge(other, DEPTH, 0L, rv);
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Collect the buckets beneath a node whose hash differs from that of the corresponding node of the given digest
+	 * @param other The digest to compare against
+	 * @param level The level of the differing node
+	 * @param index The index of the differing node on its level
+	 * @param buckets The collection of differing buckets
+	 */
+	private void diverge(MerkleDigest other, int level, long index, NavigableSet<Long> buckets) {
+		NavigableSet<Long> children = new TreeSet<>(this.getChildren(level, index).keySet());
+		children.addAll(other.getChildren(level, index).keySet());
+		
+		for (Long child : children) {
+			if (this.getHash(level - 1, child) != other.getHash(level - 1, child)) {
+				if (1 == level) {
+					buckets.add(child);
+				} else {
+					this.diverge(other, level - 1, child, buckets);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Remove every operation from the digest
+	 */
+	public void clear() {
+		this.levels.forEach(NavigableMap::clear);
+		this.root = 0L;
+		this.size = 0L;
+	}
+	
+	/**
+	 * Compute the hash of an operation in the ADD or REMOVE set.  Only the values carried by the operation contribute, so replicas in
+	 * different JVMs compute the same hash for the same operation; Operation.hashCode() is not used since the hash of its type differs
+	 * between JVMs.
+	 * @param op The operation to hash
+	 * @param removed True when the operation is in the REMOVE set, false when it is in the ADD set
+	 * @return The hash of the operation
+	 */
+	private static long hash(Operation op, boolean removed) {
+		UUID id = op.getId();
+		long rv = mix(op.getTimestamp());
+		
+		rv = mix(rv ^ (null == id ? 0L : id.getMostSignificantBits()));
+		rv = mix(rv ^ (null == id ? 0L : id.getLeastSignificantBits()));
+		rv = mix(rv ^ (null == op.getType() ? -1L : op.getType().ordinal()));
+		rv = mix(rv ^ ((long) op.getContentHash() << 1 | (removed ? 1L : 0L)));
+		
+		return rv;
+	}
+	
+	/**
+	 * Scramble the bits of a value so that values differing in few bits produce unrelated results
+	 * @param value The value to scramble
+	 * @return The scrambled value
+	 */
+	private static long mix(long value) {
+		long rv = value + 0x9E3779B97F4A7C15L;
+		rv = (rv ^ (rv >>> 30)) * 0xBF58476D1CE4E5B9L;
+		rv = (rv ^ (rv >>> 27)) * 0x94D049BB133111EBL;
+		
+		return rv ^ (rv >>> 31);
+	}
+	
+	/**
+	 * Retrieve a string segment used in the toString() method to build up JSON formatted string
+	 * @return The JSON formated string segment
+	 */
+	protected String getSegment() {
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("\"bucketSpan\":" + this.getBucketSpan() + ",");
+		sb.append("\"size\":" + this.getSize() + ",");
+		sb.append("\"root\":" + this.getRoot() + ",");
+		sb.append("\"buckets\":" + Support.convert(this.levels.get(0)));
+		
+		return sb.toString();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{" + this.getSegment() + "}";
+	}
+}
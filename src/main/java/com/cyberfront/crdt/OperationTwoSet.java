@@ -22,11 +22,20 @@
  */
 package com.cyberfront.crdt;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 import com.cyberfront.crdt.operation.Operation.OperationType;
 import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.store.MappedSegmentStore;
 import com.cyberfront.crdt.support.Support;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -39,6 +48,106 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * ADD set.
  */
 public abstract class OperationTwoSet extends AbstractCRDT {
+	/**
+	 * The Journal class records the operations inserted into the ADD or REMOVE set in order of insertion, alongside the sequence number
+	 * of each insertion.  Both are held in flat arrays, so an operation costs an array slot and a sequence number rather than a tree
+	 * node, and the operations inserted after a sequence number are found by a binary search.
+	 */
+	private static final class Journal {
+		/** Initial capacity of the arrays */
+		private static final int INITIAL_CAPACITY = 16;
+		
+		/** The operations in order of insertion */
+		private Operation[] operations = new Operation[INITIAL_CAPACITY];
+		
+		/** The sequence number of the insertion of each operation, in increasing order */
+		private long[] sequences = new long[INITIAL_CAPACITY];
+		
+		/** Number of operations in the journal */
+		private int size = 0;
+		
+		/**
+		 * Record an operation inserted with a sequence number greater than any already in the journal
+		 * @param sequence The sequence number of the insertion
+		 * @param op The operation inserted
+		 */
+		private void append(long sequence, Operation op) {
+			if (this.size == this.operations.length) {
+				this.operations = Arrays.copyOf(this.operations, 2 * this.size);
+				this.sequences = Arrays.copyOf(this.sequences, 2 * this.size);
+			}
+			
+			this.operations[this.size] = op;
+			this.sequences[this.size++] = sequence;
+		}
+		
+		/**
+		 * Retrieve the operations inserted after the given sequence number, in order of insertion
+		 * @param since The sequence number following which to retrieve the operations
+		 * @return The operations inserted after the sequence number
+		 */
+		private List<Operation> since(long since) {
+			int index = Arrays.binarySearch(this.sequences, 0, this.size, since);
+			int from = index >= 0 ? index + 1 : -index - 1;
+			
+			return new ArrayList<>(Arrays.asList(this.operations).subList(from, this.size));
+		}
+		
+		/**
+		 * Replace each UPDATE operation at or before the given horizon, which is not yet archived, by its archived copy if it has one
+		 * @param horizon The latest timestamp of the operations archived
+		 * @param replacements The archived copies, each equal to the operation it replaces
+		 */
+		private void replace(long horizon, NavigableSet<Operation> replacements) {
+			for (int i = 0; i < this.size; ++i) {
+				Operation op = this.operations[i];
+				
+				if (op.getTimestamp() <= horizon && op.isUpdate() && !op.isArchived() && replacements.contains(op)) {
+					this.operations[i] = replacements.floor(op);
+				}
+			}
+		}
+		
+		/**
+		 * Remove every operation at or before the given timestamp, retaining the order of the rest
+		 * @param timestamp The latest timestamp of the operations to remove
+		 */
+		private void truncate(long timestamp) {
+			int kept = 0;
+			
+			for (int i = 0; i < this.size; ++i) {
+				if (this.operations[i].getTimestamp() > timestamp) {
+					this.operations[kept] = this.operations[i];
+					this.sequences[kept++] = this.sequences[i];
+				}
+			}
+			
+			Arrays.fill(this.operations, kept, this.size, null);
+			this.size = kept;
+			this.trim();
+		}
+		
+		/**
+		 * Remove every operation from the journal
+		 */
+		private void clear() {
+			Arrays.fill(this.operations, 0, this.size, null);
+			this.size = 0;
+			this.trim();
+		}
+		
+		/**
+		 * Release the capacity of the arrays once no more than a quarter of it is used
+		 */
+		private void trim() {
+			if (this.operations.length > INITIAL_CAPACITY && this.size <= this.operations.length / 4) {
+				int capacity = Math.max(INITIAL_CAPACITY, 2 * this.size);
+				this.operations = Arrays.copyOf(this.operations, capacity);
+				this.sequences = Arrays.copyOf(this.sequences, capacity);
+			}
+		}
+	}
+	
 	/** Property label for the add set property */
 	protected static final String ADDSET = "addset"; 
 
@@ -47,10 +156,37 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	
 	/** The ADD set. */
 	@JsonProperty(ADDSET)
-	private Collection<Operation> addSet;
+	private NavigableSet<Operation> addSet;
 
 	/** The REMOVE set. */
-	private Collection<Operation> remSet;
+	private NavigableSet<Operation> remSet;
+	
+	/** A read only view of the ADD set for public consumption */
+	private NavigableSet<Operation> addView;
+	
+	/** A read only view of the REMOVE set for public consumption */
+	private NavigableSet<Operation> remView;
+	
+	/** The effective set, consisting of the elements of the ADD set which are not in the REMOVE set; kept current as operations arrive */
+	private NavigableSet<Operation> opsSet;
+	
+	/** A read only view of the effective set for public consumption */
+	private NavigableSet<Operation> opsView;
+	
+	/** The number of operations of each OperationType in the effective set, indexed by the ordinal of the OperationType */
+	private long[] typeCounts;
+	
+	/** The sequence number of the most recent insertion into either the ADD or REMOVE set */
+	private long sequence = 0L;
+	
+	/** The operations of the ADD set in order of insertion, with the sequence number of each insertion */
+	private Journal addJournal;
+	
+	/** The operations of the REMOVE set in order of insertion, with the sequence number of each insertion */
+	private Journal remJournal;
+	
+	/** The digest of the ADD and REMOVE sets; kept current as operations arrive once it has been built */
+	private MerkleDigest digest;
 	
 	/** Default constructor for the two set instance... no fields are initialized */
 	public OperationTwoSet() { }
@@ -73,6 +209,8 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 						   @JsonProperty(REMSET) Collection<Operation> remset) {
 		this.getAddSet().addAll(addset);
 		this.getRemSet().addAll(remset);
+		this.getAddSet().forEach(op -> this.getAddJournal().append(++this.sequence, op));
+		this.getRemSet().forEach(op -> this.getRemJournal().append(++this.sequence, op));
 	}
 
 	/**
@@ -80,7 +218,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 *
 	 * @return the ADD set
 	 */
-	private Collection<Operation> getAddSet() {
+	private NavigableSet<Operation> getAddSet() {
 		if (null == this.addSet) {
 			this.addSet = new TreeSet<>();
 		}
@@ -93,7 +231,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 *
 	 * @return the REMOVE set
 	 */
-	private Collection<Operation> getRemSet() {
+	private NavigableSet<Operation> getRemSet() {
 		if (null == this.remSet) {
 			this.remSet = new TreeSet<>();
 		}
@@ -101,7 +239,120 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	}
 	
 	/**
-	 * Generate and retrieve a copy of the add set for public consumption
+	 * This method retrieves the operations of the ADD set in order of insertion.
+	 *
+	 * @return the journal of the ADD set
+	 */
+	private Journal getAddJournal() {
+		if (null == this.addJournal) {
+			this.addJournal = new Journal();
+		}
+		
+		return this.addJournal;
+	}
+	
+	/**
+	 * This method retrieves the operations of the REMOVE set in order of insertion.
+	 *
+	 * @return the journal of the REMOVE set
+	 */
+	private Journal getRemJournal() {
+		if (null == this.remJournal) {
+			this.remJournal = new Journal();
+		}
+		
+		return this.remJournal;
+	}
+	
+	/**
+	 * Retrieve the Merkle digest of the ADD and REMOVE sets, building it from them if it does not yet exist.  Once built, the digest
+	 * is kept current as operations are inserted, truncated or cleared.  Replicas holding the same operations have equal root hashes,
+	 * and MerkleDigest.diverge locates the time ranges in which replicas differ.
+	 * 
+	 * @return The digest of the ADD and REMOVE sets
+	 */
+	@JsonIgnore
+	public MerkleDigest getDigest() {
+		if (null == this.digest) {
+			this.digest = new MerkleDigest();
+			this.getAddSet().forEach(op -> this.digest.add(op, false));
+			this.getRemSet().forEach(op -> this.digest.add(op, true));
+		}
+		
+		return this.digest;
+	}
+	
+	/**
+	 * Retrieve the sequence number of the most recent insertion into either the ADD or REMOVE set.  Sequence numbers are local to this
+	 * instance, start at zero and increase by one with each operation inserted, so they identify the point up to which a peer has been
+	 * sent the operations of this CRDT.
+	 * 
+	 * @return The sequence number of the most recent insertion
+	 */
+	@JsonIgnore
+	public long getSequence() {
+		return this.sequence;
+	}
+	
+	/**
+	 * Retrieve the operations inserted into the ADD set after the given sequence number, in order of insertion
+	 * 
+	 * @param since The sequence number following which to retrieve the operations
+	 * @return The operations of the ADD set inserted after the given sequence number
+	 */
+	public Collection<Operation> getAddsSince(long since) {
+		return this.getAddJournal().since(since);
+	}
+	
+	/**
+	 * Retrieve the operations inserted into the REMOVE set after the given sequence number, in order of insertion
+	 * 
+	 * @param since The sequence number following which to retrieve the operations
+	 * @return The operations of the REMOVE set inserted after the given sequence number
+	 */
+	public Collection<Operation> getRemsSince(long since) {
+		return this.getRemJournal().since(since);
+	}
+	
+	/**
+	 * This method retrieves the effective set, building it from the ADD and REMOVE sets if it does not yet exist.
+	 *
+	 * @return the effective set
+	 */
+	private NavigableSet<Operation> getEffectiveSet() {
+		if (null == this.opsSet) {
+			this.opsSet = diff(this.getAddSet(), this.getRemSet());
+			this.typeCounts = countOperations(this.opsSet);
+		}
+		
+		return this.opsSet;
+	}
+	
+	/**
+	 * This method retrieves the number of operations of the given OperationType in the effective set
+	 *
+	 * @param type The OperationType to count
+	 * @return The number of operations of the given OperationType in the effective set
+	 */
+	private long getTypeCount(OperationType type) {
+		this.getEffectiveSet();
+		return this.typeCounts[type.ordinal()] + this.countFolded(type);
+	}
+	
+	/**
+	 * This method retrieves the number of operations of the given OperationType which were removed from the effective set when they were
+	 * folded into a baseline.  Derived classes which fold operations override this so the counts of the CRDT include them.
+	 *
+	 * @param type The OperationType to count
+	 * @return The number of folded operations of the given OperationType
+	 */
+	protected long countFolded(OperationType type) {
+		return 0L;
+	}
+	
+	/**
+	 * Generate and retrieve a copy of the add set for public consumption.  The copy may be changed freely and does not reflect later
+	 * changes to the add set.  Since operations are immutable, the copy shares them with the add set rather than duplicating them.
 	 * @return A copy of the add set
 	 */
 	@JsonProperty(ADDSET)
@@ -110,13 +361,44 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	}
 
 	/**
-	 * Generate and retrieve a copy of the remove set for public consumption
+	 * Generate and retrieve a copy of the remove set for public consumption.  The copy may be changed freely and does not reflect later
+	 * changes to the remove set.  Since operations are immutable, the copy shares them with the remove set rather than duplicating them.
 	 * @return A copy of the remove set
 	 */
 	@JsonProperty(REMSET)
 	public Collection<Operation> copyRemSet() {
 		return Operation.copy(this.getRemSet());
 	}
+	
+	/**
+	 * Retrieve a read only view of the add set, which avoids copying it.  The view is live: it reflects every later change to the add
+	 * set, so it must not be iterated while another thread may change the CRDT, and an attempt to change it through the view fails
+	 * with an UnsupportedOperationException.
+	 * @return A live, read only view of the add set
+	 */
+	@JsonIgnore
+	public NavigableSet<Operation> getAddView() {
+		if (null == this.addView) {
+			this.addView = Collections.unmodifiableNavigableSet(this.getAddSet());
+		}
+		
+		return this.addView;
+	}
+	
+	/**
+	 * Retrieve a read only view of the remove set, which avoids copying it.  The view is live: it reflects every later change to the
+	 * remove set, so it must not be iterated while another thread may change the CRDT, and an attempt to change it through the view
+	 * fails with an UnsupportedOperationException.
+	 * @return A live, read only view of the remove set
+	 */
+	@JsonIgnore
+	public NavigableSet<Operation> getRemView() {
+		if (null == this.remView) {
+			this.remView = Collections.unmodifiableNavigableSet(this.getRemSet());
+		}
+		
+		return this.remView;
+	}
 
 	/**
 	 * Retrieve the number of elements in the Add Set 
@@ -152,18 +434,118 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 * Insert an operation to the ADD set 
 	 *
 	 * @param op The operation to add to the ADD set
+	 * @return True exactly when the operation was not already in the ADD set
 	 */
-	protected void addOperation(Operation op) {
-		this.getAddSet().add(op);
+	protected boolean addOperation(Operation op) {
+		NavigableSet<Operation> effective = this.getEffectiveSet();
+		
+		if (!this.getAddSet().add(op)) {
+			return false;
+		} else if (!this.getRemSet().contains(op) && effective.add(op)) {
+			++this.typeCounts[op.getType().ordinal()];
+		}
+		
+		this.getAddJournal().append(++this.sequence, op);
+		
+		if (null != this.digest) {
+			this.digest.add(op, false);
+		}
+		
+		return true;
 	}
 	
 	/**
 	 * Insert an operation to the REMOVE set 
 	 *
 	 * @param op The operation to add to the REMOVE set
+	 * @return True exactly when the operation was not already in the REMOVE set
+	 */
+	protected boolean remOperation(Operation op) {
+		NavigableSet<Operation> effective = this.getEffectiveSet();
+		
+		if (!this.getRemSet().add(op)) {
+			return false;
+		}
+		
+		if (effective.remove(op)) {
+			--this.typeCounts[op.getType().ordinal()];
+		}
+		
+		this.getRemJournal().append(++this.sequence, op);
+		
+		if (null != this.digest) {
+			this.digest.add(op, true);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Determine whether the given operation is in the ADD set 
+	 *
+	 * @param op The operation to look for in the ADD set
+	 * @return True exactly when the operation is in the ADD set
 	 */
-	protected void remOperation(Operation op) {
-		this.getRemSet().add(op);
+	protected boolean isAdded(Operation op) {
+		return this.getAddSet().contains(op);
+	}
+	
+	/**
+	 * Determine whether the given operation is in the REMOVE set 
+	 *
+	 * @param op The operation to look for in the REMOVE set
+	 * @return True exactly when the operation is in the REMOVE set
+	 */
+	protected boolean isRemoved(Operation op) {
+		return this.getRemSet().contains(op);
+	}
+	
+	/**
+	 * Collect the operations in the ADD set of the given CRDT which are not in the ADD set of this one.  Both sets are traversed together
+	 * in timestamp order, so this takes time linear in their combined size.
+	 *
+	 * @param src The CRDT whose ADD set is compared against this one
+	 * @return The operations missing from the ADD set of this CRDT, in timestamp order
+	 */
+	protected List<Operation> getMissingAdds(OperationTwoSet src) {
+		return missing(src.getAddSet(), this.getAddSet());
+	}
+	
+	/**
+	 * Collect the operations in the REMOVE set of the given CRDT which are not in the REMOVE set of this one.  Both sets are traversed
+	 * together in timestamp order, so this takes time linear in their combined size.
+	 *
+	 * @param src The CRDT whose REMOVE set is compared against this one
+	 * @return The operations missing from the REMOVE set of this CRDT, in timestamp order
+	 */
+	protected List<Operation> getMissingRems(OperationTwoSet src) {
+		return missing(src.getRemSet(), this.getRemSet());
+	}
+	
+	/**
+	 * This private static function returns the elements of the set on the LHS which are not in the set on the RHS by a sorted merge of
+	 * the two sets
+	 *
+	 * @param lhs The set whose elements are collected
+	 * @param rhs The set whose elements are excluded
+	 * @return The elements of LHS which are not in RHS, in order
+	 */
+	private static List<Operation> missing(NavigableSet<Operation> lhs, NavigableSet<Operation> rhs) {
+		List<Operation> rv = new ArrayList<>();
+		Iterator<Operation> it = rhs.iterator();
+		Operation current = it.hasNext() ? it.next() : null;
+		
+		for (Operation op : lhs) {
+			while (null != current && current.compareTo(op) < 0) {
+				current = it.hasNext() ? it.next() : null;
+			}
+			
+			if (null == current || 0 != current.compareTo(op)) {
+				rv.add(op);
+			}
+		}
+		
+		return rv;
 	}
 	
 	/**
@@ -173,8 +555,8 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 * @param rhs The right hand side of the difference operator
 	 * @return The set of elements resulting from removing all of the elements in RHS from LHS
 	 */
-	private static Collection<Operation> diff(Collection<Operation> lhs, Collection<Operation> rhs) {
-		Collection<Operation> rv = new TreeSet<>();
+	private static NavigableSet<Operation> diff(Collection<Operation> lhs, Collection<Operation> rhs) {
+		NavigableSet<Operation> rv = new TreeSet<>();
 		rv.addAll(lhs);
 		rv.removeAll(rhs);
 		return rv;
@@ -182,21 +564,153 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	
 	/**
 	 * This method returns the collection of elements in the ADD set after those in the REMOVE set have been
-	 * removed.
+	 * removed.  The result is a read only view which reflects subsequent changes to the ADD and REMOVE sets.
 	 *
 	 * @return The operations which are active in this Two Set CRDT
 	 */
 	@JsonIgnore
-	public Collection<Operation> getOpsSet() {
-		return diff(this.getAddSet(), this.getRemSet());
+	public NavigableSet<Operation> getOpsSet() {
+		if (null == this.opsView) {
+			this.opsView = Collections.unmodifiableNavigableSet(this.getEffectiveSet());
+		}
+		
+		return this.opsView;
+	}
+
+	/**
+	 * Move the patches of the UPDATE operations at or before the given horizon into the given store.  Each such operation is replaced in
+	 * the ADD, REMOVE and effective sets by an archived copy which retains its timestamp, identifier and type on the heap and reads its
+	 * patch from the store when needed.  Since the archived copy is equal to the operation it replaces, the state of the CRDT is unchanged.
+	 *
+	 * @param horizon The latest timestamp of the operations to archive
+	 * @param store The store to hold the archived patches
+	 * @return The number of operations archived
+	 * @throws IOException results when a patch cannot be written to the store
+	 */
+	public long archive(long horizon, MappedSegmentStore store) throws IOException {
+		NavigableSet<Operation> effective = this.getEffectiveSet();
+		List<Operation> archived = new ArrayList<>();
+		
+		for (Operation op : this.getAddSet()) {
+			if (op.getTimestamp() > horizon) {
+				break;
+			} else if (op.isUpdate() && !op.isArchived()) {
+				archived.add(store.archive(op));
+			}
+		}
+		
+		for (Operation op : this.getRemSet()) {
+			if (op.getTimestamp() > horizon) {
+				break;
+			} else if (op.isUpdate() && !op.isArchived() && !this.getAddSet().contains(op)) {
+				archived.add(store.archive(op));
+			}
+		}
+		
+		for (Operation op : archived) {
+			replace(this.getAddSet(), op);
+			replace(this.getRemSet(), op);
+			replace(effective, op);
+		}
+		
+		if (!archived.isEmpty()) {
+			NavigableSet<Operation> replacements = new TreeSet<>(archived);
+			this.getAddJournal().replace(horizon, replacements);
+			this.getRemJournal().replace(horizon, replacements);
+		}
+		
+		return archived.size();
+	}
+	
+	/**
+	 * Replace the element of a set equal to the given operation, if there is one, with the given operation
+	 *
+	 * @param set The set in which to replace the element
+	 * @param op The operation to replace the equal element with
+	 */
+	private static void replace(NavigableSet<Operation> set, Operation op) {
+		if (set.remove(op)) {
+			set.add(op);
+		}
 	}
 
 	/**
-	 * This method removes all elements in both the ADD and REMOVE sets, effectively reseting them to empty.
+	 * Remove every operation at or before the given timestamp from the ADD, REMOVE and effective sets.  This includes operations in the
+	 * effective set as well as those in both the ADD and REMOVE sets, which cancel each other out.
+	 *
+	 * @param timestamp The latest timestamp of the operations to remove
+	 * @return The number of operations of each OperationType removed from the effective set, indexed by the ordinal of the OperationType
+	 */
+	protected long[] truncate(long timestamp) {
+		long[] rv = new long[OperationType.values().length];
+		
+		for (Iterator<Operation> it = this.getEffectiveSet().iterator(); it.hasNext(); ) {
+			Operation op = it.next();
+			
+			if (op.getTimestamp() > timestamp) {
+				break;
+			}
+			
+			++rv[op.getType().ordinal()];
+			--this.typeCounts[op.getType().ordinal()];
+			it.remove();
+		}
+		
+		truncate(this.getAddSet(), timestamp, op -> this.forget(op, false));
+		truncate(this.getRemSet(), timestamp, op -> this.forget(op, true));
+		this.getAddJournal().truncate(timestamp);
+		this.getRemJournal().truncate(timestamp);
+		
+		return rv;
+	}
+	
+	/**
+	 * Remove every operation at or before the given timestamp from a set ordered by timestamp
+	 *
+	 * @param set The set from which to remove the operations
+	 * @param timestamp The latest timestamp of the operations to remove
+	 * @param action The action to perform on each operation removed
+	 */
+	private static void truncate(NavigableSet<Operation> set, long timestamp, Consumer<Operation> action) {
+		for (Iterator<Operation> it = set.iterator(); it.hasNext(); ) {
+			Operation op = it.next();
+			
+			if (op.getTimestamp() > timestamp) {
+				break;
+			}
+			
+			action.accept(op);
+			it.remove();
+		}
+	}
+	
+	/**
+	 * Remove an operation dropped from the ADD or REMOVE set from the digest, if the digest has been built
+	 *
+	 * @param op The operation dropped
+	 * @param removed True when the operation was in the REMOVE set, false when it was in the ADD set
+	 */
+	private void forget(Operation op, boolean removed) {
+		if (null != this.digest) {
+			this.digest.remove(op, removed);
+		}
+	}
+
+	/**
+	 * This method removes all elements in both the ADD and REMOVE sets, effectively reseting them to empty.  The sequence number is
+	 * retained, so the operations inserted afterward follow any a peer has already been sent.
 	 */
 	public void clear() {
 		this.getAddSet().clear();
 		this.getRemSet().clear();
+		this.getAddJournal().clear();
+		this.getRemJournal().clear();
+		this.getEffectiveSet().clear();
+		Arrays.fill(this.typeCounts, 0L);
+		
+		if (null != this.digest) {
+			this.digest.clear();
+		}
 	}
 
 	/**
@@ -233,7 +747,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	@Override
 	@JsonIgnore
 	public boolean isCreated() {
-		return doesTypeExist(this.getOpsSet(), OperationType.CREATE);
+		return 0 < this.getTypeCount(OperationType.CREATE);
 	}
 
 	/* (non-Javadoc)
@@ -242,7 +756,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	@Override
 	@JsonIgnore
 	public boolean isRead() {
-		return doesTypeExist(this.getOpsSet(), OperationType.READ);
+		return 0 < this.getTypeCount(OperationType.READ);
 	}
 
 	/* (non-Javadoc)
@@ -251,7 +765,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	@Override
 	@JsonIgnore
 	public boolean isUpdated() {
-		return doesTypeExist(this.getOpsSet(), OperationType.UPDATE);
+		return 0 < this.getTypeCount(OperationType.UPDATE);
 	}
 
 	/* (non-Javadoc)
@@ -260,7 +774,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	@Override
 	@JsonIgnore
 	public boolean isDeleted() {
-		return doesTypeExist(this.getOpsSet(), OperationType.DELETE);
+		return 0 < this.getTypeCount(OperationType.DELETE);
 	}
 	
 	/**
@@ -281,13 +795,28 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 		
 		return rv;
 	}
+	
+	/**
+	 * This static method counts the number of Operation instances of each OperationType in the collection provided
+	 * 
+	 * @param ops Collection of Operations to count
+	 * @return Number of Operation instances of each OperationType, indexed by the ordinal of the OperationType
+	 */
+	protected static long[] countOperations(Collection<Operation> ops) {
+		long[] rv = new long[OperationType.values().length];
+		for (Operation op : ops) {
+			++rv[op.getType().ordinal()];
+		}
+		
+		return rv;
+	}
 
 	/* (non-Javadoc)
 	 * @see com.cyberfront.crdt.AbstractCRDT#countCreated()
 	 */
 	@Override
 	public long countCreated() {
-		return countOperations(this.getOpsSet(), OperationType.CREATE);
+		return this.getTypeCount(OperationType.CREATE);
 	}
 	
 	/* (non-Javadoc)
@@ -295,7 +824,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 */
 	@Override
 	public long countRead() {
-		return countOperations(this.getOpsSet(), OperationType.READ);
+		return this.getTypeCount(OperationType.READ);
 	}
 	
 	/* (non-Javadoc)
@@ -303,7 +832,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 */
 	@Override
 	public long countUpdate() {
-		return countOperations(this.getOpsSet(), OperationType.UPDATE);
+		return this.getTypeCount(OperationType.UPDATE);
 	}
 	
 	/* (non-Javadoc)
@@ -311,7 +840,7 @@ public abstract class OperationTwoSet extends AbstractCRDT {
 	 */
 	@Override
 	public long countDelete() {
-		return countOperations(this.getOpsSet(), OperationType.DELETE);
+		return this.getTypeCount(OperationType.DELETE);
 	}
 	
 	/* (non-Javadoc)
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.cyberfront.crdt.support.Support;
+
+/**
+ * The StabilityTracker class records, for each replica of an object, the latest timestamp that replica has acknowledged.  An
+ * acknowledgement of a timestamp states the replica has received every operation on the object at or before that timestamp, and that
+ * no further operation at or before it will be issued.  The causally stable timestamp is the least of the acknowledgements of every
+ * replica; every replica has seen every operation at or before it, so the history up to it can be compacted.
+ * 
+ * The stable timestamp is only as sound as the set of replicas known to the tracker.  Each replica must be registered, either with
+ * addReplica or through its first acknowledgement, before the stable timestamp is relied upon.
+ */
+public class StabilityTracker {
+	/** Timestamp reported for a replica which has acknowledged nothing, and as the stable timestamp when there are no replicas */
+	public static final long UNACKNOWLEDGED = Long.MIN_VALUE;
+	
+	/** The latest timestamp acknowledged by each replica, keyed by the replica identifier */
+	private Map<UUID, Long> acknowledgements;
+	
+	/** The least of the acknowledgements; kept current as acknowledgements arrive */
+	private long stableTimestamp = UNACKNOWLEDGED;
+	
+	/**
+	 * Retrieve the latest timestamp acknowledged by each replica
+	 * @return The acknowledgements keyed by the replica identifier
+	 */
+	private Map<UUID, Long> getAcknowledgements() {
+		if (null == this.acknowledgements) {
+			this.acknowledgements = new TreeMap<>();
+		}
+		
+		return this.acknowledgements;
+	}
+	
+	/**
+	 * Register a replica which has not yet acknowledged any timestamp.  This holds the stable timestamp back until the replica
+	 * acknowledges one.  Registering a replica already known has no effect.
+	 * @param replica The identifier of the replica
+	 */
+	public void addReplica(UUID replica) {
+		if (null == this.getAcknowledgements().putIfAbsent(replica, UNACKNOWLEDGED)) {
+			this.stableTimestamp = UNACKNOWLEDGED;
+		}
+	}
+	
+	/**
+	 * Record an acknowledgement from a replica, registering the replica if it is not yet known.  Acknowledgements never move back, so
+	 * one earlier than the latest from the same replica is ignored.
+	 * @param replica The identifier of the replica
+	 * @param timestamp The timestamp the replica acknowledges
+	 * @return True exactly when the stable timestamp advanced as a result
+	 */
+	public boolean acknowledge(UUID replica, long timestamp) {
+		Long previous = this.getAcknowledgements().get(replica);
+		
+		if (null != previous && previous >= timestamp) {
+			return false;
+		}
+		
+		this.getAcknowledgements().put(replica, timestamp);
+		long stable;
+		
+		if (null == previous) {
+			stable = 1 == this.getReplicaCount() ? timestamp : Math.min(this.stableTimestamp, timestamp);
+		} else if (previous > this.stableTimestamp) {
+			return false;
+		} else {
+			stable = this.getAcknowledgements().values().stream().mapToLong(Long::longValue).min().orElse(UNACKNOWLEDGED);
+		}
+		
+		boolean rv = stable > this.stableTimestamp;
+		this.stableTimestamp = stable;
+		
+		return rv;
+	}
+	
+	/**
+	 * Retrieve the latest timestamp acknowledged by the given replica
+	 * @param replica The identifier of the replica
+	 * @return The latest timestamp the replica acknowledged, or UNACKNOWLEDGED if it has acknowledged none
+	 */
+	public long getAcknowledgement(UUID replica) {
+		return this.getAcknowledgements().getOrDefault(replica, UNACKNOWLEDGED);
+	}
+	
+	/**
+	 * Retrieve the causally stable timestamp, the least of the acknowledgements of every replica
+	 * @return The stable timestamp, or UNACKNOWLEDGED if there are no replicas or one has acknowledged nothing
+	 */
+	public long getStableTimestamp() {
+		return this.stableTimestamp;
+	}
+	
+	/**
+	 * Retrieve the number of replicas known to the tracker
+	 * @return The number of replicas
+	 */
+	public int getReplicaCount() {
+		return this.getAcknowledgements().size();
+	}
+	
+	/**
+	 * Forget every replica and acknowledgement
+	 */
+	public void clear() {
+		this.getAcknowledgements().clear();
+		this.stableTimestamp = UNACKNOWLEDGED;
+	}
+	
+	/**
+	 * Retrieve a string segment used in the toString() method to build up JSON formatted string
+	 * @return The JSON formated string segment
+	 */
+	protected String getSegment() {
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("\"stableTimestamp\":" + this.getStableTimestamp() + ",");
+		sb.append("\"acknowledgements\":" + Support.convert(this.getAcknowledgements()));
+		
+		return sb.toString();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{" + this.getSegment() + "}";
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
+
+import com.cyberfront.crdt.LastWriteWins;
+import com.cyberfront.crdt.LastWriteWins.Baseline;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.Operation.OperationType;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The BinaryCodec class encodes Operation, OperationManager and LastWriteWins instances in a compact binary form, and decodes them
+ * again.  Operation identifiers are written as two longs, timestamps and counts as variable length integers, enumerations as a single
+ * byte, and the JSON Patch of an UPDATE operation in the Smile binary JSON format.  No type names are written.
+ * 
+ * OperationManager instances of a derived class carry fields the compact form does not hold.  These are written as the Smile encoding of
+ * their JSON form, type name included, so every OperationManager decodes to an instance equal to the one encoded.  The Baseline of a
+ * compacted LastWriteWins CRDT follows its operations in the same way.
+ */
+public final class BinaryCodec {
+	/** Marker for an OperationManager written in the compact form */
+	private static final byte COMPACT_MANAGER = 0;
+	
+	/** Marker for an OperationManager written as the Smile encoding of its JSON form */
+	private static final byte SMILE_MANAGER = 1;
+	
+	/** The ObjectMapper used to read and write Smile encoded JSON */
+	private static final ObjectMapper mapper = new ObjectMapper(new SmileFactory());
+	
+	/** Cached copies of the enumeration values, indexed by their ordinals */
+	private static final OperationType[] OPERATION_TYPES = OperationType.values();
+	
+	/** Cached copies of the enumeration values, indexed by their ordinals */
+	private static final StatusType[] STATUS_TYPES = StatusType.values();
+	
+	/**
+	 * The BinaryCodec holds only static methods and is not instantiated
+	 */
+	private BinaryCodec() { }
+	
+	/**
+	 * Retrieve the ObjectMapper used to read and write Smile encoded JSON
+	 * @return The ObjectMapper for Smile encoded JSON
+	 */
+	private static ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * Encode an operation as an array of bytes
+	 * @param op The operation to encode
+	 * @return The encoded operation
+	 */
+	public static byte[] encode(Operation op) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		try {
+			write(new DataOutputStream(bytes), op);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Encode an operation manager as an array of bytes
+	 * @param mgr The operation manager to encode
+	 * @return The encoded operation manager
+	 */
+	public static byte[] encode(OperationManager mgr) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		try {
+			write(new DataOutputStream(bytes), mgr);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Encode a LastWriteWins CRDT as an array of bytes
+	 * @param crdt The CRDT to encode
+	 * @return The encoded CRDT
+	 */
+	public static byte[] encode(LastWriteWins crdt) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		try {
+			write(new DataOutputStream(bytes), crdt);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Decode an operation from an array of bytes
+	 * @param bytes The encoded operation
+	 * @return The operation decoded
+	 * @throws IOException results when the bytes do not hold an encoded operation
+	 */
+	public static Operation decodeOperation(byte[] bytes) throws IOException {
+		return readOperation(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+	
+	/**
+	 * Decode an operation manager from an array of bytes
+	 * @param bytes The encoded operation manager
+	 * @return The operation manager decoded
+	 * @throws IOException results when the bytes do not hold an encoded operation manager
+	 */
+	public static OperationManager decodeOperationManager(byte[] bytes) throws IOException {
+		return readOperationManager(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+	
+	/**
+	 * Decode a LastWriteWins CRDT from an array of bytes
+	 * @param bytes The encoded CRDT
+	 * @return The CRDT decoded
+	 * @throws IOException results when the bytes do not hold an encoded CRDT
+	 */
+	public static LastWriteWins decodeLastWriteWins(byte[] bytes) throws IOException {
+		return readLastWriteWins(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+	
+	/**
+	 * Write an operation
+	 * @param out The destination for the encoded operation
+	 * @param op The operation to write
+	 * @throws IOException results when the destination cannot be written
+	 */
+	public static void write(DataOutput out, Operation op) throws IOException {
+		out.writeByte(op.getType().ordinal());
+		out.writeLong(op.getId().getMostSignificantBits());
+		out.writeLong(op.getId().getLeastSignificantBits());
+		writeVarLong(out, op.getTimestamp());
+		
+		if (null != op.getOp()) {
+			writeBytes(out, getMapper().writeValueAsBytes(op.getOp()));
+		}
+	}
+	
+	/**
+	 * Read an operation
+	 * @param in The source of the encoded operation
+	 * @return The operation read
+	 * @throws IOException results when the source cannot be read or does not hold an encoded operation
+	 */
+	public static Operation readOperation(DataInput in) throws IOException {
+		OperationType type = OPERATION_TYPES[readOrdinal(in, OPERATION_TYPES.length)];
+		UUID id = new UUID(in.readLong(), in.readLong());
+		long timestamp = readVarLong(in);
+		JsonNode op = OperationType.UPDATE == type ? getMapper().readTree(readBytes(in)) : null;
+		
+		try {
+			return new Operation(id, type, op, timestamp);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Write an operation manager
+	 * @param out The destination for the encoded operation manager
+	 * @param mgr The operation manager to write
+	 * @throws IOException results when the destination cannot be written
+	 */
+	public static void write(DataOutput out, OperationManager mgr) throws IOException {
+		if (OperationManager.class.equals(mgr.getClass())) {
+			out.writeByte(COMPACT_MANAGER);
+			out.writeByte(mgr.getStatus().ordinal());
+			write(out, mgr.getOperation());
+		} else {
+			out.writeByte(SMILE_MANAGER);
+			writeBytes(out, getMapper().writeValueAsBytes(mgr));
+		}
+	}
+	
+	/**
+	 * Read an operation manager
+	 * @param in The source of the encoded operation manager
+	 * @return The operation manager read
+	 * @throws IOException results when the source cannot be read or does not hold an encoded operation manager
+	 */
+	public static OperationManager readOperationManager(DataInput in) throws IOException {
+		switch (in.readByte()) {
+		case COMPACT_MANAGER:
+			StatusType status = STATUS_TYPES[readOrdinal(in, STATUS_TYPES.length)];
+			return new OperationManager(status, readOperation(in));
+		case SMILE_MANAGER:
+			return getMapper().readValue(readBytes(in), OperationManager.class);
+		default:
+			throw new IOException("Unknown operation manager encoding");
+		}
+	}
+	
+	/**
+	 * Write a LastWriteWins CRDT.  Its ADD and REMOVE sets are written through their live views rather than copied, so the CRDT must
+	 * not change while it is written; the CRDT of a ConcurrentCRDTManager must be written within execute().
+	 * @param out The destination for the encoded CRDT
+	 * @param crdt The CRDT to write
+	 * @throws IOException results when the destination cannot be written
+	 */
+	public static void write(DataOutput out, LastWriteWins crdt) throws IOException {
+		write(out, crdt.getAddView());
+		write(out, crdt.getRemView());
+		
+		if (null == crdt.getBaseline()) {
+			out.writeBoolean(false);
+		} else {
+			out.writeBoolean(true);
+			writeBytes(out, getMapper().writeValueAsBytes(crdt.getBaseline()));
+		}
+	}
+	
+	/**
+	 * Read a LastWriteWins CRDT
+	 * @param in The source of the encoded CRDT
+	 * @return The CRDT read
+	 * @throws IOException results when the source cannot be read or does not hold an encoded CRDT
+	 */
+	public static LastWriteWins readLastWriteWins(DataInput in) throws IOException {
+		Collection<Operation> addset = readOperations(in);
+		Collection<Operation> remset = readOperations(in);
+		Baseline baseline = in.readBoolean() ? getMapper().readValue(readBytes(in), Baseline.class) : null;
+		
+		return new LastWriteWins(addset, remset, baseline);
+	}
+	
+	/**
+	 * Write a collection of operations, preceded by their number
+	 * @param out The destination for the encoded operations
+	 * @param ops The operations to write
+	 * @throws IOException results when the destination cannot be written
+	 */
+	private static void write(DataOutput out, Collection<Operation> ops) throws IOException {
+		writeVarLong(out, ops.size());
+		
+		for (Operation op : ops) {
+			write(out, op);
+		}
+	}
+	
+	/**
+	 * Read a collection of operations preceded by their number
+	 * @param in The source of the encoded operations
+	 * @return The operations read
+	 * @throws IOException results when the source cannot be read or does not hold encoded operations
+	 */
+	private static Collection<Operation> readOperations(DataInput in) throws IOException {
+		long count = readVarLong(in);
+		Collection<Operation> rv = new ArrayList<>();
+		
+		for (long i = 0; i < count; ++i) {
+			rv.add(readOperation(in));
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Read a single byte ordinal of an enumeration and check it is in range
+	 * @param in The source of the ordinal
+	 * @param limit The number of values in the enumeration
+	 * @return The ordinal read
+	 * @throws IOException results when the source cannot be read or the ordinal is out of range
+	 */
+	private static int readOrdinal(DataInput in, int limit) throws IOException {
+		int rv = in.readUnsignedByte();
+		
+		if (rv >= limit) {
+			throw new IOException("Enumeration ordinal out of range: " + rv);
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Write an array of bytes preceded by its length
+	 * @param out The destination for the bytes
+	 * @param bytes The bytes to write
+	 * @throws IOException results when the destination cannot be written
+	 */
+	private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Read an array of bytes preceded by its length
+	 * @param in The source of the bytes
+	 * @return The bytes read
+	 * @throws IOException results when the source cannot be read or the length is invalid
+	 */
+	private static byte[] readBytes(DataInput in) throws IOException {
+		long length = readVarLong(in);
+		
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Encoded length out of range: " + length);
+		}
+		
+		byte[] rv = new byte[(int) length];
+		in.readFully(rv);
+		
+		return rv;
+	}
+	
+	/**
+	 * Write a non-negative long as a variable length integer, seven bits to each byte with the high bit set on all but the last byte
+	 * @param out The destination for the value
+	 * @param value The value to write, which must not be negative
+	 * @throws IOException results when the destination cannot be written
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		if (value < 0) {
+			throw new IllegalArgumentException("Variable length integers must not be negative: " + value);
+		}
+		
+		while (value >= 0x80L) {
+			out.writeByte((int) (value & 0x7FL) | 0x80);
+			value >>>= 7;
+		}
+		
+		out.writeByte((int) value);
+	}
+	
+	/**
+	 * Read a non-negative long written as a variable length integer
+	 * @param in The source of the value
+	 * @return The value read
+	 * @throws IOException results when the source cannot be read or does not hold a valid variable length integer
+	 */
+	public static long readVarLong(DataInput in) throws IOException {
+		long rv = 0L;
+		
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			int b = in.readUnsignedByte();
+			rv |= (long) (b & 0x7F) << shift;
+			
+			if (0 == (b & 0x80)) {
+				if (rv < 0) {
+					throw new IOException("Variable length integer out of range");
+				}
+				
+				return rv;
+			}
+		}
+		
+		throw new IOException("Variable length integer too long");
+	}
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.cyberfront.crdt.codec.BinaryCodec;
+import com.cyberfront.crdt.operation.OperationManager;
+
+/**
+ * The OperationLog class is a durable, append-only log of OperationManager instances.  Records are appended to segment files in a
+ * directory, and a new segment is started once the current one reaches the segment size.  Each record is framed by the length of its
+ * payload and a CRC32 checksum of the payload, and the payload is the BinaryCodec encoding of the OperationManager.
+ * 
+ * A crash can leave the final record of the last segment partially written.  When a log is opened, the last segment is scanned and
+ * truncated at the first record which is incomplete or fails its checksum, so appends resume after the last intact record.  A damaged
+ * record in any earlier segment cannot be the result of a torn write, and is reported as an error when the log is replayed.
+ * 
+ * How often appended records are forced to the storage device is governed by the SyncPolicy.  Records which have not been forced may be
+ * lost in a crash, though the log remains readable up to the last intact record.
+ */
+public class OperationLog implements Closeable {
+	
+	/**
+	 * The Enum SyncPolicy lists the ways appended records can be forced to the storage device
+	 */
+	public enum SyncPolicy {
+		/** Force each record as it is appended */
+		PER_OPERATION,
+		
+		/** Force records once the group size number of them have been appended since the last force */
+		GROUP,
+		
+		/** Force records on the first append once the sync interval has passed since the last force */
+		INTERVAL
+	}
+	
+	/** Default policy for forcing records to the storage device */
+	public static final SyncPolicy DEFAULT_SYNC_POLICY = SyncPolicy.PER_OPERATION;
+	
+	/** Default number of records appended between forces under the GROUP policy */
+	public static final int DEFAULT_GROUP_SIZE = 32;
+	
+	/** Default number of milliseconds between forces under the INTERVAL policy */
+	public static final long DEFAULT_SYNC_INTERVAL = 100L;
+	
+	/** Default size in bytes at which a new segment is started */
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024L * 1024L;
+	
+	/** File name suffix for segment files */
+	private static final String SEGMENT_SUFFIX = ".log";
+	
+	/** Number of bytes framing each record; the payload length followed by the payload checksum */
+	private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+	/** Logger to use when displaying state information */
+	private static final Logger logger = LogManager.getLogger(OperationLog.class);
+
+	/** Directory holding the segment files */
+	private final Path directory;
+	
+	/** Segment files in the order they were written */
+	private final List<Path> segments;
+	
+	/** Channel to the last segment, to which records are appended */
+	private FileChannel channel;
+	
+	/** Policy for forcing records to the storage device */
+	private SyncPolicy syncPolicy = DEFAULT_SYNC_POLICY;
+	
+	/** Number of records appended between forces under the GROUP policy */
+	private int groupSize = DEFAULT_GROUP_SIZE;
+	
+	/** Number of milliseconds between forces under the INTERVAL policy */
+	private long syncInterval = DEFAULT_SYNC_INTERVAL;
+	
+	/** Size in bytes at which a new segment is started */
+	private long segmentSize = DEFAULT_SEGMENT_SIZE;
+	
+	/** Number of records appended since the last force */
+	private int unsynced;
+	
+	/** Time in milliseconds of the last force */
+	private long lastSync;
+	
+	/**
+	 * Open the log held in the given directory, creating the directory and the first segment if they do not exist.  A torn final record
+	 * in the last segment is truncated.
+	 * 
+	 * @param directory The directory holding the segment files
+	 * @throws IOException results when the directory or the segment files cannot be accessed
+	 */
+	public OperationLog(Path directory) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segments = listSegments(directory);
+		
+		if (this.segments.isEmpty()) {
+			this.segments.add(segmentPath(directory, 0));
+		}
+		
+		this.channel = FileChannel.open(this.getLastSegment(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.repair();
+		this.lastSync = System.currentTimeMillis();
+	}
+	
+	/**
+	 * List the segment files in the directory in the order they were written
+	 * @param directory The directory holding the segment files
+	 * @return The segment files in the order they were written
+	 * @throws IOException results when the directory cannot be read
+	 */
+	private static List<Path> listSegments(Path directory) throws IOException {
+		List<Path> rv = new ArrayList<>();
+		
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path segment : stream) {
+				rv.add(segment);
+			}
+		}
+		
+		Collections.sort(rv);
+		
+		return rv;
+	}
+	
+	/**
+	 * Retrieve the path of the segment file with the given index
+	 * @param directory The directory holding the segment files
+	 * @param index The index of the segment
+	 * @return The path of the segment file
+	 */
+	private static Path segmentPath(Path directory, long index) {
+		return directory.resolve(String.format("%020d", index) + SEGMENT_SUFFIX);
+	}
+	
+	/**
+	 * Retrieve the segment to which records are appended
+	 * @return The last segment
+	 */
+	private Path getLastSegment() {
+		return this.segments.get(this.segments.size() - 1);
+	}
+	
+	/**
+	 * Truncate the last segment after its last intact record, and position the channel to append after it
+	 * @throws IOException results when the segment cannot be read or truncated
+	 */
+	private void repair() throws IOException {
+		long size = this.channel.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		
+		while (position + HEADER_SIZE <= size) {
+			header.clear();
+			readFully(this.channel, header, position);
+			header.flip();
+			
+			int length = header.getInt();
+			int checksum = header.getInt();
+			
+			if (length < 0 || position + HEADER_SIZE + length > size) {
+				break;
+			}
+			
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(this.channel, payload, position + HEADER_SIZE);
+			
+			if (checksum != checksum(payload.array())) {
+				break;
+			}
+			
+			position += HEADER_SIZE + length;
+		}
+		
+		if (position < size) {
+			logger.warn("Truncating torn record at " + position + " of " + size + " bytes in " + this.getLastSegment());
+			this.channel.truncate(position);
+			this.channel.force(true);
+		}
+		
+		this.channel.position(position);
+	}
+	
+	/**
+	 * Read from the channel at the given position until the buffer is full 
+	 * @param channel The channel to read from
+	 * @param buffer The buffer to fill
+	 * @param position The position in the channel to start reading
+	 * @throws IOException results when the channel cannot be read or ends before the buffer is full
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+	
+	/**
+	 * Compute the CRC32 checksum of a record payload
+	 * @param payload The payload
+	 * @return The checksum of the payload
+	 */
+	private static int checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * Append a record holding the operation manager to the log, forcing it to the storage device as the SyncPolicy requires
+	 * @param mgr The operation manager to append
+	 * @throws IOException results when the record cannot be written
+	 */
+	public synchronized void append(OperationManager mgr) throws IOException {
+		byte[] payload = BinaryCodec.encode(mgr);
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		
+		record.putInt(payload.length);
+		record.putInt(checksum(payload));
+		record.put(payload);
+		record.flip();
+		
+		if (0 < this.channel.position() && this.channel.position() + record.remaining() > this.getSegmentSize()) {
+			this.roll();
+		}
+		
+		while (record.hasRemaining()) {
+			this.channel.write(record);
+		}
+		
+		++this.unsynced;
+		
+		if (this.isSyncDue()) {
+			this.sync();
+		}
+	}
+	
+	/**
+	 * Determine whether the records appended since the last force must now be forced to the storage device 
+	 * @return True exactly when the SyncPolicy requires the records to be forced
+	 */
+	private boolean isSyncDue() {
+		switch (this.getSyncPolicy()) {
+		case GROUP:
+			return this.unsynced >= this.getGroupSize();
+		case INTERVAL:
+			return System.currentTimeMillis() - this.lastSync >= this.getSyncInterval();
+		case PER_OPERATION:
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Force the last segment to the storage device and start appending to a new one
+	 * @throws IOException results when the segments cannot be written
+	 */
+	private void roll() throws IOException {
+		this.sync();
+		this.channel.close();
+		
+		String name = this.getLastSegment().getFileName().toString();
+		long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())) + 1;
+		
+		this.segments.add(segmentPath(this.directory, index));
+		this.channel = FileChannel.open(this.getLastSegment(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	
+	/**
+	 * Force every record appended so far to the storage device
+	 * @throws IOException results when the segment cannot be forced
+	 */
+	public synchronized void sync() throws IOException {
+		if (0 < this.unsynced) {
+			this.channel.force(false);
+			this.unsynced = 0;
+		}
+		
+		this.lastSync = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Replay every record in the log, in the order they were appended 
+	 * @param consumer The recipient of the operation manager held in each record
+	 * @throws IOException results when a segment cannot be read or holds a damaged record
+	 */
+	public synchronized void replay(Consumer<OperationManager> consumer) throws IOException {
+		for (Path segment : this.segments) {
+			long size = segment.equals(this.getLastSegment()) ? this.channel.position() : Files.size(segment);
+			
+			try (InputStream stream = Files.newInputStream(segment)) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+				
+				for (long position = 0; position < size; ) {
+					int length = in.readInt();
+					int expected = in.readInt();
+					
+					if (length < 0 || position + HEADER_SIZE + length > size) {
+						throw new IOException("Damaged record at " + position + " in " + segment);
+					}
+					
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+					
+					if (expected != checksum(payload)) {
+						throw new IOException("Record checksum mismatch at " + position + " in " + segment);
+					}
+					
+					consumer.accept(BinaryCodec.decodeOperationManager(payload));
+					position += HEADER_SIZE + length;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Retrieve the number of segment files in the log
+	 * @return The number of segment files in the log
+	 */
+	public synchronized int getSegmentCount() {
+		return this.segments.size();
+	}
+	
+	/**
+	 * Retrieve the policy for forcing records to the storage device
+	 * @return The policy for forcing records to the storage device
+	 */
+	public synchronized SyncPolicy getSyncPolicy() {
+		return this.syncPolicy;
+	}
+	
+	/**
+	 * Set the policy for forcing records to the storage device
+	 * @param syncPolicy The policy for forcing records to the storage device
+	 */
+	public synchronized void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+	
+	/**
+	 * Retrieve the number of records appended between forces under the GROUP policy
+	 * @return The number of records appended between forces
+	 */
+	public synchronized int getGroupSize() {
+		return this.groupSize;
+	}
+	
+	/**
+	 * Set the number of records appended between forces under the GROUP policy
+	 * @param groupSize The number of records appended between forces
+	 */
+	public synchronized void setGroupSize(int groupSize) {
+		this.groupSize = groupSize;
+	}
+	
+	/**
+	 * Retrieve the number of milliseconds between forces under the INTERVAL policy
+	 * @return The number of milliseconds between forces
+	 */
+	public synchronized long getSyncInterval() {
+		return this.syncInterval;
+	}
+	
+	/**
+	 * Set the number of milliseconds between forces under the INTERVAL policy
+	 * @param syncInterval The number of milliseconds between forces
+	 */
+	public synchronized void setSyncInterval(long syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+	
+	/**
+	 * Retrieve the size in bytes at which a new segment is started
+	 * @return The size at which a new segment is started
+	 */
+	public synchronized long getSegmentSize() {
+		return this.segmentSize;
+	}
+	
+	/**
+	 * Set the size in bytes at which a new segment is started.  A record larger than this is written to a segment of its own.
+	 * @param segmentSize The size at which a new segment is started
+	 */
+	public synchronized void setSegmentSize(long segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel.isOpen()) {
+			this.sync();
+			this.channel.close();
+		}
+	}
+}
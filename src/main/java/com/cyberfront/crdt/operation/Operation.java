@@ -23,11 +23,14 @@
 package com.cyberfront.crdt.operation;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-import org.apache.commons.lang3.ObjectUtils;
 import java.util.Objects;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -52,7 +55,8 @@ import com.github.fge.jsonpatch.JsonPatchException;
  * These operations each have a timestamp which is used to order operations.  In the event two operations have the same timestamp, an operation
  * Id is used to break the tie. In a distributed setup, it is theoretically possible for two operations generated at different nodes to have both
  * same time stamp and the same ID number, which will lead to ambiguity if the should both appear in the same CRDT.  As a final tie breaker, the
- * hash value of the two operations will be used.
+ * hash value of the content of the two operations, computed once when each is constructed, will be used.  Should even those agree, operations
+ * with different content are ordered by the text of their content, so two operations compare as equal exactly when equals() holds.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY)
@@ -70,6 +74,12 @@ public final class Operation implements Comparable<Operation> {
 	/** The ObjectMapper used to create empty JsonNode object to start the chain of JsonDiff derived operations */
 	private static final ObjectMapper mapper = new ObjectMapper();
 	
+	/** Number of times the JSON Patch of an UPDATE operation has been parsed, into a JsonPatch or into ReplayEngine steps */
+	private static final AtomicLong parseCount = new AtomicLong();
+	
+	/** Source of the identifiers of operations created without one; random version 4 UUIDs unless replaced with setIdSupplier() */
+	private static volatile Supplier<UUID> idSupplier = UUID::randomUUID;
+	
 	/**
 	 * The Enum OperationType lists the types of operations which comprise the types of operations which can 
 	 * be performed on JSON objects
@@ -105,6 +115,29 @@ public final class Operation implements Comparable<Operation> {
 	@JsonProperty(TIMESTAMP)
 	private final Long timestamp;
 
+	/** Hash of the operation content computed once at construction, since the operation cannot change; zero when there is none */
+	@JsonIgnore
+	private final int opHash;
+
+	/** Store holding the patch of an archived UPDATE operation, which then does not hold the patch itself; null otherwise */
+	@JsonIgnore
+	private final PatchStore store;
+	
+	/** Locator of the patch of an archived UPDATE operation in its store */
+	@JsonIgnore
+	private final long locator;
+
+	/**
+	 * The JSON Patch parsed from the operation, created on first use and shared by copies of this operation.  It is volatile since an
+	 * operation broadcast to several nodes may be applied on several threads at once.
+	 */
+	@JsonIgnore
+	private volatile JsonPatch patch;
+
+	/** The steps a ReplayEngine performs for the operation, created on first use and shared by copies of this operation */
+	@JsonIgnore
+	private volatile List<ReplayEngine.Step> steps;
+
 	/**
 	 * This constructor initializes elements of this abstract class instance given an operation and a 
 	 * timestamp associated with executing the operation.
@@ -113,7 +146,7 @@ public final class Operation implements Comparable<Operation> {
 	 * @param timestamp The effective timestamp associated with the execution of this operation
 	 */
 	public Operation(OperationType type, Long timestamp) {
-		this(UUID.randomUUID(), type, null, timestamp);
+		this(idSupplier.get(), type, null, timestamp);
 	}
 	
 	/**
@@ -124,7 +157,7 @@ public final class Operation implements Comparable<Operation> {
 	 * @param timestamp The effective time stamp of the operation 
 	 */
 	public Operation(JsonNode op, Long timestamp) {
-		this(UUID.randomUUID(), OperationType.UPDATE, op, timestamp);
+		this(idSupplier.get(), OperationType.UPDATE, op, timestamp);
 	}
 
 	/**
@@ -133,7 +166,33 @@ public final class Operation implements Comparable<Operation> {
 	 * @param src The source operation to copy
 	 */
 	public Operation(Operation src) {
-		this(src.getId(), src.getType(), src.getOp(), src.getTimestamp());
+		this.id = src.id;
+		this.type = src.type;
+		this.op = src.op;
+		this.timestamp = src.timestamp;
+		this.opHash = src.opHash;
+		this.store = src.store;
+		this.locator = src.locator;
+		this.patch = src.patch;
+		this.steps = src.steps;
+	}
+	
+	/**
+	 * Create an archived copy of an UPDATE operation whose patch has been written to a store.  The archived copy is equal to the source
+	 * operation, but does not hold the patch; it reads the patch from the store each time it is needed.
+	 *
+	 * @param src The source operation to archive
+	 * @param store The store holding the patch of the source operation
+	 * @param locator The locator of the patch in the store
+	 */
+	public Operation(Operation src, PatchStore store, long locator) {
+		this.id = src.id;
+		this.type = src.type;
+		this.op = null;
+		this.timestamp = src.timestamp;
+		this.opHash = src.opHash;
+		this.store = store;
+		this.locator = locator;
 	}
 	
 	/**
@@ -152,6 +211,9 @@ public final class Operation implements Comparable<Operation> {
 		this.type = type;
 		this.op = (null == op || op.isNull()) ? null : op;
 		this.timestamp = timestamp;
+		this.opHash = null == this.op ? 0 : this.op.hashCode();
+		this.store = null;
+		this.locator = 0L;
 		
 		if (!this.validate()) {
 			throw new IllegalArgumentException("Operation Failed Validation: " + this.toString());
@@ -189,6 +251,17 @@ public final class Operation implements Comparable<Operation> {
 		return this.type;
 	};
 
+	/**
+	 * Retrieve the hash of the JSON Patch of the operation, computed when the operation was created so that retrieving it never reads
+	 * an archived patch back from its store.  The hash is derived only from the names and values within the patch, so it is the same in
+	 * every JVM.
+	 * @return The hash of the JSON Patch, or zero if the operation has none
+	 */
+	@JsonIgnore
+	public int getContentHash() {
+		return this.opHash;
+	}
+
 	/**
 	 * Retrieve the JSON update operation.  If the operation type isn't UPDATE, this will be null; otherwise it will
 	 * be a JsonNode which conforms to RFC 6902. 
@@ -196,7 +269,93 @@ public final class Operation implements Comparable<Operation> {
 	 */
 	@JsonProperty(OP)
 	public JsonNode getOp() {
-		return this.op;
+		if (null == this.store) {
+			return this.op;
+		}
+		
+		try {
+			return this.store.readPatch(this.locator);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Retrieve the JSON Patch for an UPDATE operation, parsing it from the operation the first time it is requested.  Since the
+	 * operation cannot change, the parsed patch is kept and reused by each subsequent application of this operation.
+	 * 
+	 * @return The JSON Patch for this operation
+	 * @throws IOException results when the operation does not encode a JSON Patch
+	 */
+	@JsonIgnore
+	private JsonPatch getPatch() throws IOException {
+		if (this.isArchived()) {
+			return this.parsePatch();
+		} else if (null == this.patch) {
+			this.patch = this.parsePatch();
+		}
+		
+		return this.patch;
+	}
+	
+	/**
+	 * Parse the JSON Patch for an UPDATE operation, counting the parse
+	 * 
+	 * @return The JSON Patch for this operation
+	 * @throws IOException results when the operation does not encode a JSON Patch
+	 */
+	private JsonPatch parsePatch() throws IOException {
+		parseCount.incrementAndGet();
+		return JsonPatch.fromJson(this.getOp());
+	}
+	
+	/**
+	 * Retrieve the steps a ReplayEngine performs to apply an UPDATE operation in place, parsing them from the operation the first time
+	 * they are requested.
+	 * 
+	 * @return The steps for this operation
+	 * @throws IOException results when the operation does not encode a JSON Patch
+	 */
+	@JsonIgnore
+	List<ReplayEngine.Step> getSteps() throws IOException {
+		if (this.isArchived()) {
+			return this.parseSteps();
+		} else if (null == this.steps) {
+			this.steps = this.parseSteps();
+		}
+		
+		return this.steps;
+	}
+	
+	/**
+	 * Parse the steps a ReplayEngine performs to apply an UPDATE operation in place, counting the parse
+	 * 
+	 * @return The steps for this operation
+	 * @throws IOException results when the operation does not encode a JSON Patch
+	 */
+	private List<ReplayEngine.Step> parseSteps() throws IOException {
+		parseCount.incrementAndGet();
+		return ReplayEngine.parse(this.getOp());
+	}
+	
+	/**
+	 * Retrieve the number of times the JSON Patch of any UPDATE operation has been parsed, into a JsonPatch or into the steps of a
+	 * ReplayEngine, since the class was loaded.  Operations keep what they parse, so this measures the parses they save.
+	 * 
+	 * @return The number of parses so far
+	 */
+	public static long getParseCount() {
+		return parseCount.get();
+	}
+	
+	/**
+	 * Replace the source of the identifiers given to operations created without one.  A simulation replayed from a seed supplies
+	 * identifiers drawn from its seeded generator, so the operations it creates are the same on each replay.
+	 * 
+	 * @param supplier The source of identifiers, or null to restore random version 4 UUIDs
+	 */
+	public static void setIdSupplier(Supplier<UUID> supplier) {
+		idSupplier = null == supplier ? UUID::randomUUID : supplier;
 	}
 	
 	/**
@@ -209,6 +368,17 @@ public final class Operation implements Comparable<Operation> {
 		return this.timestamp;
 	}
 	
+	/**
+	 * Checks if the operation is archived, holding its patch in a store rather than on the heap.  The patch is read from the store and
+	 * parsed each time it is needed, rather than being retained.
+	 *
+	 * @return true exactly when this instance is archived
+	 */
+	@JsonIgnore
+	public boolean isArchived() {
+		return null != this.store;
+	}
+	
 	/**
 	 * Checks if the operation is a CREATE operation.
 	 *
@@ -258,18 +428,13 @@ public final class Operation implements Comparable<Operation> {
 	}
 
 	/**
-	 * Copy a list of operations
+	 * Copy a list of operations.  Operations are immutable, so the copy shares the operations of the source list rather than
+	 * duplicating them.
 	 * @param src Source list of operations
 	 * @return Copy of the source list of operations
 	 */
 	public static Collection<Operation> copy(Collection<Operation> src) {
-		Collection<Operation> rv = new TreeSet<>();
-		
-		for (Operation op : src) {
-			rv.add(new Operation(op));
-		}
-		
-		return rv;
+		return new TreeSet<>(src);
 	}
 	
 	/**
@@ -289,7 +454,7 @@ public final class Operation implements Comparable<Operation> {
 		case UPDATE:
 			return null == document
 			? null
-			: JsonPatch.fromJson(this.getOp()).apply(document);		// Use this with jsonpatch
+			: this.getPatch().apply(document);						// Use this with jsonpatch
 //			: JsonPatch.apply(this.getOp(), document);				// Use this with zjsonpatch
 		case DELETE:
 				return null;
@@ -305,14 +470,37 @@ public final class Operation implements Comparable<Operation> {
 	 */
 	@Override
 	public int compareTo(Operation op) {
-		int rv = Long.compare(this.getTimestamp(), op.getTimestamp());
-		rv = 0 == rv ? ObjectUtils.compare(this.getType(), op.getType()) : rv;
-		rv = 0 == rv ? ObjectUtils.compare(this.getId(), op.getId()) : rv;
-		rv = 0 == rv ? ObjectUtils.compare(null == this.getOp() ? null : this.getOp().hashCode(), null == op.getOp() ? null : op.getOp().hashCode()) : rv;
+		int rv = Long.compare(this.timestamp, op.timestamp);
+		rv = 0 == rv ? Integer.compare(this.type.ordinal(), op.type.ordinal()) : rv;
+		rv = 0 == rv ? this.id.compareTo(op.id) : rv;
+		rv = 0 == rv ? Integer.compare(this.opHash, op.opHash) : rv;
+		rv = 0 == rv ? this.compareContent(op) : rv;
 
 		return rv;
 	}
 	
+	/**
+	 * Order the content of two operations whose timestamp, type, identifier and content hash agree.  Content which is equal compares
+	 * as equal; otherwise the content is ordered by its text.
+	 * 
+	 * @param op The operation whose content to compare with the content of this one
+	 * @return Zero exactly when the content of both operations is equal, and otherwise the order of their content
+	 */
+	private int compareContent(Operation op) {
+		if (this.hasSameContent(op)) {
+			return 0;
+		}
+		
+		JsonNode lhs = this.getOp();
+		JsonNode rhs = op.getOp();
+		
+		if (null == lhs || null == rhs) {
+			return null == lhs ? -1 : 1;
+		}
+		
+		return lhs.toString().compareTo(rhs.toString());
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
@@ -326,10 +514,27 @@ public final class Operation implements Comparable<Operation> {
 
 		Operation oper = (Operation) obj;
 		
-		return this.getTimestamp().equals(oper.getTimestamp()) &&
+		return this.opHash == oper.opHash &&
+				this.getType() == oper.getType() &&
+				this.getTimestamp().equals(oper.getTimestamp()) &&
 				Objects.equals(this.getId(), oper.getId()) &&
-				Objects.equals(this.getType(), oper.getType()) &&
-				Objects.equals(this.getOp(), oper.getOp());
+				this.hasSameContent(oper);
+	}
+	
+	/**
+	 * Determine whether two operations have equal content.  Operations archived at the same location of the same store have the
+	 * same content without reading it; otherwise the content of an archived operation is read from its store to compare it.  Callers
+	 * compare the cheaper fields first, so the content is only compared for operations which agree on every other field.
+	 * 
+	 * @param op The operation whose content to compare with the content of this one
+	 * @return True exactly when the content of both operations is equal
+	 */
+	private boolean hasSameContent(Operation op) {
+		if (this.isArchived() && this.store == op.store && this.locator == op.locator) {
+			return true;
+		}
+		
+		return Objects.equals(this.getOp(), op.getOp());
 	}
 	
 	/* (non-Javadoc)
@@ -341,7 +546,7 @@ public final class Operation implements Comparable<Operation> {
 		
 		hash = hash * 13 + (null != this.getId() ? this.getId().hashCode() : 0);
 		hash = hash * 17 + (null != this.getType() ? this.getType().hashCode() : 0);
-		hash = hash * 19 + (null != this.getOp() ? this.getOp().hashCode() : 0);
+		hash = hash * 19 + this.opHash;
 		hash = hash * 23 + (null != this.getTimestamp() ? this.getTimestamp().hashCode() : 0);
 		
 		return hash;
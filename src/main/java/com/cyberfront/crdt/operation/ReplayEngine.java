@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.operation;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jackson.JsonNumEquals;
+import com.github.fge.jackson.jsonpointer.JsonPointer;
+import com.github.fge.jackson.jsonpointer.JsonPointerException;
+import com.github.fge.jackson.jsonpointer.TokenResolver;
+import com.github.fge.jsonpatch.JsonPatchException;
+
+/**
+ * The ReplayEngine class applies a sequence of operations to a single private, mutable document.  Where applying a JSON Patch through
+ * Operation.processOperation copies the whole document for each patch operation, the ReplayEngine changes its document in place, so
+ * replaying a long sequence of UPDATE operations does not allocate a copy of the document per operation.  A copy is made only when the
+ * document is handed out by getDocument(), and that copy is reused until the document changes again.
+ * 
+ * The results, including which operations fail, match those of Operation.processOperation.  An UPDATE operation is applied atomically;
+ * when one of its patch operations fails, the patch operations which preceded it are undone and the document is left as it was.
+ */
+public final class ReplayEngine {
+	
+	/**
+	 * The Enum StepType lists the RFC 6902 operations a Step can perform
+	 */
+	enum StepType {
+		/** The add operation */
+		ADD,
+		
+		/** The remove operation */
+		REMOVE,
+		
+		/** The replace operation */
+		REPLACE,
+		
+		/** The move operation */
+		MOVE,
+		
+		/** The copy operation */
+		COPY,
+		
+		/** The test operation */
+		TEST
+	}
+	
+	/**
+	 * The Step class holds a single parsed RFC 6902 operation from the JSON Patch of an UPDATE operation 
+	 */
+	static final class Step {
+		/** Type of patch operation this step performs */
+		private final StepType type;
+		
+		/** Location in the document the step targets */
+		private final JsonPointer path;
+		
+		/** Source location in the document for move and copy steps; null otherwise */
+		private final JsonPointer from;
+		
+		/** The value for add, replace and test steps; null otherwise */
+		private final JsonNode value;
+		
+		/**
+		 * Instantiate a step
+		 * @param type Type of patch operation the step performs
+		 * @param path Location in the document the step targets
+		 * @param from Source location for move and copy steps
+		 * @param value The value for add, replace and test steps
+		 */
+		private Step(StepType type, JsonPointer path, JsonPointer from, JsonNode value) {
+			this.type = type;
+			this.path = path;
+			this.from = from;
+			this.value = value;
+		}
+	}
+	
+	/** The ObjectMapper used to create the empty document for CREATE operations */
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/** The document being changed in place; it is never handed out directly */
+	private JsonNode document;
+	
+	/** Copy of the document most recently handed out, or null when the document has changed since */
+	private JsonNode snapshot;
+	
+	/** Actions which undo the changes made so far by the UPDATE operation being applied, most recent first */
+	private final Deque<Runnable> undo = new ArrayDeque<>();
+	
+	/**
+	 * Instantiate a ReplayEngine whose document starts out null, as before a CREATE operation
+	 */
+	public ReplayEngine() {
+		this(null);
+	}
+	
+	/**
+	 * Instantiate a ReplayEngine whose document starts out as a copy of the one given 
+	 * @param document The document to start from; it is copied and never changed
+	 */
+	public ReplayEngine(JsonNode document) {
+		this.document = null == document ? null : document.deepCopy();
+		this.snapshot = null;
+	}
+	
+	/**
+	 * Parse the JSON Patch of an UPDATE operation into the steps the ReplayEngine performs
+	 * @param patch The JSON Patch, compliant with RFC 6902, to parse
+	 * @return The list of steps for the JSON Patch
+	 * @throws IOException results when the patch is not a valid JSON Patch
+	 */
+	static List<Step> parse(JsonNode patch) throws IOException {
+		if (null == patch || !patch.isArray()) {
+			throw new IOException("JSON Patch must be an array: " + patch);
+		}
+		
+		List<Step> rv = new ArrayList<>(patch.size());
+		
+		for (JsonNode element : patch) {
+			JsonNode op = element.get("op");
+			StepType type = null;
+			
+			for (StepType candidate : StepType.values()) {
+				if (null != op && candidate.name().toLowerCase().equals(op.asText())) {
+					type = candidate;
+				}
+			}
+			
+			if (null == type) {
+				throw new IOException("Unknown JSON Patch operation: " + element);
+			}
+			
+			JsonPointer path = pointer(element, "path");
+			JsonPointer from = StepType.MOVE == type || StepType.COPY == type ? pointer(element, "from") : null;
+			JsonNode value = StepType.ADD == type || StepType.REPLACE == type || StepType.TEST == type ? element.get("value") : null;
+			
+			if ((StepType.ADD == type || StepType.REPLACE == type || StepType.TEST == type) && null == value) {
+				throw new IOException("JSON Patch operation missing value: " + element);
+			}
+			
+			rv.add(new Step(type, path, from, value));
+		}
+		
+		return Collections.unmodifiableList(rv);
+	}
+	
+	/**
+	 * Parse a JSON Pointer held in a field of a JSON Patch operation
+	 * @param element The JSON Patch operation
+	 * @param field The name of the field holding the JSON Pointer
+	 * @return The JSON Pointer
+	 * @throws IOException results when the field is absent or is not a valid JSON Pointer
+	 */
+	private static JsonPointer pointer(JsonNode element, String field) throws IOException {
+		JsonNode node = element.get(field);
+		
+		if (null == node || !node.isTextual()) {
+			throw new IOException("JSON Patch operation missing " + field + ": " + element);
+		}
+		
+		try {
+			return new JsonPointer(node.asText());
+		} catch (JsonPointerException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Retrieve the document resulting from the operations applied so far.  The result is a copy, so later operations do not change it;
+	 * the same copy is returned until the document changes.
+	 * @return The document resulting from the operations applied so far
+	 */
+	public JsonNode getDocument() {
+		if (null == this.snapshot && null != this.document) {
+			this.snapshot = this.document.deepCopy();
+		}
+		
+		return this.snapshot;
+	}
+	
+	/**
+	 * Retrieve a new copy of the document resulting from the operations applied so far.  Unlike getDocument(), the copy is never
+	 * shared with any other caller, so it may be retained where a document handed out must not reach it.
+	 * @return A new copy of the document resulting from the operations applied so far
+	 */
+	public JsonNode copyDocument() {
+		return null == this.document ? null : this.document.deepCopy();
+	}
+	
+	/**
+	 * Apply an operation to the document 
+	 * @param op The operation to apply
+	 * @throws JsonPatchException results when the operation cannot be applied to the document; the document is unchanged
+	 * @throws IOException results when the operation does not encode a valid JSON Patch; the document is unchanged
+	 */
+	public void apply(Operation op) throws JsonPatchException, IOException {
+		switch (op.getType()) {
+		case CREATE:
+			this.setDocument(mapper.createObjectNode());
+			break;
+		case UPDATE:
+			if (null != this.document) {
+				this.update(op.getSteps());
+			}
+			break;
+		case DELETE:
+			this.setDocument(null);
+			break;
+		case READ:
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Apply each of the steps of an UPDATE operation in place, undoing those already applied if any of them fails
+	 * @param steps The steps to apply
+	 * @throws JsonPatchException results when one of the steps cannot be applied
+	 */
+	private void update(List<Step> steps) throws JsonPatchException {
+		this.undo.clear();
+		this.snapshot = null;
+		
+		try {
+			for (Step step : steps) {
+				this.apply(step);
+			}
+		} catch (JsonPatchException e) {
+			while (!this.undo.isEmpty()) {
+				this.undo.pop().run();
+			}
+			
+			throw e;
+		}
+		
+		this.undo.clear();
+	}
+	
+	/**
+	 * Apply a single step in place
+	 * @param step The step to apply
+	 * @throws JsonPatchException results when the step cannot be applied
+	 */
+	private void apply(Step step) throws JsonPatchException {
+		switch (step.type) {
+		case ADD:
+			this.add(step.path, step.value.deepCopy());
+			break;
+		case REMOVE:
+			this.remove(step.path);
+			break;
+		case REPLACE:
+			this.replace(step.path, step.value.deepCopy());
+			break;
+		case MOVE:
+			this.move(step.from, step.path);
+			break;
+		case COPY:
+			this.add(step.path, this.resolve(step.from).deepCopy());
+			break;
+		case TEST:
+			if (!JsonNumEquals.getInstance().equivalent(this.resolve(step.path), step.value)) {
+				throw new JsonPatchException("value differs from expectations");
+			}
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Locate the node a JSON Pointer refers to
+	 * @param path The JSON Pointer to resolve
+	 * @return The node the JSON Pointer refers to
+	 * @throws JsonPatchException results when there is no node at the given location
+	 */
+	private JsonNode resolve(JsonPointer path) throws JsonPatchException {
+		JsonNode rv = path.path(this.document);
+		
+		if (rv.isMissingNode()) {
+			throw new JsonPatchException("no such path in target JSON document");
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Retrieve the raw final token of a non-empty JSON Pointer 
+	 * @param path The JSON Pointer
+	 * @return The raw final token
+	 */
+	private static String last(JsonPointer path) {
+		TokenResolver<JsonNode> rv = null;
+		
+		for (TokenResolver<JsonNode> token : path) {
+			rv = token;
+		}
+		
+		return rv.getToken().getRaw();
+	}
+	
+	/**
+	 * Add a value at the given location
+	 * @param path Location at which to add the value
+	 * @param value The value to add, which becomes part of the document
+	 * @throws JsonPatchException results when the parent of the location does not exist, or the location is not a valid array index
+	 */
+	private void add(JsonPointer path, JsonNode value) throws JsonPatchException {
+		if (path.isEmpty()) {
+			this.setRoot(value);
+			return;
+		}
+		
+		JsonNode parent = path.parent().path(this.document);
+		String token = last(path);
+		
+		if (parent.isMissingNode()) {
+			throw new JsonPatchException("parent of node to add does not exist");
+		} else if (parent.isObject()) {
+			this.put((ObjectNode) parent, token, value);
+		} else if (!parent.isArray()) {
+			throw new JsonPatchException("parent of path to add to is not a container");
+		} else if ("-".equals(token)) {
+			this.insert((ArrayNode) parent, parent.size(), value);
+		} else {
+			int index;
+			
+			try {
+				index = Integer.parseInt(token);
+			} catch (NumberFormatException e) {
+				throw new JsonPatchException("reference token is not an array index");
+			}
+			
+			if (index < 0 || index > parent.size()) {
+				throw new JsonPatchException("no such index in target array");
+			}
+			
+			this.insert((ArrayNode) parent, index, value);
+		}
+	}
+	
+	/**
+	 * Remove the value at the given location
+	 * @param path Location of the value to remove
+	 * @return The value removed
+	 * @throws JsonPatchException results when there is no value at the location
+	 */
+	private JsonNode remove(JsonPointer path) throws JsonPatchException {
+		JsonNode rv = this.resolve(path);
+		
+		if (path.isEmpty()) {
+			this.setRoot(MissingNode.getInstance());
+			return rv;
+		}
+		
+		JsonNode parent = path.parent().get(this.document);
+		String token = last(path);
+		
+		if (parent.isObject()) {
+			this.remove((ObjectNode) parent, token);
+		} else {
+			this.remove((ArrayNode) parent, Integer.parseInt(token));
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Replace the value at the given location
+	 * @param path Location of the value to replace
+	 * @param value The replacement value, which becomes part of the document
+	 * @throws JsonPatchException results when there is no value at the location
+	 */
+	private void replace(JsonPointer path, JsonNode value) throws JsonPatchException {
+		this.resolve(path);
+		
+		if (path.isEmpty()) {
+			this.setRoot(value);
+			return;
+		}
+		
+		JsonNode parent = path.parent().get(this.document);
+		String token = last(path);
+		
+		if (parent.isObject()) {
+			this.put((ObjectNode) parent, token, value);
+		} else {
+			this.set((ArrayNode) parent, Integer.parseInt(token), value);
+		}
+	}
+	
+	/**
+	 * Move the value from one location to another
+	 * @param from Location of the value to move
+	 * @param path Location to which the value is moved
+	 * @throws JsonPatchException results when there is no value to move, or it cannot be added at the new location
+	 */
+	private void move(JsonPointer from, JsonPointer path) throws JsonPatchException {
+		if (!from.equals(path)) {
+			this.add(path, this.remove(from));
+		}
+	}
+
+	/**
+	 * Replace the whole document, recording how to undo the change
+	 * @param root The new document
+	 */
+	private void setRoot(JsonNode root) {
+		JsonNode previous = this.document;
+		this.document = root;
+		this.undo.push(() -> this.document = previous);
+	}
+	
+	/**
+	 * Set a field of an object, recording how to undo the change.  A field which already exists keeps its position.
+	 * @param parent The object to change
+	 * @param field The name of the field to set
+	 * @param value The value of the field
+	 */
+	private void put(ObjectNode parent, String field, JsonNode value) {
+		JsonNode previous = parent.replace(field, value);
+		this.undo.push(() -> {
+			if (null == previous) {
+				parent.remove(field);
+			} else {
+				parent.replace(field, previous);
+			}
+		});
+	}
+	
+	/**
+	 * Remove a field of an object, recording how to undo the change.  Undoing the change restores the field to its original position.
+	 * @param parent The object to change
+	 * @param field The name of the field to remove
+	 */
+	private void remove(ObjectNode parent, String field) {
+		List<Map.Entry<String, JsonNode>> fields = new ArrayList<>(parent.size());
+		parent.fields().forEachRemaining(fields::add);
+		parent.remove(field);
+		
+		this.undo.push(() -> {
+			parent.removeAll();
+			for (Map.Entry<String, JsonNode> entry : fields) {
+				parent.set(entry.getKey(), entry.getValue());
+			}
+		});
+	}
+	
+	/**
+	 * Insert an element into an array, recording how to undo the change
+	 * @param parent The array to change
+	 * @param index The position at which to insert the element
+	 * @param value The element to insert
+	 */
+	private void insert(ArrayNode parent, int index, JsonNode value) {
+		parent.insert(index, value);
+		this.undo.push(() -> parent.remove(index));
+	}
+	
+	/**
+	 * Replace an element of an array, recording how to undo the change
+	 * @param parent The array to change
+	 * @param index The position of the element to replace
+	 * @param value The replacement element
+	 */
+	private void set(ArrayNode parent, int index, JsonNode value) {
+		JsonNode previous = parent.set(index, value);
+		this.undo.push(() -> parent.set(index, previous));
+	}
+	
+	/**
+	 * Remove an element of an array, recording how to undo the change
+	 * @param parent The array to change
+	 * @param index The position of the element to remove
+	 */
+	private void remove(ArrayNode parent, int index) {
+		JsonNode previous = parent.remove(index);
+		this.undo.push(() -> parent.insert(index, previous));
+	}
+	
+	/**
+	 * Replace the document outside of an UPDATE operation
+	 * @param document The new document
+	 */
+	private void setDocument(JsonNode document) {
+		this.document = document;
+		this.snapshot = null;
+	}
+}
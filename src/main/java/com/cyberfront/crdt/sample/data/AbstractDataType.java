@@ -37,7 +37,6 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.thedeanda.lorem.LoremIpsum;
 
 /**
  * This is the abstract base class for the test data elements which are coded as JSON objects in the CRDT 
@@ -95,7 +94,7 @@ public abstract class AbstractDataType {
 	 * the version is set initially to 0 since it hasn't been changed.
 	 */
 	public AbstractDataType() {
-		this(UUID.randomUUID(), 0L, LoremIpsum.getInstance().getWords(5, 10));
+		this(Support.randomUUID(), 0L, Support.getSequence(5, 10));
 	}
 	
 	/**
@@ -116,7 +115,7 @@ public abstract class AbstractDataType {
 	public AbstractDataType(AbstractDataType src, double pChange) {
 		this.id = src.id;
 		this.version = src.version + 1;
-		this.notes = Support.getRandom().nextDouble() < pChange  ? LoremIpsum.getInstance().getWords(5, 10) : src.notes;
+		this.notes = Support.getRandom().nextDouble() < pChange  ? Support.getSequence(5, 10) : src.notes;
 		this.description = this.getClass().toString();
 	}
 
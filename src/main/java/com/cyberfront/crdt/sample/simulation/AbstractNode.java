@@ -22,13 +22,11 @@
  */
 package com.cyberfront.crdt.sample.simulation;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.UUID;
 
 import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.store.CrdtStore;
 import com.cyberfront.crdt.support.Support;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -49,7 +47,7 @@ public abstract class AbstractNode {
 	private final UUID id;
 	
 	/** The datastore containinf all of the CRDT instances for this node.. */
-	private Map<UUID, SimCRDTManager<? extends AbstractDataType>> datastore;
+	private final CrdtStore<SimCRDTManager<? extends AbstractDataType>> datastore = new CrdtStore<>();
 
 	/**
 	 * Instantiates a new abstract node.
@@ -70,16 +68,12 @@ public abstract class AbstractNode {
 	}
 	
 	/**
-	 * Retrieve the data store and return to the calling routine.  It will create new datastore if none exists, though
-	 * the new one will be empty.  This routine should never return null, but may return an empty datastore
+	 * Retrieve the data store and return to the calling routine.  This routine never returns null, but may return an empty
+	 * datastore.  The datastore may be read and changed from several threads at once.
 	 *
 	 * @return the datastore
 	 */
-	public Map<UUID, SimCRDTManager<? extends AbstractDataType>> getDatastore() {
-		if (null == datastore) {
-			this.datastore = new TreeMap<>();
-		}
-		
+	public CrdtStore<SimCRDTManager<? extends AbstractDataType>> getDatastore() {
 		return this.datastore;
 	}
 
@@ -87,8 +81,8 @@ public abstract class AbstractNode {
 	 * Clear the contents of the datastores in this node
 	 */
 	public void clear() {
-		for (Map.Entry<UUID, SimCRDTManager<? extends AbstractDataType>> entry : this.getDatastore().entrySet()) {
-			entry.getValue().clear();
+		for (SimCRDTManager<? extends AbstractDataType> crdt : this.getDatastore().values()) {
+			crdt.clear();
 		}
 
 		this.getDatastore().clear();
@@ -109,8 +103,7 @@ public abstract class AbstractNode {
 	 * @return The randomly selected CRDT Identifier value
 	 */
 	public UUID pickCrdtId() {
-		List<UUID> idList = new ArrayList<>(this.getDatastore().keySet());
-		return idList.isEmpty() ? null : idList.get(Support.getRandom().nextInt(idList.size()));
+		return this.getDatastore().pickId(Support.getRandom());
 	}
 	
 	/**
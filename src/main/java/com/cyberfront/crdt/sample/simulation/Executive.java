@@ -22,18 +22,32 @@
  */
 package com.cyberfront.crdt.sample.simulation;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.cyberfront.crdt.LastWriteWins;
 import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
 import com.cyberfront.crdt.sample.data.AbstractDataType;
 import com.cyberfront.crdt.sample.data.Factory;
+import com.cyberfront.crdt.support.SplitRandom;
 import com.cyberfront.crdt.support.Support;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
@@ -66,6 +80,28 @@ public class Executive {
 	/** Defines the default number of delete operations to perform for a given simulation if not specified */
 	private static final int DEFAULT_DELETE_COUNT = 1; //32;
 	
+	/** Defines the default number of events between rounds of replica acknowledgements; zero disables them, and so compaction */
+	private static final long DEFAULT_STABILITY_INTERVAL = 0;
+	
+	/** Defines the default number of worker threads; a single worker runs the simulation sequentially */
+	private static final int DEFAULT_WORKER_COUNT = 1;
+	
+	/** Defines the default minimum delay in delivering a message from one node to another */
+	public static final long DEFAULT_MINIMUM_DELAY = 1L;
+	
+	/** Defines the maximum delay in delivering a message from one node to another */
+	public static final long MAXIMUM_DELAY = 65535L;
+	
+	/**
+	 * Orders messages by delivery time, breaking the ties the natural order of messages leaves so that every node delivers the
+	 * messages of a window in the same order however they were queued
+	 */
+	private static final Comparator<Message<? extends AbstractDataType>> DELIVERY_ORDER =
+			Comparator.<Message<? extends AbstractDataType>>naturalOrder()
+				.thenComparing(msg -> msg.getManager().getOperation().getId(), Comparator.nullsFirst(Comparator.naturalOrder()))
+				.thenComparing(msg -> msg.getManager().getStatus())
+				.thenComparing(Message::getSource);
+	
 	/**
 	 * An enumeration of the types of operations which the executive is managing
 	 */
@@ -91,7 +127,10 @@ public class Executive {
 	private static Executive instance;
 
 	/** The nodes the executive is managing */
-	private Map<UUID, Node> nodes;
+	private final Map<UUID, Node> nodes = new ConcurrentHashMap<>();
+	
+	/** The nodes the executive is managing, in the order they were added, from which to pick one at random */
+	private final List<Node> nodeList = new ArrayList<>();
 	
 	/** A queue which manages messages awaiting delivery */
 	private MessageRouter router;
@@ -118,7 +157,19 @@ public class Executive {
 	private double updateProbability;
 	
 	/** A map relating a CRDT name to the name of the node which manages it */
-	private Map<UUID, UUID> crdtLookup;
+	private final Map<UUID, UUID> crdtLookup = new ConcurrentHashMap<>();
+	
+	/** Number of events between rounds of replica acknowledgements; zero or less disables them */
+	private long stabilityInterval = DEFAULT_STABILITY_INTERVAL;
+	
+	/** Number of worker threads among which the nodes are partitioned */
+	private int workerCount = DEFAULT_WORKER_COUNT;
+	
+	/** Minimum delay in delivering a message from one node to another, which bounds the span of each window of parallel execution */
+	private long minimumDelay = DEFAULT_MINIMUM_DELAY;
+	
+	/** The simulation time of the event a worker thread is processing; unset outside of parallel execution */
+	private final ThreadLocal<Long> localTime = new ThreadLocal<>();
 	
 	/**
 	 * Instantiates a new executive using the default parameters
@@ -137,10 +188,6 @@ public class Executive {
 	 * @return A map of all the nodes currently being managed
 	 */
 	public Map<UUID, Node> getNodes() {
-		if (null == this.nodes) {
-			this.nodes = new TreeMap<>();
-		}
-		
 		return nodes;
 	}
 
@@ -150,7 +197,13 @@ public class Executive {
 	 * @param node Node instance to add to the node map
 	 */
 	public void addNode(Node node) {
-		this.getNodes().put(node.getId(), node);
+		Node prior = this.getNodes().put(node.getId(), node);
+		
+		if (null == prior) {
+			this.nodeList.add(node);
+		} else {
+			this.nodeList.set(this.nodeList.indexOf(prior), node);
+		}
 	}
 	
 	/**
@@ -195,7 +248,8 @@ public class Executive {
 	 * @return The current timestamp for the simulation
 	 */
 	public long getTimestamp() {
-		return this.getRouter().getTimestamp();
+		Long rv = this.localTime.get();
+		return null == rv ? this.getRouter().getTimestamp() : rv;
 	}
 
 	/**
@@ -336,7 +390,7 @@ public class Executive {
 	 * @return The event type of the next operation to perform
 	 */
 	private EventType pickEvent() {
-		long pick = Support.getRandom().nextLong() % this.eventCount();
+		long pick = Support.getRandom().nextLong(this.eventCount());
 
 		if (pick < this.getDeliveryCount()) {
 			return EventType.DELIVER;
@@ -369,181 +423,467 @@ public class Executive {
 	 * @return The randomly chosen node
 	 */
 	public Node pickNode() {
-		if (this.getNodes().size() == 0) {
+		if (this.nodeList.isEmpty()) {
 			return null;
 		}
 		
-		int pick = Support.getRandom().nextInt(this.getNodes().size());
-		
-		for (Map.Entry<UUID, Node> entry : this.getNodes().entrySet()) {
-			if (pick-- <= 0) {
-				return entry.getValue();
-			}
+		return this.nodeList.get(Support.getRandom().nextInt(this.nodeList.size()));
+	}
+	
+	/**
+	 * Deliver the next message in the delivery queue to the node which is the intended recipient.  Delivery of this next message
+	 * may result in generation of a number of additional messages which are passed back to the calling routine.
+	 *
+	 * @return The collection of messages which results from delivery of the next message in the delivery queue
+	 */
+	private Collection<Message<? extends AbstractDataType>> doDeliver() {
+		Collection<Message<? extends AbstractDataType>> rv;
+
+		if (this.getRouter().isEmpty()) {
+			rv =  new TreeSet<>();
+		} else {
+			rv = this.getRouter().deliverNextMessage(this.getRejectProbability());
 		}
-		
-		return null;
+
+		return rv;
 	}
 	
 	/**
-	 * Create a new object with the specified node as the owner.  Generate and return the message set required to ensure all 
-	 * the other nodes can duplicate the create operation
+	 * Handle an event of the type provided.  Handling the event may result in a collection of messages which need to
+	 * be delivered
 	 *
-	 * @param node The owning node for the new object 
-	 * @param object Object for the Node to manage as an owning node
-	 * @return The collection of messages generated in response to the creation of the new object in the specified node 
+	 * @param type Type of event to handle next
+	 * @param node Node affected by handling of the event
+	 * @return Collection of messages to deliver 
 	 */
-	private Collection<Message<? extends AbstractDataType>> doCreate(Node node, AbstractDataType object) {
-		Collection<Message<? extends AbstractDataType>> messages = node.generateCreateOperation(object);
+	private Collection<Message<? extends AbstractDataType>> handleEvent(EventType type, Node node) {
+		Collection<Message<? extends AbstractDataType>> rv;
 
-		if (!messages.isEmpty()) {
-			--this.createCount;
+		if (EventType.DELIVER == type) {
+			rv = doDeliver();
+		} else {
+			rv = this.generateEvent(type, node);
+			
+			if (!rv.isEmpty()) {
+				this.countEvent(type, -1);
+			}
 		}
 		
-		return messages;
+		return rv;
 	}
-
+	
 	/**
-	 * Perform a read operation on a random object which exists in the given node.  If the node in question does not
-	 * have any objects to read, no further action is taken.  Otherwise, the read operation is used to generate a collection
-	 * of messages to duplicate the read operation at all of the other nodes 
+	 * Perform a create, read, update or delete operation at the given node.  A create operation makes the node the owner of a new
+	 * object.  The others act on a random object which exists in the node, and generate nothing if the node has no objects.  The
+	 * messages generated duplicate the operation at all of the other nodes.
 	 *
-	 * @param node The node from which to read
-	 * @return The collection of messages needed to duplicate the read operation elsewhere
+	 * @param type Type of the operation to perform, which must not be DELIVER
+	 * @param node The node at which to perform the operation
+	 * @return The collection of messages needed to duplicate the operation elsewhere, which is empty if the operation was not performed
 	 */
-	private Collection<Message<? extends AbstractDataType>> doRead(Node node) {
-		if (node.getDatastore().size() <= 0) {
+	private Collection<Message<? extends AbstractDataType>> generateEvent(EventType type, Node node) {
+		if (EventType.CREATE != type && node.getDatastore().size() <= 0) {
 			return new TreeSet<>();
 		}
 		
-		Collection<Message<? extends AbstractDataType>> messages = node.generateReadOperation();
-		
-		if (!messages.isEmpty()) {
-			--this.readCount;
+		switch(type) {
+		case CREATE:
+			return node.generateCreateOperation(Factory.getInstance());
+		case READ:
+			return node.generateReadOperation();
+		case UPDATE:
+			return node.generateUpdateOperation(this.getUpdateProbability());
+		case DELETE:
+			return node.generateDeleteOperation();
+		default:
+			return new TreeSet<>();
 		}
-		
-		return messages;
 	}
 	
 	/**
-	 * Perform an update operation on a random object which exists in the given node.  If the node in question does not
-	 * have any objects to update, no further action is taken.  Otherwise, the update operation is used to generate a collection
-	 * of messages to duplicate the update operation at all of the other nodes 
+	 * Adjust the number of operations of the given type remaining to perform
 	 *
-	 * @param node The node from which to update
-	 * @param pChange Probability of changing a node field value
-	 * @return The collection of messages needed to pass the update operation throughout the simulated distributed
-	 * environment
+	 * @param type Type of the operation, which must not be DELIVER
+	 * @param delta Amount by which to adjust the number remaining
 	 */
-	private Collection<Message<? extends AbstractDataType>> doUpdate(Node node, Double pChange) {
-		if (node.getDatastore().size() <= 0) {
-			return new TreeSet<>();
+	private void countEvent(EventType type, long delta) {
+		switch(type) {
+		case CREATE:
+			this.createCount += delta;
+			break;
+		case READ:
+			this.readCount += delta;
+			break;
+		case UPDATE:
+			this.updateCount += delta;
+			break;
+		case DELETE:
+			this.deleteCount += delta;
+			break;
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Execute the simulation with the settings given.  The simulation runs sequentially with a single worker, and in parallel
+	 * windows with more than one.  While it runs, operations and replicas take their identifiers from the seeded generator of the
+	 * thread creating them, so a simulation replayed from the same seed produces the same identifiers.
+	 */
+	public void execute() {
+		Operation.setIdSupplier(Support::randomUUID);
+		LastWriteWins.setOriginSupplier(Support::randomUUID);
+		
+		try {
+			this.generateNodes();
+			
+			if (1 < this.getWorkerCount()) {
+				this.executeParallel();
+			} else {
+				this.executeSequential();
+			}
+		} finally {
+			Operation.setIdSupplier(null);
+			LastWriteWins.setOriginSupplier(null);
 		}
+	}
+	
+	/**
+	 * Execute the simulation sequentially on the current thread, one event at a time
+	 */
+	private void executeSequential() {
+		long events = 0;
 		
-		Collection<Message<? extends AbstractDataType>> messages = node.generateUpdateOperation(pChange);
-
-		if (!messages.isEmpty()) {
-			--this.updateCount;
+		while (this.eventCount() > 0) {
+			Node node = this.pickNode();
+			EventType event = this.pickEvent();
+			Collection<Message<? extends AbstractDataType>> messages = this.handleEvent(event, node);
+			this.transmit(messages);
+			
+			if (0 < this.getStabilityInterval() && 0 == ++events % this.getStabilityInterval()) {
+				this.acknowledgeStability();
+			}
+		}
+	}
+	
+	/**
+	 * The Window class holds the work of a single node within a window of parallel execution, along with its outcome
+	 */
+	private static final class Window {
+		/** The node doing the work */
+		private final Node node;
+		
+		/** The random number generator confined to the node */
+		private final SplitRandom random;
+		
+		/** The create, read, update and delete operations to perform at the start of the window, in order */
+		private final List<EventType> events = new ArrayList<>();
+		
+		/** The messages to deliver to the node, in delivery order */
+		private final PriorityQueue<Message<? extends AbstractDataType>> deliveries = new PriorityQueue<>(DELIVERY_ORDER);
+		
+		/** The operations of those to perform which generated nothing */
+		private final List<EventType> failed = new ArrayList<>();
+		
+		/** The messages generated for delivery after the window or to other nodes */
+		private final List<Message<? extends AbstractDataType>> outgoing = new ArrayList<>();
+		
+		/** The number of messages delivered within the window */
+		private long delivered = 0L;
+		
+		/**
+		 * Instantiate the work of a node within a window
+		 * @param node The node doing the work
+		 * @param random The random number generator confined to the node
+		 */
+		private Window(Node node, SplitRandom random) {
+			this.node = node;
+			this.random = random;
 		}
+	}
+	
+	/**
+	 * Execute the simulation in windows of simulation time no longer than the minimum delay in delivering a message from one node to
+	 * another.  No message generated within a window can reach another node within it, so the nodes are independent within each
+	 * window and are partitioned among the worker threads.  Each node draws from its own random number generator and delivers the
+	 * messages of a window in a fixed order, so the outcome does not depend on how the workers are scheduled.
+	 * 
+	 * Each window starts at the current timestamp, or at the next delivery time if no operations are chosen for it.  The create,
+	 * read, update and delete operations are chosen as they are sequentially, until a delivery is chosen or there is one for each
+	 * node, and are performed at the start of the window.  The messages due within the window follow, including those a node sends
+	 * itself.  Messages for later windows are queued with the router once every node completes the window.
+	 */
+	private void executeParallel() {
+		List<Node> nodes = new ArrayList<>(new TreeMap<>(this.getNodes()).values());
+		Map<UUID, Window> windows = new TreeMap<>();
+		ExecutorService pool = Executors.newFixedThreadPool(this.getWorkerCount());
+		long events = 0;
 		
-		return messages;
+		try {
+			Map<UUID, SplitRandom> randoms = new TreeMap<>();
+			nodes.forEach(node -> randoms.put(node.getId(), Support.split()));
+			
+			while (this.eventCount() > 0) {
+				windows.clear();
+				nodes.forEach(node -> windows.put(node.getId(), new Window(node, randoms.get(node.getId()))));
+				
+				long chosen = 0;
+				
+				while (chosen < nodes.size() && this.eventCount() > this.getDeliveryCount()) {
+					Node node = this.pickNode();
+					EventType event = this.pickEvent();
+					
+					if (EventType.DELIVER == event) {
+						break;
+					}
+					
+					windows.get(node.getId()).events.add(event);
+					this.countEvent(event, -1);
+					++chosen;
+				}
+				
+				if (0 == chosen) {
+					this.getRouter().advance(this.getRouter().getNextDeliveryTime());
+				}
+				
+				long start = this.getRouter().getTimestamp();
+				long end = start + this.getMinimumDelay();
+				
+				for (Message<? extends AbstractDataType> msg : this.getRouter().pollBefore(end)) {
+					windows.get(msg.getDestination()).deliveries.add(msg);
+				}
+				
+				this.executeWindow(pool, windows.values(), start, end);
+				
+				for (Window window : windows.values()) {
+					window.failed.forEach(event -> this.countEvent(event, 1));
+					this.transmit(window.outgoing);
+					events += window.events.size() - window.failed.size() + window.delivered;
+				}
+				
+				if (0 < this.getStabilityInterval() && events >= this.getStabilityInterval()) {
+					events %= this.getStabilityInterval();
+					this.acknowledgeStability();
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
 	}
 	
 	/**
-	 * Perform an delete operation on a random object which exists in the given node.  If the node in question does not
-	 * have any objects to delete, no further action is taken.  Otherwise, the delete operation is used to generate a collection
-	 * of messages to duplicate the delete operation at all of the other nodes 
+	 * Perform the work of every node within a window, partitioning the nodes among the worker threads
 	 *
-	 * @param node The node from which to update
-	 * @return The collection of messages needed to pass the delete operation throughout the simulated distributed
-	 * environment
+	 * @param pool The worker threads
+	 * @param windows The work of each node within the window
+	 * @param start The simulation time at which the window starts
+	 * @param end The simulation time before which the window ends
 	 */
-	private Collection<Message<? extends AbstractDataType>> doDelete(Node node) {
-		if (node.getDatastore().size() <= 0) {
-			return new TreeSet<>();
+	private void executeWindow(ExecutorService pool, Collection<Window> windows, long start, long end) {
+		List<List<Window>> partitions = new ArrayList<>();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		int index = 0;
+		
+		for (int i = 0; i < this.getWorkerCount(); ++i) {
+			partitions.add(new ArrayList<>());
 		}
 		
-		Collection<Message<? extends AbstractDataType>> messages = node.generateDeleteOperation();
-
-		if (!messages.isEmpty()) {
-			--this.deleteCount;
+		for (Window window : windows) {
+			if (!window.events.isEmpty() || !window.deliveries.isEmpty()) {
+				partitions.get(index++ % this.getWorkerCount()).add(window);
+			}
 		}
 		
-		return messages;
+		for (List<Window> partition : partitions) {
+			if (!partition.isEmpty()) {
+				tasks.add(() -> {
+					partition.forEach(window -> this.executeWindow(window, start, end));
+					return null;
+				});
+			}
+		}
+		
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted executing window at " + start, e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed executing window at " + start, e.getCause());
+		}
 	}
 	
 	/**
-	 * Deliver the next message in the delivery queue to the node which is the intended recipient.  Delivery of this next message
-	 * may result in generation of a number of additional messages which are passed back to the calling routine.
+	 * Perform the work of a single node within a window on the current thread.  The operations chosen for the node are performed at the
+	 * start of the window, then the messages due are delivered in order, including those the node sends itself within the window.
 	 *
-	 * @return The collection of messages which results from delivery of the next message in the delivery queue
+	 * @param window The work of the node within the window
+	 * @param start The simulation time at which the window starts
+	 * @param end The simulation time before which the window ends
 	 */
-	private Collection<Message<? extends AbstractDataType>> doDeliver() {
-		Collection<Message<? extends AbstractDataType>> rv;
-
-		if (this.getRouter().isEmpty()) {
-			rv =  new TreeSet<>();
-		} else {
-			rv = this.getRouter().deliverNextMessage(this.getRejectProbability());
+	private void executeWindow(Window window, long start, long end) {
+		Support.setLocalRandom(window.random);
+		this.localTime.set(start);
+		
+		try {
+			for (EventType event : window.events) {
+				Collection<Message<? extends AbstractDataType>> messages = this.generateEvent(event, window.node);
+				
+				if (messages.isEmpty()) {
+					window.failed.add(event);
+				}
+				
+				this.route(window, messages, end);
+			}
+			
+			while (!window.deliveries.isEmpty()) {
+				Message<? extends AbstractDataType> msg = window.deliveries.poll();
+				this.localTime.set(msg.getDeliveryTime());
+				this.route(window, window.node.push(msg, this.getRejectProbability()), end);
+				++window.delivered;
+			}
+		} finally {
+			this.localTime.remove();
+			Support.setLocalRandom(null);
+		}
+	}
+	
+	/**
+	 * Queue the messages a node generates within a window.  Those the node sends itself within the window are delivered within it, and
+	 * the rest are held for the router.
+	 *
+	 * @param window The work of the node within the window
+	 * @param messages The messages the node generated
+	 * @param end The simulation time before which the window ends
+	 */
+	private void route(Window window, Collection<Message<? extends AbstractDataType>> messages, long end) {
+		for (Message<? extends AbstractDataType> msg : messages) {
+			if (msg.getDeliveryTime() < end && msg.getDestination().equals(window.node.getId())) {
+				window.deliveries.add(msg);
+			} else if (msg.getDeliveryTime() < end) {
+				throw new IllegalStateException("Message delivered within the window to another node: " + msg);
+			} else {
+				window.outgoing.add(msg);
+			}
 		}
+	}
+	
+	/**
+	 * Retrieve the number of worker threads among which the nodes are partitioned
+	 *
+	 * @return The number of worker threads; the simulation runs sequentially when there is one
+	 */
+	public int getWorkerCount() {
+		return this.workerCount;
+	}
 
-		return rv;
+	/**
+	 * Set the number of worker threads among which the nodes are partitioned
+	 *
+	 * @param workerCount The number of worker threads; one or less runs the simulation sequentially
+	 */
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = Math.max(1, workerCount);
 	}
 	
 	/**
-	 * Handle an event of the type provided.  Handling the event may result in a collection of messages which need to
-	 * be delivered
+	 * Retrieve the minimum delay in delivering a message from one node to another.  This bounds the span of simulation time within
+	 * which the nodes run in parallel.
 	 *
-	 * @param type Type of event to handle next
-	 * @param node Node affected by handling of the event
-	 * @return Collection of messages to deliver 
+	 * @return The minimum delay in delivering a message
 	 */
-	private Collection<Message<? extends AbstractDataType>> handleEvent(EventType type, Node node) {
-		Collection<Message<? extends AbstractDataType>> rv;
+	public long getMinimumDelay() {
+		return this.minimumDelay;
+	}
 
-		switch(type) {
-		case CREATE:
-			rv =  doCreate(node, Factory.getInstance());
-			break;
-		case READ:
-			rv = doRead(node);
-			break;
-		case UPDATE:
-			rv = doUpdate(node, this.getUpdateProbability());
-			break;
-		case DELETE:
-			rv = doDelete(node);
-			break;
-		case DELIVER:
-			rv = doDeliver();
-			break;
-		default:
-			rv = new TreeSet<>();
+	/**
+	 * Set the minimum delay in delivering a message from one node to another
+	 *
+	 * @param minimumDelay The minimum delay, which must be at least one and at most MAXIMUM_DELAY
+	 */
+	public void setMinimumDelay(long minimumDelay) {
+		if (minimumDelay < 1 || minimumDelay > MAXIMUM_DELAY) {
+			throw new IllegalArgumentException("Minimum delay out of range: " + minimumDelay);
 		}
 		
-		return rv;
+		this.minimumDelay = minimumDelay;
 	}
 	
 	/**
-	 * Execute the simulation with the settings given. 
+	 * Randomly pick the delay in delivering a message from one node to another, between the minimum delay and MAXIMUM_DELAY
+	 *
+	 * @return The delay in delivering a message
 	 */
-	public void execute() {
-		this.generateNodes();
+	public long pickDelay() {
+		return this.getMinimumDelay() + Support.getRandom().nextInt((int) (MAXIMUM_DELAY - this.getMinimumDelay() + 1));
+	}
+	
+	/**
+	 * Deliver to every CRDT the acknowledgement of each node of the latest timestamp at or before which it has received every operation
+	 * on the object, enabling the auto compaction of the CRDT so the acknowledgements compact it.  In a deployment each node would report this for itself; here it is derived from the messages awaiting delivery.
+	 * A node has seen every operation on an object earlier than the earliest one awaiting delivery to it.  No operation is issued at or
+	 * before the current timestamp, except the rejection of a PENDING operation the managing node has yet to receive, so acknowledgements
+	 * stop short of both.
+	 */
+	private void acknowledgeStability() {
+		Map<UUID, Map<UUID, Long>> earliest = new TreeMap<>();
+		Map<UUID, Long> unresolved = new TreeMap<>();
 		
-		while (this.eventCount() > 0) {
-			Node node = this.pickNode();
-			EventType event = this.pickEvent();
-			Collection<Message<? extends AbstractDataType>> messages = this.handleEvent(event, node);
-			this.transmit(messages);
+		for (Message<? extends AbstractDataType> msg : this.getRouter().getPending()) {
+			UUID objectId = msg.getManager().getObjectId();
+			long timestamp = msg.getManager().getOperation().getTimestamp();
+			
+			earliest.computeIfAbsent(objectId, id -> new TreeMap<>()).merge(msg.getDestination(), timestamp, Math::min);
+			
+			if (StatusType.PENDING == msg.getManager().getStatus() && msg.getDestination().equals(this.getOwnerNode(objectId))) {
+				unresolved.merge(objectId, timestamp, Math::min);
+			}
+		}
+		
+		for (Node node : this.getNodes().values()) {
+			for (SimCRDTManager<? extends AbstractDataType> crdt : node.getDatastore().values()) {
+				Map<UUID, Long> pending = earliest.getOrDefault(crdt.getObjectId(), Collections.emptyMap());
+				long limit = Math.min(this.getTimestamp(), unresolved.getOrDefault(crdt.getObjectId(), Long.MAX_VALUE)) - 1;
+				
+				crdt.setAutoCompaction(true);
+				
+				for (UUID replica : this.getNodes().keySet()) {
+					crdt.getStability().addReplica(replica);
+				}
+				
+				for (UUID replica : this.getNodes().keySet()) {
+					crdt.acknowledge(replica, Math.min(limit, pending.getOrDefault(replica, Long.MAX_VALUE) - 1));
+				}
+			}
 		}
 	}
+	
+	/**
+	 * Retrieve the number of events between rounds of replica acknowledgements, which drive the compaction of each CRDT
+	 *
+	 * @return The number of events between rounds of acknowledgements; zero or less when they are disabled
+	 */
+	public long getStabilityInterval() {
+		return this.stabilityInterval;
+	}
+
+	/**
+	 * Set the number of events between rounds of replica acknowledgements, which drive the compaction of each CRDT
+	 *
+	 * @param stabilityInterval The number of events between rounds of acknowledgements; zero or less disables them
+	 */
+	public void setStabilityInterval(long stabilityInterval) {
+		this.stabilityInterval = stabilityInterval;
+	}
 
 	/**
 	 * Generate the nodes the simulation will use to perform its execution.
 	 */
 	private void generateNodes() {
 		for (int i=0; i<this.getNodeCount(); ++i) {
-			Node node = new Node();
-			this.getNodes().put(node.getId(), node);
+			this.addNode(new Node());
 		}
 	}
 
@@ -592,6 +932,7 @@ public class Executive {
 		}
 		
 		this.getNodes().clear();
+		this.nodeList.clear();
 		this.getRouter().clear();
 		this.getCrdtLookup().clear();
 	}
@@ -603,9 +944,7 @@ public class Executive {
 	 * @param crdt The CRDT to register to look up owner name and user name associated with the CRDT
 	 */
 	public void registerCrdt(SimCRDTManager<? extends AbstractDataType> crdt) {
-		if (null == this.getCrdtLookup().get(crdt.getObjectId())) {
-			this.getCrdtLookup().put(crdt.getObjectId(), crdt.getManagerNodeId());
-		}
+		this.getCrdtLookup().putIfAbsent(crdt.getObjectId(), crdt.getManagerNodeId());
 	}
 
 	/**
@@ -624,10 +963,6 @@ public class Executive {
 	 * @return The CRDT owner node lookup map
 	 */
 	private Map<UUID, UUID> getCrdtLookup() {
-		if (null == this.crdtLookup) {
-			this.crdtLookup = new TreeMap<>();
-		}
-		
 		return this.crdtLookup;
 	}
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.sample.simulation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+
+/**
+ * The HeapScheduler class holds the messages pending delivery in a binary heap, so adding and removing a message takes time
+ * logarithmic in the number pending.
+ */
+public class HeapScheduler implements MessageScheduler {
+	/** The messages pending delivery, ordered by delivery time */
+	private final PriorityQueue<Message<? extends AbstractDataType>> messages = new PriorityQueue<>();
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#add(com.cyberfront.crdt.sample.simulation.Message)
+	 */
+	@Override
+	public void add(Message<? extends AbstractDataType> message) {
+		this.messages.add(message);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#peek()
+	 */
+	@Override
+	public Message<? extends AbstractDataType> peek() {
+		return this.messages.peek();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#poll()
+	 */
+	@Override
+	public Message<? extends AbstractDataType> poll() {
+		return this.messages.poll();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#size()
+	 */
+	@Override
+	public int size() {
+		return this.messages.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#getPending()
+	 */
+	@Override
+	public Collection<Message<? extends AbstractDataType>> getPending() {
+		return Collections.unmodifiableCollection(this.messages);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#clear()
+	 */
+	@Override
+	public void clear() {
+		this.messages.clear();
+	}
+}
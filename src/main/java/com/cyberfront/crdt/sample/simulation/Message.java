@@ -22,8 +22,11 @@
  */
 package com.cyberfront.crdt.sample.simulation;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -40,6 +43,9 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
  * The Message class encapsulates a delivery mechanism for moving an operation generated at one node on a particular CRDT object
  * to another Node so that it may be delivered to the corresponding CRDT at the destination node.  The generic type of the Message
  * corresponds to the type of object for the operation which the Message object is delivering.  
+ * 
+ * A Message never changes the operation manager it carries, so the messages broadcasting one operation to many nodes are built with
+ * multicast() as small envelopes which all share a single copy of the manager.
  *
  * @param <T> The generic type of the object the operations is intended to operate upon
  */
@@ -71,12 +77,47 @@ public final class Message<T extends AbstractDataType> implements Comparable<Mes
 	 * @param timestamp The scheduled delivery time stamp
 	 */
 	public Message(UUID srcNodeId, UUID dstNodeId, SimOperationManager<T> mgr, Long timestamp) {
+		this(srcNodeId, dstNodeId, timestamp, mgr.copy());
+	}
+	
+	/**
+	 * Instantiates a new message carrying the given operation manager itself rather than a copy of it, so it may be shared with other
+	 * messages
+	 *
+	 * @param srcNodeId Name of the source node for the message
+	 * @param dstNodeId Name of the message destination node
+	 * @param timestamp The scheduled delivery time stamp
+	 * @param payload Operation manager to carry, which is shared rather than copied
+	 */
+	private Message(UUID srcNodeId, UUID dstNodeId, Long timestamp, SimOperationManager<T> payload) {
 		this.srcNodeId = srcNodeId;
 		this.dstNodeId = dstNodeId;
-		this.mgr = mgr.copy();
+		this.mgr = payload;
 		this.deliveryTime  = timestamp;
 	}
 	
+	/**
+	 * Build the messages broadcasting an operation manager from a source node to each of the destination nodes.  The manager is copied
+	 * once, and the copy is shared by every message, so the cost of each message beyond the first is that of its envelope alone.
+	 *
+	 * @param <T> The generic type of the object the operation is intended to operate upon
+	 * @param srcNodeId Name of the source node for the messages
+	 * @param dstNodeIds Names of the destination nodes, one message being built for each in order
+	 * @param mgr Operation manager containing the operation details to pass from the source to the destination nodes
+	 * @param deliveryTime Function giving the scheduled delivery time stamp of the message to each destination node
+	 * @return The messages built, one for each destination node
+	 */
+	public static <T extends AbstractDataType> List<Message<T>> multicast(UUID srcNodeId, Collection<UUID> dstNodeIds, SimOperationManager<T> mgr, ToLongFunction<UUID> deliveryTime) {
+		List<Message<T>> rv = new ArrayList<>(dstNodeIds.size());
+		SimOperationManager<T> payload = mgr.copy();
+		
+		for (UUID dstNodeId : dstNodeIds) {
+			rv.add(new Message<>(srcNodeId, dstNodeId, deliveryTime.applyAsLong(dstNodeId), payload));
+		}
+		
+		return rv;
+	}
+	
 	/**
 	 * Instantiates a new message given the specific values needed to build the Message class instance
 	 *
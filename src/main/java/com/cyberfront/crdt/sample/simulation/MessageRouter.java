@@ -22,8 +22,9 @@
  */
 package com.cyberfront.crdt.sample.simulation;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.PriorityQueue;
+import java.util.List;
 import java.util.TreeSet;
 
 import org.apache.logging.log4j.LogManager;
@@ -37,6 +38,8 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 /**
  * The MessageRouter class is responsible for message delivery to the correct node in the distributed environment.  Messages are inserted 
  * into the message priority queue asynchronously 
+ * 
+ * The messages pending delivery are held by a MessageScheduler, which is a TimingWheelScheduler unless another is given.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY)
@@ -48,21 +51,47 @@ public class MessageRouter {
 	/** Timestamp of the most recent message delivery, or the current message being delivered and processed. */
 	private long timestamp = 0L;
 	
-	/** A priority queue ordered byt message time stamp */
-	private PriorityQueue<Message<? extends AbstractDataType>> messages;
+	/** The scheduler holding the messages pending delivery in order of delivery time, created on first use */
+	private MessageScheduler messages;
+	
+	/**
+	 * Instantiate a router holding the messages pending delivery in a TimingWheelScheduler
+	 */
+	public MessageRouter() {
+		this(null);
+	}
+	
+	/**
+	 * Instantiate a router holding the messages pending delivery in the given scheduler
+	 *
+	 * @param scheduler The scheduler to hold the messages pending delivery, or null to use a TimingWheelScheduler
+	 */
+	public MessageRouter(MessageScheduler scheduler) {
+		this.messages = scheduler;
+	}
 	
 	/**
 	 * Retrieve priority queue containing the messages which are pending delivery
 	 *
 	 * @return the messages pending delivery
 	 */
-	private PriorityQueue<Message<? extends AbstractDataType>> getMessages() {
+	private MessageScheduler getMessages() {
 		if (null == this.messages) {
-			this.messages = new PriorityQueue<>();
+			this.messages = new TimingWheelScheduler();
 		}
 		
 		return this.messages;
 	}
+	
+	/**
+	 * Replace the scheduler holding the messages pending delivery, moving those pending into the new one
+	 *
+	 * @param scheduler The new scheduler to hold the messages pending delivery
+	 */
+	public void setScheduler(MessageScheduler scheduler) {
+		this.getMessages().getPending().forEach(scheduler::add);
+		this.messages = scheduler;
+	}
 
 	/**
 	 * Retrieve the current time stamp value which equates to the timestamp of the most recent message delivered or 
@@ -90,6 +119,52 @@ public class MessageRouter {
 		return this.getMessages().size();
 	}
 	
+	/**
+	 * Retrieve a read only view of the messages pending delivery, in no particular order
+	 *
+	 * @return The messages pending delivery
+	 */
+	public Collection<Message<? extends AbstractDataType>> getPending() {
+		return this.getMessages().getPending();
+	}
+	
+	/**
+	 * Retrieve the delivery time of the next message pending delivery
+	 *
+	 * @return The earliest delivery time of the pending messages, or the current timestamp if there are none
+	 */
+	public long getNextDeliveryTime() {
+		return this.isEmpty() ? this.getTimestamp() : this.getMessages().peek().getDeliveryTime();
+	}
+	
+	/**
+	 * Remove and return every message pending delivery before the given time, without delivering them.  The timestamp advances to
+	 * the latest delivery time of the messages removed.
+	 *
+	 * @param end The time before which messages are removed
+	 * @return The messages removed, in delivery order
+	 */
+	public List<Message<? extends AbstractDataType>> pollBefore(long end) {
+		List<Message<? extends AbstractDataType>> rv = new ArrayList<>();
+		
+		while (!this.isEmpty() && this.getMessages().peek().getDeliveryTime() < end) {
+			Message<? extends AbstractDataType> msg = this.getMessages().poll();
+			this.setTimestamp(Math.max(this.getTimestamp(), msg.getDeliveryTime()));
+			rv.add(msg);
+		}
+		
+		return rv;
+	}
+	
+	/**
+	 * Advance the timestamp to the given time, if it is later than the current timestamp
+	 *
+	 * @param timestamp The time to advance to
+	 */
+	public void advance(long timestamp) {
+		this.setTimestamp(Math.max(this.getTimestamp(), timestamp));
+	}
+	
 	/**
 	 * Returns true exactly when the message queue is empty
 	 *
@@ -128,7 +203,7 @@ public class MessageRouter {
 	 * @param messages the collection of messages to add to the message queue
 	 */
 	public void add(Collection<Message<? extends AbstractDataType>> messages) {
-		this.getMessages().addAll(messages);
+		messages.forEach(this.getMessages()::add);
 	}
 	
 	/**
@@ -156,7 +231,7 @@ public class MessageRouter {
 		StringBuilder sb = new StringBuilder();
 		
 		sb.append("\"timestamp\":" + this.getTimestamp() + ",");
-		sb.append("\"messages\":" + Support.convert(this.getMessages()));
+		sb.append("\"messages\":" + Support.convert(this.getPending()));
 		
 		return sb.toString();
 	}
@@ -173,6 +248,6 @@ public class MessageRouter {
 	 * Check the message consistency of all the messages pending delivery.
 	 */
 	public void checkMessageConsistency() {
-		Message.checkConsistency(this.getMessages());
+		Message.checkConsistency(this.getPending());
 	}
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.sample.simulation;
+
+import java.util.Collection;
+
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+
+/**
+ * The MessageScheduler interface is implemented by the queues in which the MessageRouter holds messages pending delivery.  Messages
+ * are removed in their natural order, that is by delivery time and then by the timestamp of the operation they carry.
+ */
+public interface MessageScheduler {
+	/**
+	 * Add a message to those pending delivery
+	 * @param message The message to add
+	 */
+	void add(Message<? extends AbstractDataType> message);
+	
+	/**
+	 * Retrieve the next message to deliver without removing it
+	 * @return The next message to deliver, or null if there are none pending
+	 */
+	Message<? extends AbstractDataType> peek();
+	
+	/**
+	 * Remove and return the next message to deliver
+	 * @return The next message to deliver, or null if there are none pending
+	 */
+	Message<? extends AbstractDataType> poll();
+	
+	/**
+	 * Retrieve the number of messages pending delivery
+	 * @return The number of messages pending delivery
+	 */
+	int size();
+	
+	/**
+	 * Determine whether there are no messages pending delivery
+	 * @return True exactly when there are no messages pending delivery
+	 */
+	default boolean isEmpty() {
+		return 0 == this.size();
+	}
+	
+	/**
+	 * Retrieve a read only view of the messages pending delivery, in no particular order
+	 * @return The messages pending delivery
+	 */
+	Collection<Message<? extends AbstractDataType>> getPending();
+	
+	/**
+	 * Remove every message pending delivery
+	 */
+	void clear();
+}
@@ -24,7 +24,6 @@ package com.cyberfront.crdt.sample.simulation;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
 import java.util.UUID;
 
 import org.apache.logging.log4j.LogManager;
@@ -32,6 +31,7 @@ import org.apache.logging.log4j.Logger;
 
 import com.cyberfront.crdt.operation.OperationManager.StatusType;
 import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.support.Support;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -53,7 +53,7 @@ public class Node extends AbstractNode {
 	 * Instantiates a new node and auto generates an ID for the Node
 	 */
 	public Node() {
-		this(UUID.randomUUID());
+		this(Support.randomUUID());
 	}
 	
 	/**
@@ -160,7 +160,9 @@ public class Node extends AbstractNode {
 	}
 	
 	/**
-	 * Forward the given message to the intended recipient CRDT this Node manages.
+	 * Forward the given message to the intended recipient CRDT this Node manages, creating the CRDT if the Node has none for the
+	 * object.  Messages for the same object are applied one at a time, while those for different objects may be pushed from several
+	 * threads at once.
 	 *
 	 * @param <T> Generic type of the object the recipient CRDT manages which is tied to the generic type of the message.
 	 * @param msg Message to deliver to the node
@@ -171,18 +173,16 @@ public class Node extends AbstractNode {
 	protected <T extends AbstractDataType> Collection<Message <? extends AbstractDataType>> push(Message<T> msg, Double pReject) {
 		SimOperationManager<T> mgr = msg.getManager();
 		UUID id = mgr.getObjectId();
-		SimCRDTManager<? extends AbstractDataType> crdt = this.getDatastore().get(id);
 
-		@SuppressWarnings("unchecked")
-		SimCRDTManager<T> castCrdt = null == crdt
-				? new SimCRDTManager<>(id, this.getId(), Executive.getExecutive().getOwnerNode(id), mgr.getObjectClass())
-				: (SimCRDTManager<T>) crdt;
-				
-		if (null == crdt) {
-			this.addCRDT(castCrdt);
-		}
-		
-		return castCrdt.push(msg, pReject);
+		return this.getDatastore().apply(id, key -> {
+			SimCRDTManager<T> crdt = new SimCRDTManager<>(key, this.getId(), Executive.getExecutive().getOwnerNode(key), mgr.getObjectClass());
+			Executive.getExecutive().registerCrdt(crdt);
+			return crdt;
+		}, crdt -> {
+			@SuppressWarnings("unchecked")
+			SimCRDTManager<T> castCrdt = (SimCRDTManager<T>) crdt;
+			return castCrdt.push(msg, pReject);
+		});
 	}
 	
 	/**
@@ -190,8 +190,8 @@ public class Node extends AbstractNode {
 	 * this node.
 	 */
 	public void checkMessageConsistency() {
-		for (Map.Entry<UUID, SimCRDTManager<? extends AbstractDataType>> entry : this.getDatastore().entrySet()) {
-			entry.getValue().checkMessageConsistency();
+		for (SimCRDTManager<? extends AbstractDataType> crdt : this.getDatastore().values()) {
+			crdt.checkMessageConsistency();
 		}
 	}
 
@@ -199,8 +199,8 @@ public class Node extends AbstractNode {
 	 * Check the count consistency of all of the sent and received messages on all of the CRDT's associated with this node. 
 	 */
 	public void checkMessageCount() {
-		for (Map.Entry<UUID, SimCRDTManager<? extends AbstractDataType>> entry : this.getDatastore().entrySet()) {
-			entry.getValue().checkMessageCount();
+		for (SimCRDTManager<? extends AbstractDataType> crdt : this.getDatastore().values()) {
+			crdt.checkMessageCount();
 		}
 	}
 
@@ -208,8 +208,8 @@ public class Node extends AbstractNode {
 	 * Check the operation validity for all operations managed within each CRDT associated with this node.
 	 */
 	public void checkOperationValidity() {
-		for (Map.Entry<UUID, SimCRDTManager<? extends AbstractDataType>> entry : this.getDatastore().entrySet()) {
-			entry.getValue().checkOperationValidity();
+		for (SimCRDTManager<? extends AbstractDataType> crdt : this.getDatastore().values()) {
+			crdt.checkOperationValidity();
 		}
 	}
 }
@@ -28,7 +28,6 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -170,6 +169,23 @@ public class SimCRDTManager<T extends AbstractDataType>
 		return this.getManagerNodeId().equals(this.getOwnerNodeID());
 	}
 	
+	/**
+	 * Compact every operation at or before the given stable watermark, and discard the received and sent messages carrying them.  The
+	 * delivery counts reported afterward cover only the messages retained, which keeps them consistent with the operations retained.
+	 *
+	 * @param watermark The latest timestamp of the operations to compact
+	 * @return The number of operations dropped from the CRDT
+	 */
+	@Override
+	public long compact(long watermark) {
+		long rv = super.compact(watermark);
+		
+		this.getReceived().removeIf(msg -> msg.getManager().getOperation().getTimestamp() <= watermark);
+		this.getSent().removeIf(msg -> msg.getManager().getOperation().getTimestamp() <= watermark);
+		
+		return rv;
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.cyberfront.crdt.CRDTManager#push(com.cyberfront.crdt.operation.OperationManager)
 	 */
@@ -344,12 +360,9 @@ public class SimCRDTManager<T extends AbstractDataType>
 		Collection<Message<? extends AbstractDataType>> rv = new ArrayList<>();
 		
 		if (null != mgr) {
-			for (Map.Entry<UUID, Node> entry : Executive.getExecutive().getNodes().entrySet()) {
-				boolean localDelivery = entry.getKey().equals(this.getOwnerNodeID());
-				long timestamp = Executive.getExecutive().getTimestamp() + 
-						(localDelivery ? 0 : (1 + Support.getRandom().nextInt(65535)));
-				rv.add(new Message<>(this.getOwnerNodeID(), entry.getKey(), mgr, timestamp));
-			}
+			long timestamp = Executive.getExecutive().getTimestamp();
+			rv.addAll(Message.multicast(this.getOwnerNodeID(), Executive.getExecutive().getNodes().keySet(), mgr,
+					dstNodeId -> timestamp + (dstNodeId.equals(this.getOwnerNodeID()) ? 0 : Executive.getExecutive().pickDelay())));
 		}
 		
 		return rv;
@@ -728,7 +741,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of CREATE operations added to the CRDT add set
 	 */
 	public long getCreateCountAdded() {
-		return filterOperationsByType(this.getCrdt().copyAddSet(), OperationType.CREATE, true).size();
+		return countOperationsByType(this.getCrdt().getAddView(), OperationType.CREATE);
 	}
 	
 	/**
@@ -737,7 +750,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of READ operations added to the CRDT add set
 	 */
 	public long getReadCountAdded() {
-		return filterOperationsByType(this.getCrdt().copyAddSet(), OperationType.READ, true).size();
+		return countOperationsByType(this.getCrdt().getAddView(), OperationType.READ);
 	}
 	
 	/**
@@ -746,7 +759,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of UPDATE operations added to the CRDT add set
 	 */
 	public long getUpdateCountAdded() {
-		return filterOperationsByType(this.getCrdt().copyAddSet(), OperationType.UPDATE, true).size();
+		return countOperationsByType(this.getCrdt().getAddView(), OperationType.UPDATE);
 	}
 	
 	/**
@@ -755,7 +768,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of DELETE operations added to the CRDT add set
 	 */
 	public long getDeleteCountAdded() {
-		return filterOperationsByType(this.getCrdt().copyAddSet(), OperationType.DELETE, true).size();
+		return countOperationsByType(this.getCrdt().getAddView(), OperationType.DELETE);
 	}
 	
 	/**
@@ -764,7 +777,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of CREATE operations added to the CRDT remove set
 	 */
 	public long getCreateCountRemoved() {
-		return filterOperationsByType(this.getCrdt().copyRemSet(), OperationType.CREATE, true).size();
+		return countOperationsByType(this.getCrdt().getRemView(), OperationType.CREATE);
 	}
 	
 	/**
@@ -773,7 +786,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of READ operations added to the CRDT remove set
 	 */
 	public long getReadCountRemoved() {
-		return filterOperationsByType(this.getCrdt().copyRemSet(), OperationType.READ, true).size();
+		return countOperationsByType(this.getCrdt().getRemView(), OperationType.READ);
 	}
 	
 	/**
@@ -782,7 +795,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of UPDATE operations added to the CRDT remove set
 	 */
 	public long getUpdateCountRemoved() {
-		return filterOperationsByType(this.getCrdt().copyRemSet(), OperationType.UPDATE, true).size();
+		return countOperationsByType(this.getCrdt().getRemView(), OperationType.UPDATE);
 	}
 	
 	/**
@@ -791,7 +804,7 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 * @return the number of DELETE operations added to the CRDT remove set
 	 */
 	public long getDeleteCountRemoved() {
-		return filterOperationsByType(this.getCrdt().copyRemSet(), OperationType.DELETE, true).size();
+		return countOperationsByType(this.getCrdt().getRemView(), OperationType.DELETE);
 	}
 
 	/**
@@ -824,8 +837,8 @@ public class SimCRDTManager<T extends AbstractDataType>
 	 */
 	private void validateOperationCount(OperationType type) {
 		long messageCount = Message.filterMessages(this.getReceived(), type, true).size();
-		long addCount = filterOperationsByType(this.getCrdt().copyAddSet(), type, true).size();
-		long remCount = filterOperationsByType(this.getCrdt().copyRemSet(), type, true).size();
+		long addCount = countOperationsByType(this.getCrdt().getAddView(), type);
+		long remCount = countOperationsByType(this.getCrdt().getRemView(), type);
 		long opCount = addCount + remCount;
 
 		StringBuilder sb = new StringBuilder();
@@ -926,4 +939,17 @@ public class SimCRDTManager<T extends AbstractDataType>
 			.filter(op -> (opType == op.getType()) == criteria)
 			.collect(Collectors.toList());
 	}
+	
+	/**
+	 * Count the operations of the given type in a collection of operations without building a new collection
+	 *
+	 * @param opList The collection of operations to count
+	 * @param opType The type of operation to count
+	 * @return The number of operations in the collection of the given type
+	 */
+	public static long countOperationsByType(Collection<Operation> opList, OperationType opType) {
+		return opList.stream()
+				.filter(op -> opType == op.getType())
+				.count();
+	}
 }
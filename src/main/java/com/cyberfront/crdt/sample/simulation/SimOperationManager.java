@@ -30,6 +30,7 @@ import org.apache.logging.log4j.Logger;
 import com.cyberfront.crdt.operation.GenericOperationManager;
 import com.cyberfront.crdt.operation.Operation;
 import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.support.Support;
 
 /**
  * The SimOperationManager class wraps JSON operations with some management code to ensure proper delivery and processing
@@ -66,7 +67,7 @@ public class SimOperationManager<T extends AbstractDataType> extends GenericOper
 	public SimOperationManager(StatusType status, Operation operation, UUID objectId, Class<T> objectClass) {
 		super(status, operation, objectClass);
 		this.objectId = objectId;
-		this.operationId = UUID.randomUUID();
+		this.operationId = Support.randomUUID();
 		this.referenceId = NIL_UUID;
 	}
 	
@@ -82,7 +83,7 @@ public class SimOperationManager<T extends AbstractDataType> extends GenericOper
 	public SimOperationManager(StatusType status, Operation operation, UUID objectId, UUID referenceId, Class<T> objectClass) {
 		super(status, operation, objectClass);
 		this.objectId = objectId;
-		this.operationId = UUID.randomUUID();
+		this.operationId = Support.randomUUID();
 		this.referenceId = referenceId;
 	}
 	
@@ -142,7 +143,7 @@ public class SimOperationManager<T extends AbstractDataType> extends GenericOper
 	 * @return a reference to the new operations based on this one
 	 */
 	public SimOperationManager<T> mimic() {
-		Operation op = new Operation(UUID.randomUUID(), this.getOperation().getType(), this.getOperation().getOp(), Executive.getExecutive().getTimestamp());
+		Operation op = new Operation(Support.randomUUID(), this.getOperation().getType(), this.getOperation().getOp(), Executive.getExecutive().getTimestamp());
 		return new SimOperationManager<>(this.getStatus(), op, this.getObjectId(), this.getOperationId(), this.getObjectClass());
 	}
 
@@ -154,7 +155,7 @@ public class SimOperationManager<T extends AbstractDataType> extends GenericOper
 	 * @return a reference to the new operations based on this one
 	 */
 	public SimOperationManager<T> mimic(StatusType status) {
-		Operation op = new Operation(UUID.randomUUID(), this.getOperation().getType(), this.getOperation().getOp(), Executive.getExecutive().getTimestamp());
+		Operation op = new Operation(Support.randomUUID(), this.getOperation().getType(), this.getOperation().getOp(), Executive.getExecutive().getTimestamp());
 		return new SimOperationManager<>(status, op, this.getObjectId(), this.getOperationId(), this.getObjectClass());
 	}
 
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.sample.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+
+/**
+ * The TimingWheelScheduler class holds the messages pending delivery in a timing wheel, a ring of slots with one for each unit of
+ * simulation time.  The wheel covers the span of time starting at its cursor, which is the earliest delivery time a message in the
+ * wheel may have, so each slot holds the messages of a single delivery time.  A message is added by appending it to its slot, and the
+ * next message is found from a bitmap of the occupied slots, so both take constant time in the number pending.  The messages of a slot
+ * are sorted when it comes to be delivered, which takes time linear in their number when they arrive in order, as they usually do.
+ * 
+ * Delivery times are bounded offsets from the current time, so with a slot for each time up to Executive.MAXIMUM_DELAY nearly every
+ * message lands in the wheel.  The few which fall outside the span it covers are held in a heap, and the earlier of the next message
+ * of the wheel and that of the heap is delivered first.
+ */
+public class TimingWheelScheduler implements MessageScheduler {
+	/** Default number of bits in the index of a slot, which gives the wheel a slot for each delay up to Executive.MAXIMUM_DELAY */
+	public static final int DEFAULT_SLOT_BITS = 16;
+	
+	/** Minimum number of bits in the index of a slot, which gives the wheel at least one word of the bitmap */
+	public static final int MINIMUM_SLOT_BITS = 6;
+	
+	/** Maximum number of bits in the index of a slot */
+	public static final int MAXIMUM_SLOT_BITS = 24;
+	
+	/**
+	 * The Slot class holds the messages of a single delivery time.  Those delivered are cleared from the front of the list, and the
+	 * rest are sorted only when some arrived out of order.
+	 */
+	private static final class Slot {
+		/** The messages of the slot, of which those before next are delivered */
+		private final List<Message<? extends AbstractDataType>> messages = new ArrayList<>();
+		
+		/** The position of the next message to deliver */
+		private int next = 0;
+		
+		/** Flag indicating whether the messages yet to deliver are in order */
+		private boolean sorted = true;
+		
+		/**
+		 * Add a message to the slot
+		 * @param message The message to add
+		 */
+		private void add(Message<? extends AbstractDataType> message) {
+			if (this.sorted && this.size() > 0 && message.compareTo(this.messages.get(this.messages.size() - 1)) < 0) {
+				this.sorted = false;
+			}
+			
+			this.messages.add(message);
+		}
+		
+		/**
+		 * Retrieve the next message of the slot to deliver, sorting those yet to deliver if necessary
+		 * @return The next message to deliver
+		 */
+		private Message<? extends AbstractDataType> peek() {
+			if (!this.sorted) {
+				this.messages.subList(this.next, this.messages.size()).sort(null);
+				this.sorted = true;
+			}
+			
+			return this.messages.get(this.next);
+		}
+		
+		/**
+		 * Remove and return the next message of the slot to deliver
+		 * @return The next message to deliver
+		 */
+		private Message<? extends AbstractDataType> poll() {
+			Message<? extends AbstractDataType> rv = this.peek();
+			this.messages.set(this.next++, null);
+			
+			if (this.next == this.messages.size()) {
+				this.clear();
+			}
+			
+			return rv;
+		}
+		
+		/**
+		 * Retrieve the number of messages in the slot yet to deliver
+		 * @return The number of messages yet to deliver
+		 */
+		private int size() {
+			return this.messages.size() - this.next;
+		}
+		
+		/**
+		 * Retrieve the messages in the slot yet to deliver
+		 * @return The messages yet to deliver
+		 */
+		private List<Message<? extends AbstractDataType>> getPending() {
+			return this.messages.subList(this.next, this.messages.size());
+		}
+		
+		/**
+		 * Remove every message from the slot
+		 */
+		private void clear() {
+			this.messages.clear();
+			this.next = 0;
+			this.sorted = true;
+		}
+	}
+	
+	/** The slots of the wheel, created on first use, indexed by delivery time modulo the number of slots */
+	private final Slot[] slots;
+	
+	/** Bitmap of the slots holding messages */
+	private final long[] occupied;
+	
+	/** Mask selecting the index of a slot from a delivery time */
+	private final long mask;
+	
+	/** The earliest delivery time a message in the wheel may have; the wheel covers the times from here up to the number of slots */
+	private long cursor = 0L;
+	
+	/** The number of messages in the wheel */
+	private int count = 0;
+	
+	/** The messages whose delivery times fall outside the span the wheel covered when they were added */
+	private final PriorityQueue<Message<? extends AbstractDataType>> overflow = new PriorityQueue<>();
+	
+	/**
+	 * Instantiate a scheduler with the default number of slots
+	 */
+	public TimingWheelScheduler() {
+		this(DEFAULT_SLOT_BITS);
+	}
+	
+	/**
+	 * Instantiate a scheduler with a wheel of the given size.  It should cover the longest delay in delivering a message.
+	 * @param slotBits The number of bits in the index of a slot, so the wheel has two to this power slots
+	 */
+	public TimingWheelScheduler(int slotBits) {
+		if (slotBits < MINIMUM_SLOT_BITS || slotBits > MAXIMUM_SLOT_BITS) {
+			throw new IllegalArgumentException("Slot bits " + slotBits + " outside of [" + MINIMUM_SLOT_BITS + "," + MAXIMUM_SLOT_BITS + "]");
+		}
+		
+		this.slots = new Slot[1 << slotBits];
+		this.occupied = new long[this.slots.length >>> 6];
+		this.mask = this.slots.length - 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#add(com.cyberfront.crdt.sample.simulation.Message)
+	 */
+	@Override
+	public void add(Message<? extends AbstractDataType> message) {
+		long time = message.getDeliveryTime();
+		
+		if (0 == this.count && !this.covers(time)) {
+			this.cursor = time;
+		}
+		
+		if (this.covers(time)) {
+			this.insert(message);
+		} else {
+			this.overflow.add(message);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#peek()
+	 */
+	@Override
+	public Message<? extends AbstractDataType> peek() {
+		Message<? extends AbstractDataType> wheel = this.peekWheel();
+		Message<? extends AbstractDataType> heap = this.overflow.peek();
+		
+		return null == wheel || null != heap && heap.compareTo(wheel) < 0 ? heap : wheel;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#poll()
+	 */
+	@Override
+	public Message<? extends AbstractDataType> poll() {
+		Message<? extends AbstractDataType> wheel = this.peekWheel();
+		Message<? extends AbstractDataType> heap = this.overflow.peek();
+		
+		if (null == wheel || null != heap && heap.compareTo(wheel) < 0) {
+			return this.overflow.poll();
+		}
+		
+		int index = (int) (this.cursor & this.mask);
+		Message<? extends AbstractDataType> rv = this.slots[index].poll();
+		--this.count;
+		
+		if (0 == this.slots[index].size()) {
+			this.occupied[index >>> 6] &= ~(1L << index);
+		}
+		
+		return rv;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#size()
+	 */
+	@Override
+	public int size() {
+		return this.count + this.overflow.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#getPending()
+	 */
+	@Override
+	public Collection<Message<? extends AbstractDataType>> getPending() {
+		List<Message<? extends AbstractDataType>> rv = new ArrayList<>(this.size());
+		
+		for (Slot slot : this.slots) {
+			if (null != slot) {
+				rv.addAll(slot.getPending());
+			}
+		}
+		
+		rv.addAll(this.overflow);
+		
+		return Collections.unmodifiableList(rv);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.sample.simulation.MessageScheduler#clear()
+	 */
+	@Override
+	public void clear() {
+		for (Slot slot : this.slots) {
+			if (null != slot) {
+				slot.clear();
+			}
+		}
+		
+		Arrays.fill(this.occupied, 0L);
+		this.overflow.clear();
+		this.cursor = 0L;
+		this.count = 0;
+	}
+	
+	/**
+	 * Determine whether the wheel covers the given delivery time
+	 * @param time The delivery time
+	 * @return True exactly when the time falls within the span of the wheel starting at the cursor
+	 */
+	private boolean covers(long time) {
+		return time >= this.cursor && time - this.cursor < this.slots.length;
+	}
+	
+	/**
+	 * Place a message in the slot of its delivery time, which the wheel must cover
+	 * @param message The message to place
+	 */
+	private void insert(Message<? extends AbstractDataType> message) {
+		int index = (int) (message.getDeliveryTime() & this.mask);
+		
+		if (null == this.slots[index]) {
+			this.slots[index] = new Slot();
+		}
+		
+		this.slots[index].add(message);
+		this.occupied[index >>> 6] |= 1L << index;
+		++this.count;
+	}
+	
+	/**
+	 * Retrieve the next message of the wheel to deliver.  The cursor advances to its delivery time, and the messages of the heap which
+	 * the wheel comes to cover are moved into it.
+	 * @return The next message of the wheel to deliver, or null if the wheel is empty
+	 */
+	private Message<? extends AbstractDataType> peekWheel() {
+		if (0 == this.count) {
+			return null;
+		}
+		
+		int start = (int) (this.cursor & this.mask);
+		int index = this.nextOccupied(start);
+		this.cursor += (index - start) & this.mask;
+		
+		while (!this.overflow.isEmpty() && this.covers(this.overflow.peek().getDeliveryTime())) {
+			this.insert(this.overflow.poll());
+		}
+		
+		return this.slots[index].peek();
+	}
+	
+	/**
+	 * Find the first occupied slot at or after the given one, wrapping around the wheel.  The wheel must hold a message.
+	 * @param start The index of the slot at which to start
+	 * @return The index of the first occupied slot
+	 */
+	private int nextOccupied(int start) {
+		int word = start >>> 6;
+		long bits = this.occupied[word] & (-1L << start);
+		
+		while (0L == bits) {
+			word = (word + 1) % this.occupied.length;
+			bits = this.occupied[word];
+		}
+		
+		return (word << 6) | Long.numberOfTrailingZeros(bits);
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.ConcurrentCRDTManager;
+import com.cyberfront.crdt.support.Support;
+
+/**
+ * The CrdtStore class holds the managers of many objects keyed by object identifier, and may be shared between threads.  It is backed
+ * by a ConcurrentHashMap, so get() and contains() hash the identifier rather than comparing it against others, and take no lock.
+ * Placing or removing a manager locks the hash bin of the identifier, and briefly the list of identifiers described below.
+ * 
+ * Operations are applied to a manager with apply(), which creates the manager at most once while the bin of the object is locked,
+ * then releases the bin and applies the operation under the lock of the manager.  A ConcurrentCRDTManager is changed within its own
+ * execute(), so apply() shares its lock with every other caller of the manager.  Any other manager is locked by synchronizing on it,
+ * which only excludes other callers of apply(), so such managers must only be reached through apply() while the store is shared.
+ * Operations on one object are thus applied one at a time, and a slow operation holds up neither lookups nor changes to other objects
+ * in the same bin.  Iteration over the store is weakly consistent; it never fails with a ConcurrentModificationException, and reflects
+ * some or all of the changes made while it is in progress.
+ * 
+ * The identifiers are also held in a list, so one can be picked at random in constant time with pickId().  An identifier joins the
+ * list when its manager is placed in the store, and leaves it by swapping the last identifier into its place.  The list is guarded by
+ * its own lock, which is only taken while the bin of the identifier is locked or with no bin locked, so the two never deadlock.
+ *
+ * @param <M> The type of manager the store holds
+ */
+public class CrdtStore<M extends CRDTManager> {
+	/** The managers held in the store, keyed by object identifier */
+	private final Map<UUID, M> managers = new ConcurrentHashMap<>();
+	
+	/** The identifiers of the objects in the store, in no particular order, from which to pick one at random */
+	private final List<UUID> ids = new ArrayList<>();
+	
+	/** The position of each identifier in the list of them */
+	private final Map<UUID, Integer> positions = new HashMap<>();
+	
+	/**
+	 * The Holder class carries a result out of the remapping function in which it is found
+	 * @param <R> The type of the result
+	 */
+	private static final class Holder<R> {
+		/** The result of the action */
+		private R value;
+	}
+	
+	/**
+	 * Retrieve the manager of the given object, without taking a lock
+	 * @param id The identifier of the object
+	 * @return The manager of the object, or null if the store holds none
+	 */
+	public M get(UUID id) {
+		return this.managers.get(id);
+	}
+	
+	/**
+	 * Determine whether the store holds a manager for the given object
+	 * @param id The identifier of the object
+	 * @return True exactly when the store holds a manager for the object
+	 */
+	public boolean contains(UUID id) {
+		return this.managers.containsKey(id);
+	}
+	
+	/**
+	 * Place the manager of an object in the store, replacing any manager it held for the object
+	 * @param id The identifier of the object
+	 * @param manager The manager of the object
+	 * @return The manager replaced, or null if there was none
+	 */
+	public M put(UUID id, M manager) {
+		Holder<M> rv = new Holder<>();
+		
+		this.managers.compute(id, (key, prior) -> {
+			rv.value = prior;
+			this.index(key);
+			return manager;
+		});
+		
+		return rv.value;
+	}
+	
+	/**
+	 * Retrieve the manager of an object, creating and placing one in the store if there is none.  The factory is called at most once
+	 * per object, while the bin of the object is locked, so it must not change the store.
+	 * @param id The identifier of the object
+	 * @param factory The function creating the manager of the object from its identifier
+	 * @return The manager of the object
+	 */
+	public M computeIfAbsent(UUID id, Function<? super UUID, ? extends M> factory) {
+		return this.managers.computeIfAbsent(id, key -> {
+			M manager = factory.apply(key);
+			
+			if (null != manager) {
+				this.index(key);
+			}
+			
+			return manager;
+		});
+	}
+	
+	/**
+	 * Apply an action to the manager of an object, creating the manager first if the store holds none.  The manager is retrieved or
+	 * created with computeIfAbsent(), and the action then runs within execute() of a ConcurrentCRDTManager, or synchronized on any
+	 * other manager, so actions on the same object are applied one at a time and each sees the effects of those before it.  The bin of the object is not locked while the action runs,
+	 * so the action may change the store, though an action racing the removal of its object is applied to the manager removed.
+	 * @param <R> The type of result the action produces
+	 * @param id The identifier of the object
+	 * @param factory The function creating the manager of the object from its identifier, which may return null to skip the action
+	 * @param action The action to apply to the manager
+	 * @return The result of the action, or null if there was no manager to apply it to
+	 */
+	public <R> R apply(UUID id, Function<? super UUID, ? extends M> factory, Function<? super M, ? extends R> action) {
+		M manager = this.computeIfAbsent(id, factory);
+		
+		if (null == manager) {
+			return null;
+		}
+		
+		if (manager instanceof ConcurrentCRDTManager) {
+			return ((ConcurrentCRDTManager) manager).execute(() -> action.apply(manager));
+		}
+		
+		synchronized (manager) {
+			return action.apply(manager);
+		}
+	}
+	
+	/**
+	 * Remove the manager of an object from the store
+	 * @param id The identifier of the object
+	 * @return The manager removed, or null if there was none
+	 */
+	public M remove(UUID id) {
+		Holder<M> rv = new Holder<>();
+		
+		this.managers.computeIfPresent(id, (key, manager) -> {
+			rv.value = manager;
+			this.unindex(key);
+			return null;
+		});
+		
+		return rv.value;
+	}
+	
+	/**
+	 * Pick the identifier of an object in the store at random, in constant time and without allocating
+	 * @param random The random number generator from which to draw the pick
+	 * @return The identifier picked, or null if the store is empty
+	 */
+	public UUID pickId(Random random) {
+		synchronized (this.ids) {
+			return this.ids.isEmpty() ? null : this.ids.get(random.nextInt(this.ids.size()));
+		}
+	}
+	
+	/**
+	 * Add an identifier to the list of them, if it is not there already
+	 * @param id The identifier to add
+	 */
+	private void index(UUID id) {
+		synchronized (this.ids) {
+			if (null == this.positions.putIfAbsent(id, this.ids.size())) {
+				this.ids.add(id);
+			}
+		}
+	}
+	
+	/**
+	 * Remove an identifier from the list of them by moving the last identifier into its place
+	 * @param id The identifier to remove
+	 */
+	private void unindex(UUID id) {
+		synchronized (this.ids) {
+			Integer position = this.positions.remove(id);
+			
+			if (null != position) {
+				UUID last = this.ids.remove(this.ids.size() - 1);
+				
+				if (position < this.ids.size()) {
+					this.ids.set(position, last);
+					this.positions.put(last, position);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Retrieve the number of managers in the store
+	 * @return The number of managers
+	 */
+	public int size() {
+		return this.managers.size();
+	}
+	
+	/**
+	 * Determine whether the store holds no managers
+	 * @return True exactly when the store is empty
+	 */
+	public boolean isEmpty() {
+		return this.managers.isEmpty();
+	}
+	
+	/**
+	 * Retrieve a weakly consistent view of the identifiers of the objects in the store
+	 * @return The object identifiers
+	 */
+	public Set<UUID> keySet() {
+		return this.managers.keySet();
+	}
+	
+	/**
+	 * Retrieve a weakly consistent view of the managers in the store
+	 * @return The managers
+	 */
+	public Collection<M> values() {
+		return this.managers.values();
+	}
+	
+	/**
+	 * Retrieve a weakly consistent view of the entries of the store, relating object identifiers to their managers
+	 * @return The entries of the store
+	 */
+	public Set<Map.Entry<UUID, M>> entrySet() {
+		return this.managers.entrySet();
+	}
+	
+	/**
+	 * Remove every manager from the store
+	 */
+	public void clear() {
+		this.managers.keySet().forEach(this::remove);
+	}
+	
+	/**
+	 * Retrieve a string segment used in the toString() method to build up JSON formatted string
+	 * @return The JSON formated string segment
+	 */
+	protected String getSegment() {
+		return "\"managers\":" + Support.convert(this.managers);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "{" + this.getSegment() + "}";
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.PatchStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The MappedSegmentStore class holds the JSON Patches of archived UPDATE operations in memory-mapped segment files.  Each patch is
+ * written once, in the Smile binary JSON format, and is parsed directly from the mapped segment each time it is read, so neither the
+ * patch nor its encoding is kept on the heap.  Archived operations keep their timestamp, identifier, type and the locator of their
+ * patch, which is the segment index in the upper 32 bits and the offset within the segment in the lower 32 bits.
+ * 
+ * The store is a spill area for the process which writes it rather than a durable record; the OperationLog serves that purpose.  Its
+ * segment files are not reopened after a restart.
+ */
+public class MappedSegmentStore implements PatchStore, Closeable {
+	/** Default size in bytes of each segment file */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	
+	/** File name suffix for segment files */
+	private static final String SEGMENT_SUFFIX = ".seg";
+	
+	/** The ObjectMapper used to read and write Smile encoded patches */
+	private static final ObjectMapper mapper = new ObjectMapper(new SmileFactory());
+	
+	/**
+	 * The ByteBufferInputStream class reads a region of a mapped segment as a stream without copying it
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		/** The region of the segment to read */
+		private final ByteBuffer buffer;
+		
+		/**
+		 * Instantiate a stream over a region of a segment
+		 * @param buffer The region of the segment to read
+		 */
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() {
+			return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!this.buffer.hasRemaining()) {
+				return -1;
+			}
+			
+			int rv = Math.min(length, this.buffer.remaining());
+			this.buffer.get(bytes, offset, rv);
+			
+			return rv;
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+	}
+	
+	/** Directory holding the segment files */
+	private final Path directory;
+	
+	/** Size in bytes of each segment file */
+	private final int segmentSize;
+	
+	/** The mapped segments in the order they were written */
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+	
+	/** Offset in the last segment at which the next patch is written */
+	private int offset;
+	
+	/** Number of bytes written to the store, including the length of each patch */
+	private long size;
+	
+	/**
+	 * Open a store in the given directory with the default segment size
+	 * @param directory The directory to hold the segment files, which is created if it does not exist
+	 * @throws IOException results when the directory cannot be created
+	 */
+	public MappedSegmentStore(Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+	
+	/**
+	 * Open a store in the given directory 
+	 * @param directory The directory to hold the segment files, which is created if it does not exist
+	 * @param segmentSize The size in bytes of each segment file; a patch larger than this is written to a segment of its own
+	 * @throws IOException results when the directory cannot be created
+	 */
+	public MappedSegmentStore(Path directory, int segmentSize) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+	}
+	
+	/**
+	 * Write the patch of an UPDATE operation to the store and return an archived copy of the operation which reads its patch from the
+	 * store.  Other operations, and operations which are already archived, are returned as they are.
+	 * @param op The operation to archive
+	 * @return The archived operation
+	 * @throws IOException results when the patch cannot be written
+	 */
+	public Operation archive(Operation op) throws IOException {
+		if (!op.isUpdate() || op.isArchived()) {
+			return op;
+		}
+		
+		return new Operation(op, this, this.write(op.getOp()));
+	}
+	
+	/**
+	 * Write a patch to the store
+	 * @param patch The patch to write
+	 * @return The locator of the patch
+	 * @throws IOException results when the patch cannot be written
+	 */
+	private synchronized long write(JsonNode patch) throws IOException {
+		byte[] bytes = mapper.writeValueAsBytes(patch);
+		int length = Integer.BYTES + bytes.length;
+		
+		if (this.segments.isEmpty() || this.offset + length > this.segments.get(this.segments.size() - 1).capacity()) {
+			this.map(Math.max(length, this.segmentSize));
+		}
+		
+		ByteBuffer buffer = this.segments.get(this.segments.size() - 1).duplicate();
+		long rv = ((long) (this.segments.size() - 1) << Integer.SIZE) | this.offset;
+		
+		buffer.position(this.offset);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		
+		this.offset += length;
+		this.size += length;
+		
+		return rv;
+	}
+	
+	/**
+	 * Create and map a new segment file
+	 * @param capacity The size in bytes of the segment
+	 * @throws IOException results when the segment cannot be created or mapped
+	 */
+	private void map(int capacity) throws IOException {
+		Path path = this.directory.resolve(String.format("%010d", this.segments.size()) + SEGMENT_SUFFIX);
+		
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			this.segments.add(channel.map(MapMode.READ_WRITE, 0, capacity));
+		}
+		
+		this.offset = 0;
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.cyberfront.crdt.operation.PatchStore#readPatch(long)
+	 */
+	@Override
+	public JsonNode readPatch(long locator) throws IOException {
+		ByteBuffer buffer = this.getSegment((int) (locator >>> Integer.SIZE)).duplicate();
+		int position = (int) locator;
+		
+		buffer.position(position);
+		buffer.limit(position + Integer.BYTES + buffer.getInt());
+		
+		return mapper.readTree(new ByteBufferInputStream(buffer));
+	}
+	
+	/**
+	 * Retrieve a mapped segment
+	 * @param index The index of the segment
+	 * @return The mapped segment
+	 */
+	private synchronized MappedByteBuffer getSegment(int index) {
+		return this.segments.get(index);
+	}
+	
+	/**
+	 * Retrieve the number of segment files in the store
+	 * @return The number of segment files
+	 */
+	public synchronized int getSegmentCount() {
+		return this.segments.size();
+	}
+	
+	/**
+	 * Retrieve the number of bytes written to the store
+	 * @return The number of bytes written to the store
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Release the segments held by the store.  The mappings are released once they are no longer reachable, so the archived operations
+	 * of the store must no longer be used.
+	 */
+	@Override
+	public synchronized void close() {
+		this.segments.clear();
+	}
+}
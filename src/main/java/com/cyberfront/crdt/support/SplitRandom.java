@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.support;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * A random number generator drawing from a SplittableRandom, presented as a Random so it can take the place of one anywhere in the
+ * simulation.  Each generator can be split into another whose values are statistically independent of its own, so a stream can be
+ * given to each node or worker thread.  The values a generator draws depend only on the seed it descends from and on the order of the
+ * splits and draws made from it, so a run can be replayed from its seed.  A generator is meant to be confined to a single thread.
+ */
+public class SplitRandom extends Random {
+	/** Serialization version of the generator */
+	private static final long serialVersionUID = 1L;
+
+	/** The source of the values drawn from this generator */
+	private SplittableRandom source;
+
+	/**
+	 * Instantiate a generator with the given seed
+	 *
+	 * @param seed The seed of the generator
+	 */
+	public SplitRandom(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	/**
+	 * Instantiate a generator drawing from the given source
+	 *
+	 * @param source The source of the values drawn from the generator
+	 */
+	private SplitRandom(SplittableRandom source) {
+		super(0L);
+		this.source = source;
+	}
+
+	/**
+	 * Split a new generator from this one.  The values it draws are independent of those drawn from this generator.
+	 *
+	 * @return The new generator
+	 */
+	public SplitRandom split() {
+		return new SplitRandom(this.source.split());
+	}
+
+	/**
+	 * Restart the generator from the given seed.  This is ignored while the superclass is being constructed.
+	 *
+	 * @param seed The new seed of the generator
+	 */
+	@Override
+	public void setSeed(long seed) {
+		if (null != this.source) {
+			this.source = new SplittableRandom(seed);
+		}
+	}
+
+	@Override
+	protected int next(int bits) {
+		return this.source.nextInt() >>> (32 - bits);
+	}
+
+	@Override
+	public int nextInt() {
+		return this.source.nextInt();
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return this.source.nextInt(bound);
+	}
+
+	@Override
+	public long nextLong() {
+		return this.source.nextLong();
+	}
+
+	/**
+	 * Draw a value uniformly from zero, inclusive, to the given bound, exclusive
+	 *
+	 * @param bound The upper bound of the value, which must be positive
+	 * @return The value drawn
+	 */
+	public long nextLong(long bound) {
+		return this.source.nextLong(bound);
+	}
+
+	@Override
+	public double nextDouble() {
+		return this.source.nextDouble();
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return this.source.nextBoolean();
+	}
+}
@@ -28,7 +28,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.TreeSet;
+import java.util.UUID;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -45,8 +47,20 @@ import com.thedeanda.lorem.LoremIpsum;
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY)
 public class Support {
 	
-	/** A random number generator used to choose values for testing purposes */
-	private static Random rnd = new Random();
+	/** The seed from which the random number generators of each thread descend */
+	private static long seed = new SplittableRandom().nextLong();
+	
+	/** The random number generator from which that of each thread is split */
+	private static volatile SplitRandom root = new SplitRandom(seed);
+	
+	/** The random number generator of the current thread, along with the root from which it was split */
+	private static final ThreadLocal<Stream> threadRnd = new ThreadLocal<>();
+	
+	/** A random number generator confined to the current thread, which takes the place of the thread's own while it is set */
+	private static final ThreadLocal<SplitRandom> localRnd = new ThreadLocal<>();
+	
+	/** Seed of the generator used to build the list of words, which is the same for every run */
+	private static final long WORD_SEED = 0x5EEDL;
 	
 	/** Number of unique random words from which to draw for phrases */ 
 	private static final int WORD_COUNT = 65536;
@@ -61,7 +75,7 @@ public class Support {
 	private static final Logger logger = LogManager.getLogger(Support.class);
 	
 	/** List of random words to use in generating random sequences */
-	private static final List<String> WORDS = genUniqueWords(WORD_COUNT);
+	private static final List<String> WORDS = genUniqueWords(WORD_COUNT, new SplitRandom(WORD_SEED));
 	
 	/** Length of a long sequence of random words from the word list. */
 	protected static final int LONG_SEQUENCE_LENGTH = 4;
@@ -70,12 +84,46 @@ public class Support {
 	protected static final int SHORT_SEQUENCE_LENGTH = 2;
 
 	private static final int SHORT_SEQUNCE_LENGTH = 0;
+	
+	/**
+	 * The random number generator of a thread, along with the root from which it was split.  A thread splits a new one once the root
+	 * is reseeded.
+	 */
+	private static final class Stream {
+		/** The root from which the generator was split */
+		private final SplitRandom root;
+		
+		/** The generator of the thread */
+		private final SplitRandom random;
+		
+		/**
+		 * Instantiate the generator of a thread
+		 * @param root The root from which the generator was split
+		 * @param random The generator of the thread
+		 */
+		private Stream(SplitRandom root, SplitRandom random) {
+			this.root = root;
+			this.random = random;
+		}
+	}
 
 	public static List<String> genUniqueWords(int wordCount) {
+		return genUniqueWords(wordCount, getRandom());
+	}
+
+	/**
+	 * Generate a list of unique words of random letters
+	 *
+	 * @param wordCount Number of words to generate
+	 * @param random The random number generator from which to draw the words
+	 * @return The list of words generated
+	 */
+	public static List<String> genUniqueWords(int wordCount, Random random) {
 		Set<String> wordSet = new TreeSet<>();
 		
 		while (wordSet.size() < wordCount) {
-			wordSet.add(RandomStringUtils.randomAlphabetic(MIN_WORD_LEN, MAX_WORD_LEN+1));
+			int length = MIN_WORD_LEN + random.nextInt(MAX_WORD_LEN - MIN_WORD_LEN + 1);
+			wordSet.add(RandomStringUtils.random(length, 0, 0, true, false, null, random));
 		}
 
 		return new ArrayList<String>(wordSet); 
@@ -146,6 +194,17 @@ public class Support {
 		return getSequence(SHORT_SEQUNCE_LENGTH, delimiter);
 	}
 	
+	/**
+	 * Generate and return a sequence of a random number of words separated by a space ' ' as the delimiter
+	 *
+	 * @param min Minimum number of words to include in the sequence
+	 * @param max Maximum number of words to include in the sequence
+	 * @return The sequence of words selected
+	 */
+	public static String getSequence(int min, int max) {
+		return getSequence(min + getRandom().nextInt(max - min + 1));
+	}
+	
 	/**
 	 * Generate and return a sequence of words of the given type separated by a space ' ' as the delimiter
 	 *
@@ -225,12 +284,97 @@ public class Support {
 	}
 
 	/**
-	 * Retrieve the random number generator
+	 * Retrieve the random number generator of the current thread.  This is the one set with setLocalRandom if there is one, and
+	 * otherwise one the thread splits from the root the first time it draws after the root is seeded.
 	 *
 	 * @return The random number generator
 	 */
-	public static Random getRandom() {
-		return rnd;
+	public static SplitRandom getRandom() {
+		SplitRandom rv = localRnd.get();
+		
+		if (null != rv) {
+			return rv;
+		}
+		
+		Stream stream = threadRnd.get();
+		
+		if (null == stream || stream.root != root) {
+			stream = spawn();
+			threadRnd.set(stream);
+		}
+		
+		return stream.random;
+	}
+	
+	/**
+	 * Split a new generator for the current thread from the root
+	 *
+	 * @return The new generator, along with the root from which it was split
+	 */
+	private static synchronized Stream spawn() {
+		return new Stream(root, root.split());
+	}
+	
+	/**
+	 * Split a new random number generator from that of the current thread.  The values drawn from it are independent of those
+	 * drawn by the thread, so it can be handed to a node or another thread without disturbing the sequence of either.
+	 *
+	 * @return The new random number generator
+	 */
+	public static SplitRandom split() {
+		return getRandom().split();
+	}
+	
+	/**
+	 * Retrieve the seed from which the random number generators descend
+	 *
+	 * @return The seed
+	 */
+	public static synchronized long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Reseed the random number generators.  The current thread starts drawing from a new generator split from the reseeded root,
+	 * and every other thread does the same when it next draws, so a run started on one thread after this call is replayed by
+	 * starting it again with the same seed.
+	 *
+	 * @param seed The new seed
+	 */
+	public static void setSeed(long seed) {
+		synchronized (Support.class) {
+			Support.seed = seed;
+			Support.root = new SplitRandom(seed);
+		}
+		
+		threadRnd.set(spawn());
+	}
+	
+	/**
+	 * Generate a version 4 UUID from the random number generator of the current thread, so the identifiers are replayed with it
+	 *
+	 * @return The UUID generated
+	 */
+	public static UUID randomUUID() {
+		Random random = getRandom();
+		long msb = (random.nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+		long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		
+		return new UUID(msb, lsb);
+	}
+	
+	/**
+	 * Set the random number generator used by the current thread in place of its own.  A thread which draws from its own
+	 * generator draws the same sequence of values however it is scheduled alongside other threads.
+	 *
+	 * @param random The random number generator for the current thread, or null to restore its own
+	 */
+	public static void setLocalRandom(SplitRandom random) {
+		if (null == random) {
+			localRnd.remove();
+		} else {
+			localRnd.set(random);
+		}
 	}
 	
 	/**
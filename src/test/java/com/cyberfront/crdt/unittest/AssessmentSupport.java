@@ -15,13 +15,19 @@ import java.util.UUID;
 import com.cyberfront.crdt.sample.data.AbstractDataType;
 import com.cyberfront.crdt.sample.data.Factory;
 import com.cyberfront.crdt.support.Support;
+import com.cyberfront.crdt.unittest.TestCodec.Codec;
+import com.cyberfront.crdt.unittest.TestConcurrentManager.Concurrency;
 import com.cyberfront.crdt.unittest.TestCrdt.Generic;
 import com.cyberfront.crdt.unittest.TestCrdt.Json;
+import com.cyberfront.crdt.unittest.TestCrdtStore.Store;
 import com.cyberfront.crdt.unittest.TestData.Create;
 import com.cyberfront.crdt.unittest.TestData.Update;
 import com.cyberfront.crdt.unittest.TestData.Clone;
 import com.cyberfront.crdt.unittest.TestData.Encoding;
+import com.cyberfront.crdt.unittest.TestLastWriteWins.Materialization;
+import com.cyberfront.crdt.unittest.TestOperationLog.Logging;
 import com.cyberfront.crdt.unittest.TestOperator.Operator;
+import com.cyberfront.crdt.unittest.TestSegmentStore.Archive;
 import com.cyberfront.crdt.unittest.TestSimulation.Simulation;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -51,6 +57,12 @@ import com.thedeanda.lorem.LoremIpsum;
     @Type(value = Clone.class, name = "Clone"),
     @Type(value = Encoding.class, name = "Encoding"),
     @Type(value = Operator.class, name = "Operator"),
+    @Type(value = Materialization.class, name = "Materialization"),
+    @Type(value = Codec.class, name = "Codec"),
+    @Type(value = Logging.class, name = "Logging"),
+    @Type(value = Archive.class, name = "Archive"),
+    @Type(value = Concurrency.class, name = "Concurrency"),
+    @Type(value = Store.class, name = "Store"),
     @Type(value = Simulation.class, name = "Simulation")
     })
 public class AssessmentSupport {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.LastWriteWins;
+import com.cyberfront.crdt.codec.BinaryCodec;
+import com.cyberfront.crdt.operation.GenericOperationManager;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * This contains a class used for performing unit tests on the binary encoding of operations, operation managers and LastWriteWins
+ * CRDTs.  It is successful if each instance decodes to one which is equal to the original and has the same JSON representation.
+ */
+public class TestCodec {
+	public static class Codec extends AssessmentSupport {
+		/** Constant defining the number of states to use in the testing */
+		private static final long STATE_COUNT = 256L;
+		
+		/** Probability of placing a given operation in the REMOVE set of the CRDT */
+		private static final double REMOVE_PROBABILITY = 0.10d;
+		
+		/** Time between consecutive operations */
+		private static final long TIMESTAMP_STEP = 10L;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestCodec.Codec.class);
+		
+		/** Number of states to prepare for the testing suite */
+		private final long stateCount;
+
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Codec() {
+			super();
+			this.stateCount = STATE_COUNT;
+		}
+
+		/**
+		 * Constructor to deliberately initialize each field to the associated values provided
+		 * @param stateCount The number of state transitions for the test
+		 * @param trialCount Trial count to use for the test activity
+		 * @param abbreviatedFactor Abbreviation factor to use the basis of this CreateTest instance when the abbreviated flag is set
+		 * @param stressedFactor Stressed factor to use when the the stressed flag is set
+		 * @param abbreviated Abbreviated flag which indicates when to divide different test parameters by the abbreviatedFactor
+		 * @param stressed Stressed flag which indicates when to multiply different test parameters by the stressedFactor
+		 */
+		public Codec(long stateCount, long trialCount, long abbreviatedFactor, long stressedFactor, boolean abbreviated, boolean stressed) {
+			super(trialCount, abbreviatedFactor, stressedFactor, abbreviated, stressed);
+			this.stateCount = stateCount;
+		}
+
+		/**
+		 * Get the number of state transitions for this test suite
+		 * @return The number of state transition for this test suite
+		 */
+		public long getStateCount() {
+			return this.stateCount * this.getStressedFactor() / this.getAbbreviatedFactor();
+		}
+		
+		/**
+		 * Generate a CREATE, a sequence of UPDATE operations each followed by a READ, and a DELETE in timestamp order
+		 * @return The list of operations in timestamp order
+		 */
+		private List<Operation> generateOperations() {
+			List<Operation> rv = new ArrayList<>();
+			Collection<AbstractDataType> objects = generateObjectSequence(this.getStateCount(), 0.1);
+			long timestamp = 0;
+			
+			rv.add(CRDTManager.generateCreate(timestamp));
+			
+			for (JsonNode diff : generateDifferenceSequence(generateJsonSequence(objects))) {
+				timestamp += TIMESTAMP_STEP;
+				rv.add(new Operation(diff, timestamp));
+				rv.add(CRDTManager.generateRead(timestamp + 1));
+			}
+			
+			rv.add(CRDTManager.generateDelete(timestamp + TIMESTAMP_STEP));
+			
+			return rv;
+		}
+		
+		/**
+		 * Compare the JSON representations of two objects
+		 * @param expected The object expected
+		 * @param actual The object decoded
+		 * @param message Message to report when the representations differ
+		 * @return The size in bytes of the JSON representation of the expected object
+		 * @throws JsonProcessingException results when either object cannot be represented as JSON 
+		 */
+		private static long assessJson(Object expected, Object actual, String message) throws JsonProcessingException {
+			assertEquals(getMapper().valueToTree(expected), getMapper().valueToTree(actual), message);
+			return getMapper().writeValueAsBytes(expected).length;
+		}
+
+		/**
+		 * Test each operation, operation manager and CRDT decodes to an instance which is equal to the one encoded and has the same
+		 * JSON representation, and report the sizes of the binary and JSON encodings
+		 * @throws IOException results when an encoding cannot be decoded, which fails the test
+		 */
+		public void test() throws IOException {
+			logger.info("\n** TestCodec.Codec.test: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<Operation> ops = this.generateOperations();
+				Collection<Operation> addset = new ArrayList<>();
+				Collection<Operation> remset = new ArrayList<>();
+				long jsonSize = 0;
+				long binarySize = 0;
+				
+				for (Operation op : ops) {
+					byte[] bytes = BinaryCodec.encode(op);
+					Operation decoded = BinaryCodec.decodeOperation(bytes);
+					
+					assertEquals(op, decoded, "Operation mismatch: ");
+					jsonSize += assessJson(op, decoded, "Operation JSON mismatch: ");
+					binarySize += bytes.length;
+					
+					for (OperationManager mgr : new OperationManager[] {
+							new OperationManager(StatusType.APPROVED, op),
+							new GenericOperationManager<>(StatusType.PENDING, op, AbstractDataType.class) }) {
+						OperationManager decodedManager = BinaryCodec.decodeOperationManager(BinaryCodec.encode(mgr));
+						
+						assertEquals(mgr.getClass(), decodedManager.getClass(), "Operation manager class mismatch: ");
+						assertEquals(mgr.getStatus(), decodedManager.getStatus(), "Operation manager status mismatch: ");
+						assertEquals(mgr.getOperation(), decodedManager.getOperation(), "Operation manager operation mismatch: ");
+						assessJson(mgr, decodedManager, "Operation manager JSON mismatch: ");
+					}
+					
+					addset.add(op);
+					if (Support.getRandom().nextDouble() < REMOVE_PROBABILITY) {
+						remset.add(op);
+					}
+				}
+				
+				LastWriteWins crdt = new LastWriteWins(addset, remset);
+				byte[] bytes = BinaryCodec.encode(crdt);
+				LastWriteWins decoded = BinaryCodec.decodeLastWriteWins(bytes);
+				
+				assertEquals(crdt.getOpsSet(), decoded.getOpsSet(), "CRDT operation mismatch: ");
+				assertEquals(crdt.getDocument(), decoded.getDocument(), "CRDT document mismatch: ");
+				long crdtJsonSize = assessJson(crdt, decoded, "CRDT JSON mismatch: ");
+				
+				assertTrue(binarySize < jsonSize, "Binary encoding of operations no smaller than JSON: ");
+				assertTrue(bytes.length < crdtJsonSize, "Binary encoding of CRDT no smaller than JSON: ");
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":{\"json\":" + jsonSize +
+						", \"binary\":" + binarySize + "}, \"crdt\":{\"json\":" + crdtJsonSize + ", \"binary\":" + bytes.length + "}}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test the binary encoding of operations, operation managers and CRDTs 
+	 * @throws IOException results when an encoding cannot be decoded, which fails the test
+	 */
+	@Test
+	public void testCodec() throws IOException {
+		Codec test = new Codec();
+		test.test();
+	}
+}
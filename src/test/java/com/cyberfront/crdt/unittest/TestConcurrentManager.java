@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.ConcurrentCRDTManager;
+import com.cyberfront.crdt.ConcurrentCRDTManager.Snapshot;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * This contains a class used for performing unit tests on the ConcurrentCRDTManager.  Operations are delivered from several writer
+ * threads while reader threads take snapshots, and the result must match delivering the same operations from one thread.  The read
+ * throughput of snapshots is also measured as reader threads are added, alongside that of reads under one coarse lock.
+ */
+public class TestConcurrentManager {
+	public static class Concurrency extends AssessmentSupport {
+		/** Constant defining the number of states to use in the testing */
+		private static final long STATE_COUNT = 256L;
+		
+		/** Probability of rejecting a given UPDATE operation */
+		private static final double REJECTION_PROBABILITY = 0.10d;
+		
+		/** Time between consecutive operations */
+		private static final long TIMESTAMP_STEP = 10L;
+		
+		/** Number of threads delivering operations concurrently */
+		private static final int WRITER_COUNT = 4;
+		
+		/** Number of threads reading snapshots while operations are delivered */
+		private static final int READER_COUNT = 4;
+		
+		/** Number of reads each thread performs when measuring read throughput */
+		private static final int READ_COUNT = 1 << 18;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestConcurrentManager.Concurrency.class);
+
+		/**
+		 * The Harness class exposes delivery of operation managers to the CRDT used as the single threaded reference
+		 */
+		private static class Harness extends CRDTManager {
+			/**
+			 * Deliver the operation manager to the CRDT 
+			 * @param mgr The operation manager to deliver
+			 */
+			public void deliver(OperationManager mgr) {
+				this.push(mgr);
+			}
+		}
+		
+		/** Number of states to prepare for the testing suite */
+		private final long stateCount;
+
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Concurrency() {
+			super();
+			this.stateCount = STATE_COUNT;
+		}
+
+		/**
+		 * Constructor to deliberately initialize each field to the associated values provided
+		 * @param stateCount The number of state transitions for the test
+		 * @param trialCount Trial count to use for the test activity
+		 * @param abbreviatedFactor Abbreviation factor to use the basis of this CreateTest instance when the abbreviated flag is set
+		 * @param stressedFactor Stressed factor to use when the the stressed flag is set
+		 * @param abbreviated Abbreviated flag which indicates when to divide different test parameters by the abbreviatedFactor
+		 * @param stressed Stressed flag which indicates when to multiply different test parameters by the stressedFactor
+		 */
+		public Concurrency(long stateCount, long trialCount, long abbreviatedFactor, long stressedFactor, boolean abbreviated, boolean stressed) {
+			super(trialCount, abbreviatedFactor, stressedFactor, abbreviated, stressed);
+			this.stateCount = stateCount;
+		}
+
+		/**
+		 * Get the number of state transitions for this test suite
+		 * @return The number of state transition for this test suite
+		 */
+		public long getStateCount() {
+			return this.stateCount * this.getStressedFactor() / this.getAbbreviatedFactor();
+		}
+
+		/**
+		 * Generate the operation managers for a CREATE and a sequence of UPDATE operations, some of them rejected
+		 * @return The list of operation managers in timestamp order
+		 */
+		private List<OperationManager> generateManagers() {
+			List<OperationManager> rv = new ArrayList<>();
+			Collection<AbstractDataType> objects = generateObjectSequence(this.getStateCount(), 0.1);
+			long timestamp = 0;
+
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateCreate(timestamp)));
+			
+			for (JsonNode diff : generateDifferenceSequence(generateJsonSequence(objects))) {
+				timestamp += TIMESTAMP_STEP;
+				Operation update = new Operation(diff, timestamp);
+				rv.add(new OperationManager(StatusType.APPROVED, update));
+				
+				if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+					rv.add(new OperationManager(StatusType.REJECTED, update));
+				}
+			}
+			
+			return rv;
+		}
+		
+		/**
+		 * Wait for each of the futures to complete, rethrowing the first failure of a task as an AssertionError
+		 * @param futures The futures to wait for
+		 * @throws InterruptedException results when the thread is interrupted while waiting
+		 */
+		private static void await(Collection<? extends Future<?>> futures) throws InterruptedException {
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new AssertionError("Task failed: " + e.getCause(), e.getCause());
+				}
+			}
+		}
+		
+		/**
+		 * Deliver the operation managers to a ConcurrentCRDTManager from several writer threads, each taking an interleaved share, while
+		 * reader threads take snapshots.  Each reader must see snapshot versions which never move back, and documents which match
+		 * the snapshot flags.  Once every operation is delivered, the manager must match one to which they were delivered in order.
+		 * @throws InterruptedException results when the test thread is interrupted, which fails the test
+		 */
+		public void testConsistency() throws InterruptedException {
+			logger.info("\n** TestConcurrentManager.Concurrency.testConsistency: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+			ExecutorService executor = Executors.newFixedThreadPool(WRITER_COUNT + READER_COUNT);
+			
+			try {
+				for (int trial=0; trial<this.getTrialCount(); ++trial) {
+					List<OperationManager> managers = this.generateManagers();
+					ConcurrentCRDTManager concurrent = new ConcurrentCRDTManager();
+					Harness expected = new Harness();
+					CountDownLatch start = new CountDownLatch(1);
+					AtomicBoolean done = new AtomicBoolean(false);
+					List<Future<?>> writers = new ArrayList<>();
+					List<Future<?>> readers = new ArrayList<>();
+					AtomicLong reads = new AtomicLong();
+					
+					for (OperationManager mgr : managers) {
+						expected.deliver(mgr);
+					}
+					
+					Collections.shuffle(managers, Support.getRandom());
+					
+					for (int i = 0; i < WRITER_COUNT; ++i) {
+						final int offset = i;
+						writers.add(executor.submit(() -> {
+							start.await();
+							for (int j = offset; j < managers.size(); j += WRITER_COUNT) {
+								concurrent.apply(managers.get(j));
+							}
+							return null;
+						}));
+					}
+					
+					for (int i = 0; i < READER_COUNT; ++i) {
+						readers.add(executor.submit(() -> {
+							long version = -1;
+							start.await();
+							
+							while (!done.get()) {
+								Snapshot snapshot = concurrent.getSnapshot();
+								assertTrue(version <= snapshot.getVersion(), "Snapshot version moved back: ");
+								assertTrue(null == snapshot.getDocument() || snapshot.isCreated(), "Document without a CREATE: ");
+								version = snapshot.getVersion();
+								reads.incrementAndGet();
+							}
+							
+							return null;
+						}));
+					}
+					
+					start.countDown();
+					await(writers);
+					done.set(true);
+					await(readers);
+					
+					assertEquals(managers.size(), concurrent.getSnapshot().getVersion(), "Snapshot version mismatch: ");
+					assertEquals(expected.getCrdt().getDocument(), concurrent.getDocument(), "Concurrent document mismatch: ");
+					assertEquals(expected.getCrdt().copyAddSet(), concurrent.getCrdt().copyAddSet(), "Concurrent ADD set mismatch: ");
+					assertEquals(expected.getCrdt().copyRemSet(), concurrent.getCrdt().copyRemSet(), "Concurrent REMOVE set mismatch: ");
+					assertEquals(expected.isCreated(), concurrent.isCreated(), "Concurrent created flag mismatch: ");
+					assertEquals(expected.isUpdated(), concurrent.isUpdated(), "Concurrent updated flag mismatch: ");
+					
+					logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":" + managers.size() + ", \"snapshotReads\":" + reads.get() + "}");
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Measure the time for the given number of threads to each perform READ_COUNT reads
+		 * @param threads The number of threads reading
+		 * @param read The read each thread performs, which must return the expected document
+		 * @param expected The expected document
+		 * @return The elapsed time in nanoseconds
+		 * @throws InterruptedException results when the test thread is interrupted
+		 */
+		private static long measureReads(int threads, Supplier<JsonNode> read, JsonNode expected) throws InterruptedException {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			
+			try {
+				for (int i = 0; i < threads; ++i) {
+					futures.add(executor.submit(() -> {
+						start.await();
+						for (int j = 0; j < READ_COUNT; ++j) {
+							assertTrue(expected == read.get(), "Read document mismatch: ");
+						}
+						return null;
+					}));
+				}
+				
+				long begin = System.nanoTime();
+				start.countDown();
+				await(futures);
+				
+				return System.nanoTime() - begin;
+			} finally {
+				executor.shutdownNow();
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			}
+		}
+		
+		/**
+		 * Measure the read throughput of snapshots, and of the CRDT document read under a single coarse lock, as reader threads are added
+		 * up to the number of available processors
+		 * @throws InterruptedException results when the test thread is interrupted, which fails the test
+		 */
+		public void testReadScaling() throws InterruptedException {
+			int processors = Runtime.getRuntime().availableProcessors();
+			logger.info("\n** TestConcurrentManager.Concurrency.testReadScaling: {\"stateCount\":" + this.getStateCount()+ ", \"readCount\":" + READ_COUNT + ", \"processors\":" + processors + "}");
+			
+			ConcurrentCRDTManager concurrent = new ConcurrentCRDTManager();
+			Harness coarse = new Harness();
+			Object monitor = new Object();
+			
+			for (OperationManager mgr : this.generateManagers()) {
+				concurrent.apply(mgr);
+				coarse.deliver(mgr);
+			}
+			
+			JsonNode snapshot = concurrent.getDocument();
+			JsonNode locked = coarse.getCrdt().getDocument();
+			
+			for (int threads = 1; threads <= processors; threads *= 2) {
+				long snapshotTime = measureReads(threads, concurrent::getDocument, snapshot);
+				long lockedTime = measureReads(threads, () -> {
+					synchronized (monitor) {
+						return coarse.getCrdt().getDocument();
+					}
+				}, locked);
+				long reads = (long) threads * READ_COUNT;
+				
+				logger.info("   threads " + threads + ": {\"snapshotReadsPerMilli\":" + (reads * 1000000 / Math.max(1, snapshotTime)) +
+						", \"lockedReadsPerMilli\":" + (reads * 1000000 / Math.max(1, lockedTime)) + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test delivering operations to a ConcurrentCRDTManager from several threads while others read snapshots
+	 * @throws InterruptedException results when the test thread is interrupted, which fails the test
+	 */
+	@Test
+	public void testConsistency() throws InterruptedException {
+		Concurrency test = new Concurrency();
+		test.testConsistency();
+	}
+	
+	/**
+	 * Measure the read throughput of ConcurrentCRDTManager snapshots as reader threads are added
+	 * @throws InterruptedException results when the test thread is interrupted, which fails the test
+	 */
+	@Test
+	public void testReadScaling() throws InterruptedException {
+		Concurrency test = new Concurrency();
+		test.testReadScaling();
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.store.CrdtStore;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * This contains a class used for performing unit tests on the CrdtStore.  Operations on many objects are applied through the store
+ * from several threads at once, creating the managers as their first operations arrive, while another thread iterates over the store.
+ * Each object must have exactly one manager, holding the same operations and document as one to which they were delivered in order.
+ */
+public class TestCrdtStore {
+	public static class Store extends AssessmentSupport {
+		/** Constant defining the number of states to use in the testing */
+		private static final long STATE_COUNT = 64L;
+		
+		/** Number of objects held in the store */
+		private static final int OBJECT_COUNT = 32;
+		
+		/** Probability of rejecting a given UPDATE operation */
+		private static final double REJECTION_PROBABILITY = 0.10d;
+		
+		/** Time between consecutive operations */
+		private static final long TIMESTAMP_STEP = 10L;
+		
+		/** Number of threads applying operations concurrently */
+		private static final int WRITER_COUNT = 4;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestCrdtStore.Store.class);
+
+		/**
+		 * The Harness class exposes delivery of operation managers to the CRDTs held in the store
+		 */
+		private static class Harness extends CRDTManager {
+			/**
+			 * Deliver the operation manager to the CRDT 
+			 * @param mgr The operation manager to deliver
+			 */
+			public void deliver(OperationManager mgr) {
+				this.push(mgr);
+			}
+		}
+		
+		/**
+		 * The Delivery class relates an operation manager to the object it applies to
+		 */
+		private static class Delivery {
+			/** Identifier of the object the operation applies to */
+			private final UUID id;
+			
+			/** The operation manager to deliver */
+			private final OperationManager manager;
+			
+			/**
+			 * Relate the operation manager to the object it applies to
+			 * @param id Identifier of the object
+			 * @param manager The operation manager to deliver
+			 */
+			private Delivery(UUID id, OperationManager manager) {
+				this.id = id;
+				this.manager = manager;
+			}
+		}
+		
+		/** Number of states to prepare for the testing suite */
+		private final long stateCount;
+
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Store() {
+			super();
+			this.stateCount = STATE_COUNT;
+		}
+
+		/**
+		 * Constructor to deliberately initialize each field to the associated values provided
+		 * @param stateCount The number of state transitions for the test
+		 * @param trialCount Trial count to use for the test activity
+		 * @param abbreviatedFactor Abbreviation factor to use the basis of this CreateTest instance when the abbreviated flag is set
+		 * @param stressedFactor Stressed factor to use when the the stressed flag is set
+		 * @param abbreviated Abbreviated flag which indicates when to divide different test parameters by the abbreviatedFactor
+		 * @param stressed Stressed flag which indicates when to multiply different test parameters by the stressedFactor
+		 */
+		public Store(long stateCount, long trialCount, long abbreviatedFactor, long stressedFactor, boolean abbreviated, boolean stressed) {
+			super(trialCount, abbreviatedFactor, stressedFactor, abbreviated, stressed);
+			this.stateCount = stateCount;
+		}
+
+		/**
+		 * Get the number of state transitions for this test suite
+		 * @return The number of state transition for this test suite
+		 */
+		public long getStateCount() {
+			return this.stateCount * this.getStressedFactor() / this.getAbbreviatedFactor();
+		}
+
+		/**
+		 * Generate the operation managers for a CREATE and a sequence of UPDATE operations on one object, some of them rejected
+		 * @return The list of operation managers in timestamp order
+		 */
+		private List<OperationManager> generateManagers() {
+			List<OperationManager> rv = new ArrayList<>();
+			Collection<AbstractDataType> objects = generateObjectSequence(this.getStateCount(), 0.1);
+			long timestamp = 0;
+
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateCreate(timestamp)));
+			
+			for (JsonNode diff : generateDifferenceSequence(generateJsonSequence(objects))) {
+				timestamp += TIMESTAMP_STEP;
+				Operation update = new Operation(diff, timestamp);
+				rv.add(new OperationManager(StatusType.APPROVED, update));
+				
+				if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+					rv.add(new OperationManager(StatusType.REJECTED, update));
+				}
+			}
+			
+			return rv;
+		}
+		
+		/**
+		 * Wait for each of the futures to complete, rethrowing the first failure of a task as an AssertionError
+		 * @param futures The futures to wait for
+		 * @throws InterruptedException results when the thread is interrupted while waiting
+		 */
+		private static void await(Collection<? extends Future<?>> futures) throws InterruptedException {
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new AssertionError("Task failed: " + e.getCause(), e.getCause());
+				}
+			}
+		}
+
+		/**
+		 * Test applying operations on many objects through the store from several threads, while another thread iterates over it
+		 * @throws InterruptedException results when the test thread is interrupted, which fails the test
+		 */
+		public void test() throws InterruptedException {
+			logger.info("\n** TestCrdtStore.Store.test: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ ", \"objectCount\":" + OBJECT_COUNT + "}");
+			ExecutorService executor = Executors.newFixedThreadPool(WRITER_COUNT + 1);
+			
+			try {
+				for (int trial=0; trial<this.getTrialCount(); ++trial) {
+					Map<UUID, Harness> expected = new TreeMap<>();
+					List<Delivery> deliveries = new ArrayList<>();
+					CrdtStore<Harness> store = new CrdtStore<>();
+					AtomicLong created = new AtomicLong();
+					AtomicLong iterated = new AtomicLong();
+					AtomicBoolean done = new AtomicBoolean(false);
+					CountDownLatch start = new CountDownLatch(1);
+					List<Future<?>> writers = new ArrayList<>();
+					
+					for (int i = 0; i < OBJECT_COUNT; ++i) {
+						UUID id = UUID.randomUUID();
+						Harness harness = new Harness();
+						
+						for (OperationManager mgr : this.generateManagers()) {
+							harness.deliver(mgr);
+							deliveries.add(new Delivery(id, mgr));
+						}
+						
+						expected.put(id, harness);
+					}
+					
+					Collections.shuffle(deliveries, Support.getRandom());
+					
+					for (int i = 0; i < WRITER_COUNT; ++i) {
+						final int offset = i;
+						writers.add(executor.submit(() -> {
+							start.await();
+							for (int j = offset; j < deliveries.size(); j += WRITER_COUNT) {
+								Delivery delivery = deliveries.get(j);
+								store.apply(delivery.id, key -> {
+									created.incrementAndGet();
+									return new Harness();
+								}, harness -> {
+									harness.deliver(delivery.manager);
+									return null;
+								});
+							}
+							return null;
+						}));
+					}
+					
+					Future<?> reader = executor.submit(() -> {
+						start.await();
+						while (!done.get()) {
+							for (Map.Entry<UUID, Harness> entry : store.entrySet()) {
+								assertSame(entry.getValue(), store.get(entry.getKey()), "Entry does not match lookup: ");
+								iterated.incrementAndGet();
+							}
+						}
+						return null;
+					});
+					
+					start.countDown();
+					await(writers);
+					done.set(true);
+					await(Collections.singleton(reader));
+					
+					assertEquals(OBJECT_COUNT, created.get(), "Manager created more than once: ");
+					assertEquals(OBJECT_COUNT, store.size(), "Store size mismatch: ");
+					
+					for (Map.Entry<UUID, Harness> entry : expected.entrySet()) {
+						Harness actual = store.get(entry.getKey());
+						
+						assertEquals(entry.getValue().getCrdt().copyAddSet(), actual.getCrdt().copyAddSet(), "Stored ADD set mismatch: ");
+						assertEquals(entry.getValue().getCrdt().copyRemSet(), actual.getCrdt().copyRemSet(), "Stored REMOVE set mismatch: ");
+						assertEquals(entry.getValue().getCrdt().getDocument(), actual.getCrdt().getDocument(), "Stored document mismatch: ");
+					}
+					
+					logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"deliveries\":" + deliveries.size() + ", \"entriesIterated\":" + iterated.get() + "}");
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Test picking identifiers at random from the store as managers are placed in it and removed, ensuring every identifier
+		 * picked is held by the store and every identifier held is eventually picked
+		 */
+		public void testPick() {
+			logger.info("\n** TestCrdtStore.Store.testPick: {\"count\":" + this.getTrialCount() + ", \"objectCount\":" + OBJECT_COUNT + "}");
+			
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				CrdtStore<Harness> store = new CrdtStore<>();
+				List<UUID> ids = new ArrayList<>();
+				
+				assertNull(store.pickId(Support.getRandom()), "Picked an identifier from an empty store: ");
+				
+				for (int i = 0; i < OBJECT_COUNT; ++i) {
+					UUID id = UUID.randomUUID();
+					ids.add(id);
+					
+					if (0 == i % 2) {
+						store.put(id, new Harness());
+					} else {
+						store.computeIfAbsent(id, key -> new Harness());
+					}
+				}
+				
+				Collections.shuffle(ids, Support.getRandom());
+				ids.subList(0, OBJECT_COUNT / 2).forEach(store::remove);
+				
+				Set<UUID> picked = new TreeSet<>();
+				
+				for (int i = 0; i < 64 * OBJECT_COUNT && picked.size() < store.size(); ++i) {
+					UUID id = store.pickId(Support.getRandom());
+					assertTrue(store.contains(id), "Picked an identifier the store does not hold: ");
+					picked.add(id);
+				}
+				
+				assertEquals(store.keySet(), picked, "Identifiers held and picked mismatch: ");
+				
+				store.clear();
+				assertNull(store.pickId(Support.getRandom()), "Picked an identifier from a cleared store: ");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test applying operations on many objects through the CrdtStore from several threads at once
+	 * @throws InterruptedException results when the test thread is interrupted, which fails the test
+	 */
+	@Test
+	public void testCrdtStore() throws InterruptedException {
+		Store test = new Store();
+		test.test();
+	}
+	
+	/**
+	 * Test picking identifiers at random from the CrdtStore in constant time as managers are placed in it and removed
+	 */
+	@Test
+	public void testPick() {
+		Store test = new Store();
+		test.testPick();
+	}
+}
@@ -0,0 +1,1262 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.LastWriteWins;
+import com.cyberfront.crdt.LastWriteWins.Delta;
+import com.cyberfront.crdt.LastWriteWins.TrialResult;
+import com.cyberfront.crdt.MerkleDigest;
+import com.cyberfront.crdt.StabilityTracker;
+import com.cyberfront.crdt.codec.BinaryCodec;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.Operation.OperationType;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.cyberfront.crdt.operation.ReplayEngine;
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+
+/**
+ * This contains a class used for performing unit tests on the materialization of documents by the LastWriteWins CRDT.  Operations
+ * are delivered out of order and some are rejected, and after each delivery the documents the CRDT maintains, both current and
+ * at a fixed set of historical timestamps, are compared against those produced by replaying every operation from the start.
+ */
+public class TestLastWriteWins {
+	public static class Materialization extends AssessmentSupport {
+		/** Constant defining the number of states to use in the testing */
+		private static final long STATE_COUNT = 256L;
+		
+		/** Probability of delivering a given operation out of order */
+		private static final double DISORDER_PROBABILITY = 0.25d;
+		
+		/** Maximum distance an operation is moved when it is delivered out of order */
+		private static final int DISORDER_WINDOW = 8;
+		
+		/** Probability of rejecting a given UPDATE operation */
+		private static final double REJECTION_PROBABILITY = 0.10d;
+		
+		/** Probability of following an UPDATE operation with a READ operation */
+		private static final double READ_PROBABILITY = 0.10d;
+		
+		/** Time between consecutive operations */
+		private static final long TIMESTAMP_STEP = 10L;
+		
+		/** Number of effective operations between checkpoints in the CRDT being tested */
+		private static final int CHECKPOINT_INTERVAL = 4;
+		
+		/** Number of historical timestamps to assess after each delivery */
+		private static final int HISTORY_COUNT = 3;
+		
+		/** Number of replicas acknowledging operations when testing stability */
+		private static final int REPLICA_COUNT = 3;
+		
+		/** Largest number of operations delivered in a single batch */
+		private static final int BATCH_SIZE = 16;
+		
+		/** Number of full replays performed when measuring the cost of parsing JSON Patches */
+		private static final int REPLAY_COUNT = 64;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestLastWriteWins.Materialization.class);
+
+		/**
+		 * The Harness class exposes delivery of operation managers to the CRDT being tested
+		 */
+		private static class Harness extends CRDTManager {
+			/**
+			 * Instantiate a harness whose CRDT records checkpoints frequently
+			 */
+			public Harness() {
+				this.getCrdt().setCheckpointInterval(CHECKPOINT_INTERVAL);
+			}
+			
+			/**
+			 * Deliver the operation manager to the CRDT 
+			 * @param mgr The operation manager to deliver
+			 */
+			public void deliver(OperationManager mgr) {
+				this.push(mgr);
+			}
+			
+			/**
+			 * Deliver the operation managers to the CRDT as a single batch
+			 * @param mgrs The operation managers to deliver
+			 */
+			public void deliverAll(Collection<OperationManager> mgrs) {
+				this.pushAll(mgrs);
+			}
+		}
+		
+		/** Number of states to prepare for the testing suite */
+		private final long stateCount;
+
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Materialization() {
+			super();
+			this.stateCount = STATE_COUNT;
+		}
+
+		/**
+		 * Constructor to deliberately initialize each field to the associated values provided
+		 * @param stateCount The number of state transitions for the test
+		 * @param trialCount Trial count to use for the test activity
+		 * @param abbreviatedFactor Abbreviation factor to use the basis of this CreateTest instance when the abbreviated flag is set
+		 * @param stressedFactor Stressed factor to use when the the stressed flag is set
+		 * @param abbreviated Abbreviated flag which indicates when to divide different test parameters by the abbreviatedFactor
+		 * @param stressed Stressed flag which indicates when to multiply different test parameters by the stressedFactor
+		 */
+		public Materialization(long stateCount, long trialCount, long abbreviatedFactor, long stressedFactor, boolean abbreviated, boolean stressed) {
+			super(trialCount, abbreviatedFactor, stressedFactor, abbreviated, stressed);
+			this.stateCount = stateCount;
+		}
+
+		/**
+		 * Get the number of state transitions for this test suite
+		 * @return The number of state transition for this test suite
+		 */
+		public long getStateCount() {
+			return this.stateCount * this.getStressedFactor() / this.getAbbreviatedFactor();
+		}
+
+		/**
+		 * Generate the operation managers for a CREATE, a sequence of UPDATE operations and a DELETE in timestamp order.  Some of the
+		 * UPDATE operations are followed by a READ, and some are followed by their own rejection.
+		 * @return The list of operation managers in timestamp order
+		 */
+		private List<OperationManager> generateManagers() {
+			List<OperationManager> rv = new ArrayList<>();
+			Collection<AbstractDataType> objects = generateObjectSequence(this.getStateCount(), 0.1);
+			Collection<JsonNode> diffs = generateDifferenceSequence(generateJsonSequence(objects));
+			long timestamp = 0;
+
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateCreate(timestamp)));
+			
+			for (JsonNode diff : diffs) {
+				timestamp += TIMESTAMP_STEP;
+				Operation update = new Operation(diff, timestamp);
+				rv.add(new OperationManager(StatusType.APPROVED, update));
+				
+				if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+					rv.add(new OperationManager(StatusType.REJECTED, update));
+				}
+				
+				if (Support.getRandom().nextDouble() < READ_PROBABILITY) {
+					rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateRead(timestamp + 1)));
+				}
+			}
+			
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateDelete(timestamp + TIMESTAMP_STEP)));
+
+			return rv;
+		}
+		
+		/**
+		 * Perturb the delivery order of the list of operation managers by moving some of them a short distance
+		 * @param managers The list of operation managers to perturb
+		 */
+		private static void disorder(List<OperationManager> managers) {
+			for (int i = 0; i < managers.size(); ++i) {
+				if (Support.getRandom().nextDouble() < DISORDER_PROBABILITY) {
+					int j = Math.min(managers.size() - 1, i + Support.getRandom().nextInt(DISORDER_WINDOW) + 1);
+					Collections.swap(managers, i, j);
+				}
+			}
+		}
+		
+		/**
+		 * Compare the document and invalid operations the CRDT maintains with those produced by replaying every operation in a
+		 * copy of the CRDT which holds no checkpoints.  The historical documents are compared the same way.
+		 * @param crdt The CRDT to assess
+		 * @param history The historical timestamps at which to compare documents
+		 */
+		private static void assessMaterialization(LastWriteWins crdt, Collection<Long> history) {
+			LastWriteWins reference = new LastWriteWins(crdt.copyAddSet(), crdt.copyRemSet());
+			reference.setCheckpointInterval(0);
+			TrialResult replay = new TrialResult(reference);
+			
+			assertEquals(0, reference.getCheckpointCount(), "Checkpoints recorded when disabled: ");
+			assertEquals(replay.getDocument(), crdt.getDocument(), "Document mismatch: ");
+			assertEquals(replay.getInvalidOperations(), crdt.getInvalidOperations(), "Invalid operation mismatch: ");
+			
+			for (Long timestamp : history) {
+				assertEquals(reference.getDocument(timestamp), crdt.getDocument(timestamp), "Historical document mismatch: ");
+			}
+			
+			assessCounts(crdt, replay);
+		}
+		
+		/**
+		 * Assess the type counts and flags the CRDT maintains as operations arrive against a scan of its operations
+		 *
+		 * @param crdt The CRDT under test
+		 * @param replay The result of a full replay of the operations in the CRDT
+		 */
+		private static void assessCounts(LastWriteWins crdt, TrialResult replay) {
+			Collection<Operation> ops = crdt.getOpsSet();
+			Collection<Operation> effective = replay.getEffectiveOperations();
+			
+			assertEquals(count(ops, OperationType.CREATE), crdt.countCreated(), "Create count mismatch: ");
+			assertEquals(count(ops, OperationType.READ), crdt.countRead(), "Read count mismatch: ");
+			assertEquals(count(ops, OperationType.UPDATE), crdt.countUpdate(), "Update count mismatch: ");
+			assertEquals(count(ops, OperationType.DELETE), crdt.countDelete(), "Delete count mismatch: ");
+
+			assertEquals(0 < count(effective, OperationType.CREATE), crdt.isCreated(), "Created flag mismatch: ");
+			assertEquals(0 < count(effective, OperationType.READ), crdt.isRead(), "Read flag mismatch: ");
+			assertEquals(0 < count(effective, OperationType.UPDATE), crdt.isUpdated(), "Updated flag mismatch: ");
+			assertEquals(0 < count(effective, OperationType.DELETE), crdt.isDeleted(), "Deleted flag mismatch: ");
+		}
+		
+		/**
+		 * Count the operations of the given type by scanning the collection
+		 *
+		 * @param ops The operations to scan
+		 * @param type The OperationType to count
+		 * @return The number of operations of the given type
+		 */
+		private static long count(Collection<Operation> ops, OperationType type) {
+			return ops.stream().filter(op -> type == op.getType()).count();
+		}
+		
+		/**
+		 * Test the effective set the CRDT maintains as operations arrive agrees with the ADD set less the REMOVE set, computed afresh
+		 * after every delivery.  Operations arrive in any order, so some rejections arrive before the operation they reject, and some
+		 * operations and rejections arrive more than once.
+		 */
+		public void testEffectiveSet() {
+			logger.info("\n** TestLastWriteWins.Materialization.testEffectiveSet: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				List<OperationManager> deliveries = new ArrayList<>(managers);
+				Harness harness = new Harness();
+				LastWriteWins crdt = harness.getCrdt();
+				
+				for (OperationManager mgr : managers) {
+					if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+						deliveries.add(new OperationManager(StatusType.REJECTED, mgr.getOperation()));
+					}
+					
+					if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+						deliveries.add(mgr);
+					}
+				}
+				
+				Collections.shuffle(deliveries, Support.getRandom());
+				
+				for (OperationManager mgr : deliveries) {
+					harness.deliver(mgr);
+					
+					NavigableSet<Operation> expected = new TreeSet<>(crdt.copyAddSet());
+					expected.removeAll(crdt.copyRemSet());
+					
+					assertEquals(expected, crdt.getOpsSet(), "Effective set mismatch: ");
+					assertEquals(expected.size(), crdt.getOperationCount(), "Effective operation count mismatch: ");
+					assertEquals(count(expected, OperationType.UPDATE), crdt.countUpdate(), "Update count mismatch: ");
+				}
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"deliveries\":" + deliveries.size() +
+						", \"effective\":" + crdt.getOperationCount() + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Test the copies of the ADD and REMOVE sets are independent of the CRDT, while the views of them are read only and reflect
+		 * the operations which arrive afterward
+		 */
+		public void testSetAccess() {
+			logger.info("\n** TestLastWriteWins.Materialization.testSetAccess: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				List<OperationManager> early = managers.subList(0, managers.size() / 2);
+				List<OperationManager> late = managers.subList(managers.size() / 2, managers.size());
+				Harness harness = new Harness();
+				LastWriteWins crdt = harness.getCrdt();
+				
+				early.forEach(harness::deliver);
+				
+				Collection<Operation> addCopy = crdt.copyAddSet();
+				Collection<Operation> remCopy = crdt.copyRemSet();
+				NavigableSet<Operation> addView = crdt.getAddView();
+				NavigableSet<Operation> remView = crdt.getRemView();
+				long adds = crdt.getAddCount();
+				long rems = crdt.getRemCount();
+				
+				assertEquals(addCopy, addView, "ADD copy and view mismatch: ");
+				assertEquals(remCopy, remView, "REMOVE copy and view mismatch: ");
+				assertThrows(UnsupportedOperationException.class, () -> addView.add(managers.get(0).getOperation()), "ADD view changed: ");
+				assertThrows(UnsupportedOperationException.class, () -> remView.clear(), "REMOVE view changed: ");
+				
+				addCopy.clear();
+				remCopy.add(managers.get(0).getOperation());
+				
+				assertEquals(adds, crdt.getAddCount(), "ADD set changed through its copy: ");
+				assertEquals(rems, crdt.getRemCount(), "REMOVE set changed through its copy: ");
+				
+				late.forEach(harness::deliver);
+				
+				assertTrue(addCopy.isEmpty(), "ADD copy changed by later operations: ");
+				assertEquals(crdt.copyAddSet(), addView, "ADD view does not reflect later operations: ");
+				assertEquals(crdt.copyRemSet(), remView, "REMOVE view does not reflect later operations: ");
+				assertTrue(adds < addView.size(), "ADD view does not reflect later operations: ");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Test the documents the CRDT maintains as operations arrive, using incremental updates and checkpoints, agree with those of
+		 * a full replay
+		 */
+		public void testIncremental() {
+			logger.info("\n** TestLastWriteWins.Materialization.testIncremental: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ".");
+				
+				List<OperationManager> managers = this.generateManagers();
+				disorder(managers);
+				
+				Harness harness = new Harness();
+				Collection<Long> history = new ArrayList<>();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				
+				for (int i = 0; i < HISTORY_COUNT; ++i) {
+					history.add((long) (Support.getRandom().nextDouble() * latest));
+				}
+				
+				for (OperationManager mgr : managers) {
+					harness.deliver(mgr);
+					assessMaterialization(harness.getCrdt(), history);
+				}
+				
+				assertTrue(new TreeSet<>(history).size() < harness.getCrdt().getVersionCount(), "Historical versions not retained: ");
+				
+				assertTrue(0 < harness.getCrdt().getCheckpointCount(), "No checkpoints recorded: ");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Test delivering operations in batches yields the same CRDT as delivering them one at a time, with a document read after each
+		 * batch, and report the time taken each way
+		 */
+		public void testBatch() {
+			logger.info("\n** TestLastWriteWins.Materialization.testBatch: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				List<List<OperationManager>> batches = new ArrayList<>();
+				Collection<Long> history = new ArrayList<>();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				Harness batched = new Harness();
+				Harness single = new Harness();
+				
+				disorder(managers);
+				
+				for (int i = 0; i < managers.size(); ) {
+					int size = Math.min(managers.size() - i, 1 + Support.getRandom().nextInt(BATCH_SIZE));
+					batches.add(managers.subList(i, i + size));
+					i += size;
+				}
+				
+				for (int i = 0; i < HISTORY_COUNT; ++i) {
+					history.add((long) (Support.getRandom().nextDouble() * latest));
+				}
+				
+				long start = System.nanoTime();
+				for (List<OperationManager> batch : batches) {
+					for (OperationManager mgr : batch) {
+						single.deliver(mgr);
+					}
+					single.getCrdt().getDocument();
+				}
+				long singleTime = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				for (List<OperationManager> batch : batches) {
+					batched.deliverAll(batch);
+					batched.getCrdt().getDocument();
+				}
+				long batchedTime = System.nanoTime() - start;
+				
+				Harness checked = new Harness();
+				for (List<OperationManager> batch : batches) {
+					checked.deliverAll(batch);
+					assessMaterialization(checked.getCrdt(), history);
+				}
+				
+				assertEquals(single.getCrdt().copyAddSet(), batched.getCrdt().copyAddSet(), "Batched ADD set mismatch: ");
+				assertEquals(single.getCrdt().copyRemSet(), batched.getCrdt().copyRemSet(), "Batched REMOVE set mismatch: ");
+				assessMaterialization(batched.getCrdt(), history);
+				assertEquals(single.getCrdt().getDocument(), batched.getCrdt().getDocument(), "Batched document mismatch: ");
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":" + managers.size() + ", \"batches\":" + batches.size() +
+						", \"singleMicros\":" + (singleTime / 1000) + ", \"batchedMicros\":" + (batchedTime / 1000) + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Compare a compacted CRDT against one holding every operation, at and after the watermark 
+		 * @param expected The CRDT holding every operation
+		 * @param actual The compacted CRDT
+		 * @param history The historical timestamps at which to compare documents, all at or after the watermark
+		 */
+		private static void assessCompaction(LastWriteWins expected, LastWriteWins actual, Collection<Long> history) {
+			long watermark = actual.getBaseline().getWatermark();
+			
+			assertEquals(expected.getDocument(), actual.getDocument(), "Compacted document mismatch: ");
+			
+			for (Long timestamp : history) {
+				assertEquals(expected.getDocument(timestamp), actual.getDocument(timestamp), "Compacted historical document mismatch: ");
+			}
+			
+			assertEquals(expected.getInvalidOperations().stream().filter(op -> op.getTimestamp() > watermark).collect(Collectors.toList()),
+					new ArrayList<>(actual.getInvalidOperations()), "Compacted invalid operation mismatch: ");
+			
+			assertEquals(expected.countCreated(), actual.countCreated(), "Compacted create count mismatch: ");
+			assertEquals(expected.countRead(), actual.countRead(), "Compacted read count mismatch: ");
+			assertEquals(expected.countUpdate(), actual.countUpdate(), "Compacted update count mismatch: ");
+			assertEquals(expected.countDelete(), actual.countDelete(), "Compacted delete count mismatch: ");
+			
+			assertEquals(expected.isCreated(), actual.isCreated(), "Compacted created flag mismatch: ");
+			assertEquals(expected.isRead(), actual.isRead(), "Compacted read flag mismatch: ");
+			assertEquals(expected.isUpdated(), actual.isUpdated(), "Compacted updated flag mismatch: ");
+			assertEquals(expected.isDeleted(), actual.isDeleted(), "Compacted deleted flag mismatch: ");
+		}
+		
+		/**
+		 * Compare a decoded copy of a compacted CRDT against the original.  Decoding may change the numeric node types of the documents,
+		 * so they are compared in their text form.
+		 * @param expected The compacted CRDT
+		 * @param actual The decoded copy of the compacted CRDT
+		 * @param history The historical timestamps at which to compare documents, all at or after the watermark
+		 */
+		private static void assessDecoding(LastWriteWins expected, LastWriteWins actual, Collection<Long> history) {
+			assertEquals(expected.getBaseline().getWatermark(), actual.getBaseline().getWatermark(), "Decoded watermark mismatch: ");
+			assertEquals(expected.copyAddSet(), actual.copyAddSet(), "Decoded ADD set mismatch: ");
+			assertEquals(expected.copyRemSet(), actual.copyRemSet(), "Decoded REMOVE set mismatch: ");
+			assertEquals(String.valueOf(expected.getDocument()), String.valueOf(actual.getDocument()), "Decoded document mismatch: ");
+			
+			for (Long timestamp : history) {
+				assertEquals(String.valueOf(expected.getDocument(timestamp)), String.valueOf(actual.getDocument(timestamp)), "Decoded historical document mismatch: ");
+			}
+			
+			assertEquals(expected.countCreated(), actual.countCreated(), "Decoded create count mismatch: ");
+			assertEquals(expected.countUpdate(), actual.countUpdate(), "Decoded update count mismatch: ");
+			assertEquals(expected.countDelete(), actual.countDelete(), "Decoded delete count mismatch: ");
+			assertEquals(expected.isCreated(), actual.isCreated(), "Decoded created flag mismatch: ");
+			assertEquals(expected.isDeleted(), actual.isDeleted(), "Decoded deleted flag mismatch: ");
+		}
+		
+		/**
+		 * Test compacting the operations at or before a watermark into a baseline leaves the documents at and after the watermark
+		 * unchanged, both immediately and as later operations arrive, and that the baseline survives JSON and binary encoding
+		 * @throws IOException results when the CRDT cannot be encoded or decoded, which fails the test
+		 */
+		public void testCompaction() throws IOException {
+			logger.info("\n** TestLastWriteWins.Materialization.testCompaction: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				long watermark = latest / 2;
+				List<OperationManager> early = new ArrayList<>();
+				List<OperationManager> late = new ArrayList<>();
+				Collection<Long> history = new ArrayList<>();
+				Harness compacted = new Harness();
+				Harness expected = new Harness();
+				
+				disorder(managers);
+				
+				for (OperationManager mgr : managers) {
+					(mgr.getOperation().getTimestamp() <= watermark || Support.getRandom().nextBoolean() ? early : late).add(mgr);
+				}
+				
+				for (int i = 0; i < HISTORY_COUNT; ++i) {
+					history.add(watermark + (long) (Support.getRandom().nextDouble() * (latest - watermark)));
+				}
+				
+				for (OperationManager mgr : early) {
+					compacted.deliver(mgr);
+					expected.deliver(mgr);
+				}
+				
+				long before = compacted.getCrdt().getAddCount() + compacted.getCrdt().getRemCount();
+				long dropped = compacted.compact(watermark);
+				
+				assertTrue(0 < dropped, "No operations compacted: ");
+				assertEquals(before - dropped, compacted.getCrdt().getAddCount() + compacted.getCrdt().getRemCount(), "Compacted operation count mismatch: ");
+				assertTrue(compacted.getCrdt().copyAddSet().stream().allMatch(op -> op.getTimestamp() > watermark), "Operation retained at or before the watermark: ");
+				assessCompaction(expected.getCrdt(), compacted.getCrdt(), history);
+				
+				compacted.deliver(new OperationManager(StatusType.REJECTED, managers.get(0).getOperation()));
+				assertEquals(before - dropped, compacted.getCrdt().getAddCount() + compacted.getCrdt().getRemCount(), "Operation accepted at or before the watermark: ");
+				
+				for (OperationManager mgr : late) {
+					compacted.deliver(mgr);
+					expected.deliver(mgr);
+					assessCompaction(expected.getCrdt(), compacted.getCrdt(), history);
+				}
+				
+				LastWriteWins json = getMapper().readValue(getMapper().writeValueAsString(compacted.getCrdt()), LastWriteWins.class);
+				LastWriteWins binary = BinaryCodec.decodeLastWriteWins(BinaryCodec.encode(compacted.getCrdt()));
+				
+				assessDecoding(compacted.getCrdt(), json, history);
+				assessDecoding(compacted.getCrdt(), binary, history);
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"watermark\":" + watermark + ", \"dropped\":" + dropped +
+						", \"retained\":" + (before - dropped) + ", \"late\":" + late.size() + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+
+		/**
+		 * Test the stable timestamp advances only once every replica acknowledges, and that each advance compacts the CRDT when auto
+		 * compaction is enabled and leaves it untouched otherwise
+		 */
+		public void testStability() {
+			logger.info("\n** TestLastWriteWins.Materialization.testStability: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				List<UUID> replicas = new ArrayList<>();
+				Harness compacted = new Harness();
+				Harness retained = new Harness();
+				long dropped = 0;
+				long stable = StabilityTracker.UNACKNOWLEDGED;
+
+				assertTrue(!retained.isAutoCompaction(), "Auto compaction enabled by default: ");
+				compacted.setAutoCompaction(true);
+
+				for (int i = 0; i < REPLICA_COUNT; ++i) {
+					replicas.add(UUID.randomUUID());
+					compacted.getStability().addReplica(replicas.get(i));
+					retained.getStability().addReplica(replicas.get(i));
+				}
+
+				for (OperationManager mgr : managers) {
+					compacted.deliver(mgr);
+					retained.deliver(mgr);
+
+					long timestamp = mgr.getOperation().getTimestamp();
+
+					for (UUID replica : replicas) {
+						assertEquals(stable, compacted.getStableTimestamp(), "Stable timestamp advanced early: ");
+						dropped += compacted.acknowledge(replica, timestamp - 1);
+						assertEquals(0L, retained.acknowledge(replica, timestamp - 1), "Operations compacted when disabled: ");
+					}
+
+					stable = timestamp - 1;
+					assertEquals(stable, compacted.getStableTimestamp(), "Stable timestamp mismatch: ");
+					assertEquals(stable, retained.getStableTimestamp(), "Stable timestamp mismatch: ");
+					assertEquals(retained.getCrdt().getDocument(), compacted.getCrdt().getDocument(), "Compacted document mismatch: ");
+				}
+
+				assertTrue(0 < dropped, "No operations compacted: ");
+				assertEquals(managers.size(), retained.getCrdt().getAddCount() + retained.getCrdt().getRemCount(), "Operations dropped when disabled: ");
+
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":" + managers.size() + ", \"dropped\":" + dropped + "}");
+			}
+
+			logger.info("   SUCCESS");
+		}
+
+		/**
+		 * Test merging the states of replicas which each hold part of the operations yields the state of a replica holding all of them,
+		 * regardless of the order of merging, that merging again changes nothing, and that an empty replica bootstraps from the decoded
+		 * state of a peer, including one which has been compacted
+		 * @throws IOException results when the CRDT cannot be encoded or decoded, which fails the test
+		 */
+		public void testMerge() throws IOException {
+			logger.info("\n** TestLastWriteWins.Materialization.testMerge: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				long watermark = latest / 2;
+				Collection<Long> history = new ArrayList<>();
+				Collection<Long> recent = new ArrayList<>();
+				Harness full = new Harness();
+				Harness left = new Harness();
+				Harness right = new Harness();
+				
+				disorder(managers);
+				
+				for (int i = 0; i < HISTORY_COUNT; ++i) {
+					history.add((long) (Support.getRandom().nextDouble() * latest));
+					recent.add(watermark + (long) (Support.getRandom().nextDouble() * (latest - watermark)));
+				}
+				
+				for (OperationManager mgr : managers) {
+					int target = Support.getRandom().nextInt(3);
+					full.deliver(mgr);
+					
+					if (0 != target) {
+						left.deliver(mgr);
+					}
+					
+					if (1 != target) {
+						right.deliver(mgr);
+					}
+				}
+				
+				left.getCrdt().getDocument();
+				history.forEach(left.getCrdt()::getDocument);
+				LastWriteWins original = new LastWriteWins(left.getCrdt());
+				
+				long inserted = left.merge(right.getCrdt());
+				assertEquals(full.getCrdt().getAddCount() + full.getCrdt().getRemCount() - original.getAddCount() - original.getRemCount(), inserted, "Merged operation count mismatch: ");
+				assertEquals(0L, left.merge(right.getCrdt()), "Operations inserted by repeated merge: ");
+				right.merge(original);
+				
+				for (Harness merged : Arrays.asList(left, right)) {
+					assertEquals(full.getCrdt().copyAddSet(), merged.getCrdt().copyAddSet(), "Merged ADD set mismatch: ");
+					assertEquals(full.getCrdt().copyRemSet(), merged.getCrdt().copyRemSet(), "Merged REMOVE set mismatch: ");
+					assertEquals(full.getCrdt().getDocument(), merged.getCrdt().getDocument(), "Merged document mismatch: ");
+					assessMaterialization(merged.getCrdt(), history);
+				}
+				
+				Harness bootstrap = new Harness();
+				LastWriteWins peer = getMapper().readValue(getMapper().writeValueAsString(full.getCrdt()), LastWriteWins.class);
+				
+				assertEquals(peer.getAddCount() + peer.getRemCount(), bootstrap.merge(peer), "Bootstrapped operation count mismatch: ");
+				assertEquals(full.getCrdt().copyAddSet(), bootstrap.getCrdt().copyAddSet(), "Bootstrapped ADD set mismatch: ");
+				assertEquals(String.valueOf(full.getCrdt().getDocument()), String.valueOf(bootstrap.getCrdt().getDocument()), "Bootstrapped document mismatch: ");
+				
+				LastWriteWins compacted = new LastWriteWins(full.getCrdt());
+				compacted.compact(watermark);
+				
+				Harness partial = new Harness();
+				original.copyAddSet().stream().map(op -> new OperationManager(StatusType.APPROVED, op)).forEach(partial::deliver);
+				original.copyRemSet().stream().map(op -> new OperationManager(StatusType.REJECTED, op)).forEach(partial::deliver);
+				partial.merge(BinaryCodec.decodeLastWriteWins(BinaryCodec.encode(compacted)));
+				
+				assertEquals(watermark, partial.getCrdt().getBaseline().getWatermark(), "Merged watermark mismatch: ");
+				assertEquals(compacted.copyAddSet(), partial.getCrdt().copyAddSet(), "Merged compacted ADD set mismatch: ");
+				assessCompaction(full.getCrdt(), partial.getCrdt(), recent);
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":" + managers.size() + ", \"left\":" + original.getAddCount() +
+						", \"right\":" + right.getCrdt().getAddCount() + ", \"inserted\":" + inserted + "}");
+			}
+
+			logger.info("   SUCCESS");
+		}
+
+		/**
+		 * Test synchronizing replicas by exchanging deltas yields the state of a replica holding every operation, that a delta holds
+		 * nothing once its receiver is up to date, that deltas survive JSON encoding, and that a delta carries the baseline of a
+		 * compacted replica to a peer which lacks it
+		 * @throws IOException results when a delta cannot be encoded or decoded, which fails the test
+		 */
+		public void testDelta() throws IOException {
+			logger.info("\n** TestLastWriteWins.Materialization.testDelta: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				long watermark = latest / 2;
+				Collection<Long> history = new ArrayList<>();
+				Collection<Long> recent = new ArrayList<>();
+				List<Harness> replicas = new ArrayList<>();
+				Harness full = new Harness();
+				long deltaTraffic = 0;
+				long stateTraffic = 0;
+				
+				disorder(managers);
+				
+				for (int i = 0; i < HISTORY_COUNT; ++i) {
+					history.add((long) (Support.getRandom().nextDouble() * latest));
+					recent.add(watermark + (long) (Support.getRandom().nextDouble() * (latest - watermark)));
+				}
+				
+				for (int i = 0; i < REPLICA_COUNT; ++i) {
+					replicas.add(new Harness());
+				}
+				
+				for (int i = 0; i < managers.size(); i += BATCH_SIZE) {
+					for (OperationManager mgr : managers.subList(i, Math.min(managers.size(), i + BATCH_SIZE))) {
+						full.deliver(mgr);
+						replicas.get(Support.getRandom().nextInt(REPLICA_COUNT)).deliver(mgr);
+					}
+					
+					for (Harness source : replicas) {
+						for (Harness target : replicas) {
+							if (source != target) {
+								Delta delta = getMapper().readValue(getMapper().writeValueAsString(source.getDelta(target.getCrdt().getSummary())), Delta.class);
+								
+								deltaTraffic += delta.size();
+								stateTraffic += source.getCrdt().getAddCount() + source.getCrdt().getRemCount();
+								target.applyDelta(delta);
+								
+								assertEquals(0, source.getDelta(target.getCrdt().getSummary()).size(), "Delta not empty once applied: ");
+							}
+						}
+					}
+				}
+				
+				for (Harness replica : replicas) {
+					assertEquals(full.getCrdt().copyAddSet(), replica.getCrdt().copyAddSet(), "Synchronized ADD set mismatch: ");
+					assertEquals(full.getCrdt().copyRemSet(), replica.getCrdt().copyRemSet(), "Synchronized REMOVE set mismatch: ");
+					assertEquals(String.valueOf(full.getCrdt().getDocument()), String.valueOf(replica.getCrdt().getDocument()), "Synchronized document mismatch: ");
+					assessMaterialization(replica.getCrdt(), history);
+				}
+				
+				assertTrue(deltaTraffic < stateTraffic, "Deltas no smaller than the full state: ");
+				
+				Harness source = replicas.get(0);
+				Harness bootstrap = new Harness();
+				source.compact(watermark);
+				
+				Delta delta = source.getDelta(bootstrap.getCrdt().getSummary());
+				assertEquals(watermark, delta.getBaseline().getWatermark(), "Delta baseline mismatch: ");
+				
+				bootstrap.applyDelta(delta);
+				assessDecoding(source.getCrdt(), bootstrap.getCrdt(), recent);
+				assertEquals(0, source.getDelta(bootstrap.getCrdt().getSummary()).size(), "Delta not empty once applied: ");
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":" + managers.size() + ", \"deltaTraffic\":" + deltaTraffic +
+						", \"stateTraffic\":" + stateTraffic + "}");
+			}
+
+			logger.info("   SUCCESS");
+		}
+
+		/**
+		 * Build a digest of the ADD and REMOVE sets of a CRDT with the given bucket span
+		 * @param crdt The CRDT to digest
+		 * @param bucketSpan The span of time covered by each bucket
+		 * @return The digest of the CRDT
+		 */
+		private static MerkleDigest digest(LastWriteWins crdt, long bucketSpan) {
+			MerkleDigest rv = new MerkleDigest(bucketSpan);
+			crdt.copyAddSet().forEach(op -> rv.add(op, false));
+			crdt.copyRemSet().forEach(op -> rv.add(op, true));
+			return rv;
+		}
+		
+		/**
+		 * Collect the buckets holding operations which are in the ADD or REMOVE set of exactly one of the given CRDTs
+		 * @param left The first CRDT to compare
+		 * @param right The second CRDT to compare
+		 * @param digest A digest whose bucket span determines the buckets
+		 * @return The indices of the buckets holding the operations
+		 */
+		private static NavigableSet<Long> difference(LastWriteWins left, LastWriteWins right, MerkleDigest digest) {
+			NavigableSet<Long> rv = new TreeSet<>();
+			
+			left.copyAddSet().stream().filter(op -> !right.copyAddSet().contains(op)).forEach(op -> rv.add(digest.getBucket(op.getTimestamp())));
+			right.copyAddSet().stream().filter(op -> !left.copyAddSet().contains(op)).forEach(op -> rv.add(digest.getBucket(op.getTimestamp())));
+			left.copyRemSet().stream().filter(op -> !right.copyRemSet().contains(op)).forEach(op -> rv.add(digest.getBucket(op.getTimestamp())));
+			right.copyRemSet().stream().filter(op -> !left.copyRemSet().contains(op)).forEach(op -> rv.add(digest.getBucket(op.getTimestamp())));
+			
+			return rv;
+		}
+		
+		/**
+		 * Test the digest a CRDT maintains as operations arrive and are compacted matches one built from its operations, that replicas
+		 * holding the same operations have the same root hash, and that descending from the root locates exactly the buckets in which
+		 * replicas differ
+		 */
+		public void testDigest() {
+			logger.info("\n** TestLastWriteWins.Materialization.testDigest: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				long bucketSpan = 2 * TIMESTAMP_STEP;
+				Harness full = new Harness();
+				Harness left = new Harness();
+				Harness right = new Harness();
+				
+				disorder(managers);
+				left.getCrdt().getDigest();
+				
+				for (OperationManager mgr : managers) {
+					int target = Support.getRandom().nextInt(8);
+					full.deliver(mgr);
+					
+					if (0 != target) {
+						left.deliver(mgr);
+					}
+					
+					if (1 != target) {
+						right.deliver(mgr);
+					}
+				}
+				
+				assertEquals(digest(left.getCrdt(), MerkleDigest.DEFAULT_BUCKET_SPAN).getRoot(), left.getCrdt().getDigest().getRoot(), "Maintained digest mismatch: ");
+				assertEquals(left.getCrdt().getAddCount() + left.getCrdt().getRemCount(), left.getCrdt().getDigest().getSize(), "Digest size mismatch: ");
+				
+				MerkleDigest leftDigest = digest(left.getCrdt(), bucketSpan);
+				MerkleDigest rightDigest = digest(right.getCrdt(), bucketSpan);
+				NavigableSet<Long> expected = difference(left.getCrdt(), right.getCrdt(), leftDigest);
+				NavigableSet<Long> diverged = leftDigest.diverge(rightDigest);
+				
+				assertEquals(expected, diverged, "Divergent bucket mismatch: ");
+				assertEquals(diverged, rightDigest.diverge(leftDigest), "Divergence not symmetric: ");
+				assertEquals(expected.isEmpty(), leftDigest.getRoot() == rightDigest.getRoot(), "Root hash mismatch: ");
+				
+				left.merge(right.getCrdt());
+				right.merge(left.getCrdt());
+				
+				assertEquals(full.getCrdt().getDigest().getRoot(), left.getCrdt().getDigest().getRoot(), "Merged root hash mismatch: ");
+				assertEquals(full.getCrdt().getDigest().getRoot(), right.getCrdt().getDigest().getRoot(), "Merged root hash mismatch: ");
+				assertTrue(digest(left.getCrdt(), bucketSpan).diverge(digest(right.getCrdt(), bucketSpan)).isEmpty(), "Merged replicas diverge: ");
+				
+				left.compact(latest / 2);
+				right.compact(latest / 2);
+				
+				assertEquals(left.getCrdt().getDigest().getRoot(), right.getCrdt().getDigest().getRoot(), "Compacted root hash mismatch: ");
+				assertEquals(digest(left.getCrdt(), MerkleDigest.DEFAULT_BUCKET_SPAN).getRoot(), left.getCrdt().getDigest().getRoot(), "Compacted digest mismatch: ");
+				assertEquals(left.getCrdt().getAddCount() + left.getCrdt().getRemCount(), left.getCrdt().getDigest().getSize(), "Compacted digest size mismatch: ");
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"operations\":" + managers.size() + ", \"buckets\":" + (latest / bucketSpan + 1) +
+						", \"diverged\":" + diverged.size() + "}");
+			}
+
+			logger.info("   SUCCESS");
+		}
+
+		/**
+		 * Test the root hash of a fixed set of operations against a value pinned in the test, so a digest whose hash depends on
+		 * anything other than the operations themselves, such as identity hashes which vary between JVMs, is detected
+		 * @throws IOException The patches could not be parsed
+		 */
+		public void testDigestRoot() throws IOException {
+			logger.info("\n** TestLastWriteWins.Materialization.testDigestRoot");
+			
+			MerkleDigest digest = new MerkleDigest(MerkleDigest.DEFAULT_BUCKET_SPAN);
+			
+			digest.add(new Operation(new UUID(1L, 1L), OperationType.CREATE, null, 0L), false);
+			digest.add(new Operation(new UUID(1L, 2L), OperationType.UPDATE, getMapper().readTree("[{\"op\":\"add\",\"path\":\"/name\",\"value\":\"alpha\"}]"), 1L), false);
+			digest.add(new Operation(new UUID(1L, 3L), OperationType.UPDATE, getMapper().readTree("[{\"op\":\"replace\",\"path\":\"/name\",\"value\":2}]"), 2L), false);
+			digest.add(new Operation(new UUID(1L, 3L), OperationType.UPDATE, getMapper().readTree("[{\"op\":\"replace\",\"path\":\"/name\",\"value\":2}]"), 2L), true);
+			digest.add(new Operation(new UUID(1L, 4L), OperationType.DELETE, null, 3L), false);
+			
+			logger.info("   root: " + digest.getRoot());
+			assertEquals(-2109010356057428184L, digest.getRoot(), "Pinned root hash mismatch: ");
+
+			logger.info("   SUCCESS");
+		}
+
+		/**
+		 * Apply the operation both with a ReplayEngine and with Operation.processOperation, and compare the outcomes
+		 * @param engine The ReplayEngine to apply the operation to
+		 * @param document The document to which processOperation applies the operation
+		 * @param op The operation to apply
+		 * @return The document processOperation produces, or the given document if the operation is invalid
+		 */
+		private static JsonNode assessStep(ReplayEngine engine, JsonNode document, Operation op) {
+			JsonNode expected = document;
+			boolean valid = true;
+			boolean engineValid = true;
+			
+			try {
+				expected = op.processOperation(document);
+			} catch (JsonPatchException | IOException e) {
+				valid = false;
+			}
+			
+			try {
+				engine.apply(op);
+			} catch (JsonPatchException | IOException e) {
+				engineValid = false;
+			}
+			
+			assertEquals(valid, engineValid, "Validity mismatch: " + op);
+			assertEquals(String.valueOf(expected), String.valueOf(engine.getDocument()), "Replay engine document mismatch: " + op);
+			
+			return expected;
+		}
+		
+		/**
+		 * Apply patches exercising each RFC 6902 operation, including patches which fail part way through, and compare the outcomes of
+		 * the ReplayEngine with those of Operation.processOperation
+		 */
+		private static void assessPatchOperations() {
+			String[] patches = {
+				"[{\"op\":\"add\",\"path\":\"/a\",\"value\":{\"b\":[1,2,3],\"c\":\"x\"}}]",
+				"[{\"op\":\"add\",\"path\":\"/a/b/1\",\"value\":9},{\"op\":\"add\",\"path\":\"/a/b/-\",\"value\":4}]",
+				"[{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/d\"},{\"op\":\"move\",\"from\":\"/a/c\",\"path\":\"/e\"}]",
+				"[{\"op\":\"test\",\"path\":\"/a/b/0\",\"value\":1.0},{\"op\":\"replace\",\"path\":\"/a/b/0\",\"value\":7}]",
+				"[{\"op\":\"remove\",\"path\":\"/d\"},{\"op\":\"replace\",\"path\":\"/e\",\"value\":[]},{\"op\":\"test\",\"path\":\"/e\",\"value\":0}]",
+				"[{\"op\":\"remove\",\"path\":\"/a/b/0\"},{\"op\":\"add\",\"path\":\"/a/b/9\",\"value\":0}]",
+				"[{\"op\":\"move\",\"from\":\"/a\",\"path\":\"/a/f\"}]",
+				"[{\"op\":\"add\",\"path\":\"/e/0\",\"value\":1},{\"op\":\"remove\",\"path\":\"/e\"},{\"op\":\"add\",\"path\":\"/e/x/y\",\"value\":1}]",
+				"[{\"op\":\"copy\",\"from\":\"/z\",\"path\":\"/y\"}]",
+				"[{\"op\":\"remove\",\"path\":\"/e\"},{\"op\":\"add\",\"path\":\"/e\",\"value\":\"x\"},{\"op\":\"move\",\"from\":\"/a/b\",\"path\":\"/b\"}]"
+			};
+			
+			ReplayEngine engine = new ReplayEngine();
+			JsonNode document = assessStep(engine, null, CRDTManager.generateCreate(0L));
+			long timestamp = 0L;
+			
+			for (String patch : patches) {
+				try {
+					document = assessStep(engine, document, new Operation(getMapper().readTree(patch), ++timestamp));
+				} catch (IOException e) {
+					assertTrue(false, "Invalid test patch: " + patch);
+				}
+			}
+			
+			assertEquals("{\"a\":{},\"d\":{\"b\":[1,9,2,3,4],\"c\":\"x\"},\"e\":\"x\",\"b\":[7,9,2,3,4]}", engine.getDocument().toString(), "Unexpected final document: ");
+		}
+		
+		/**
+		 * Compare the outcomes of applying operations with a ReplayEngine against those of Operation.processOperation, for patches
+		 * exercising each RFC 6902 operation and for generated operations delivered out of order so that many fail
+		 */
+		public void testReplayEngine() {
+			logger.info("\n** TestLastWriteWins.Materialization.testReplayEngine: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			assessPatchOperations();
+			
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				Collections.shuffle(managers.subList(1, managers.size()), Support.getRandom());
+
+				ReplayEngine engine = new ReplayEngine();
+				JsonNode document = null;
+				
+				for (OperationManager mgr : managers) {
+					document = assessStep(engine, document, mgr.getOperation());
+				}
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Test a document handed out by the CRDT shares nothing with the checkpoints or the Baseline it retains.  Each document read is
+		 * corrupted by the caller, and reading earlier documents afterward, which start from the checkpoints and the Baseline, must still
+		 * agree with a full replay.
+		 * @throws IOException results when an operation cannot be encoded, which fails the test
+		 */
+		public void testDocumentIsolation() throws IOException {
+			logger.info("\n** TestLastWriteWins.Materialization.testDocumentIsolation: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<OperationManager> managers = this.generateManagers();
+				long latest = managers.stream().mapToLong(mgr -> mgr.getOperation().getTimestamp()).max().orElse(0L);
+				List<Long> history = new ArrayList<>();
+				Harness isolated = new Harness();
+				Harness expected = new Harness();
+				LastWriteWins crdt = isolated.getCrdt();
+				LastWriteWins reference = expected.getCrdt();
+				
+				crdt.setVersionCapacity(0);
+				reference.setCheckpointInterval(0);
+				reference.setVersionCapacity(0);
+				
+				for (OperationManager mgr : managers) {
+					isolated.deliver(mgr);
+					expected.deliver(mgr);
+				}
+				
+				for (int i = 0; i < HISTORY_COUNT; ++i) {
+					history.add((long) (Support.getRandom().nextDouble() * latest));
+				}
+				
+				Collections.sort(history, Collections.reverseOrder());
+				corrupt(crdt.getDocument(latest - 1));
+				
+				for (Long timestamp : history) {
+					assertEquals(reference.getDocument(timestamp), crdt.getDocument(timestamp), "Historical document changed through a copy: ");
+					corrupt(crdt.getDocument(timestamp));
+				}
+				
+				assertTrue(0 < crdt.getCheckpointCount(), "No checkpoints recorded: ");
+				
+				long watermark = history.get(history.size() / 2);
+				isolated.compact(watermark);
+				expected.compact(watermark);
+				corrupt(crdt.getDocument(watermark));
+				corrupt(crdt.getBaseline().getDocument());
+				
+				for (Long timestamp : history) {
+					if (timestamp >= watermark) {
+						assertEquals(reference.getDocument(timestamp), crdt.getDocument(timestamp), "Compacted document changed through a copy: ");
+						corrupt(crdt.getDocument(timestamp));
+					}
+				}
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"watermark\":" + watermark + ", \"checkpoints\":" + crdt.getCheckpointCount() + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+		
+		/**
+		 * Change a document handed out by the CRDT, as a careless caller might
+		 * @param document The document to change
+		 */
+		private static void corrupt(JsonNode document) {
+			if (document instanceof ObjectNode) {
+				((ObjectNode) document).removeAll().put("corrupted", true);
+			}
+		}
+		
+		/**
+		 * Replay the effective operations of the CRDT, parsing the JSON Patch of each UPDATE operation every time it is applied as
+		 * was done before Operation retained its parsed patch
+		 * @param crdt The CRDT whose operations to replay
+		 * @param parses The count of JSON Patch parses, incremented for each one the replay performs
+		 * @return The document resulting from the replay
+		 */
+		private static JsonNode replayUncached(LastWriteWins crdt, AtomicLong parses) {
+			JsonNode document = null;
+			
+			for (Operation op : crdt.getOpsSet()) {
+				try {
+					if (OperationType.UPDATE != op.getType()) {
+						document = op.processOperation(document);
+					} else if (null != document) {
+						parses.incrementAndGet();
+						document = JsonPatch.fromJson(op.getOp()).apply(document);
+					}
+				} catch (JsonPatchException | IOException e) {
+					// Invalid operations leave the document unchanged, as they do in a TrialResult
+				}
+			}
+			
+			return document;
+		}
+		
+		/**
+		 * Rebuild each operation from its fields alone, so the copy has yet to parse its JSON Patch
+		 * @param ops The operations to rebuild
+		 * @return The rebuilt operations
+		 */
+		private static List<Operation> rebuild(Collection<Operation> ops) {
+			return ops.stream().
+					map(op -> new Operation(op.getId(), op.getType(), op.getOp(), op.getTimestamp())).
+					collect(Collectors.toList());
+		}
+		
+		/**
+		 * Measure repeated full replays of a CRDT with and without parsing the JSON Patch of each UPDATE operation on every
+		 * application.  The operations are rebuilt so none has parsed its patch beforehand, and the parses each way are counted, so
+		 * the replays which retain the parsed patches must parse each effective UPDATE operation exactly once.
+		 */
+		public void testReplayParsing() {
+			logger.info("\n** TestLastWriteWins.Materialization.testReplayParsing: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ ", \"replayCount\":" + REPLAY_COUNT + "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				Harness harness = new Harness();
+				
+				for (OperationManager mgr : this.generateManagers()) {
+					harness.deliver(mgr);
+				}
+
+				LastWriteWins crdt = new LastWriteWins(rebuild(harness.getCrdt().copyAddSet()), rebuild(harness.getCrdt().copyRemSet()));
+				crdt.setCheckpointInterval(0);
+				crdt.setVersionCapacity(0);
+
+				long updates = crdt.getOpsSet().stream().filter(op -> OperationType.UPDATE == op.getType()).count();
+				AtomicLong uncachedParses = new AtomicLong();
+				JsonNode cached = null;
+				JsonNode uncached = null;
+				
+				long parsed = Operation.getParseCount();
+				long start = System.nanoTime();
+				for (int i = 0; i < REPLAY_COUNT; ++i) {
+					cached = new TrialResult(crdt).getDocument();
+				}
+				long cachedTime = System.nanoTime() - start;
+				long cachedParses = Operation.getParseCount() - parsed;
+				
+				start = System.nanoTime();
+				for (int i = 0; i < REPLAY_COUNT; ++i) {
+					uncached = replayUncached(crdt, uncachedParses);
+				}
+				long uncachedTime = System.nanoTime() - start;
+				
+				assertEquals(uncached, cached, "Replay document mismatch: ");
+				assertEquals(updates, cachedParses, "Retained patches parsed more than once: ");
+
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"updates\":" + updates +
+						", \"uncachedParses\":" + uncachedParses.get() + ", \"cachedParses\":" + cachedParses +
+						", \"parsesSaved\":" + (uncachedParses.get() - cachedParses) +
+						", \"uncachedMillis\":" + (uncachedTime / 1000000) + ", \"cachedMillis\":" + (cachedTime / 1000000) + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test the incremental materialization of the CRDT document 
+	 */
+	@Test
+	public void testIncrementalMaterialization() {
+		Materialization test = new Materialization();
+		test.testIncremental();
+	}
+	
+	/**
+	 * Test delivering operations to the CRDT in batches
+	 */
+	@Test
+	public void testBatch() {
+		Materialization test = new Materialization();
+		test.testBatch();
+	}
+	
+	/**
+	 * Test compaction of the CRDT history into a baseline document
+	 * @throws IOException results when the CRDT cannot be encoded or decoded, which fails the test
+	 */
+	@Test
+	public void testCompaction() throws IOException {
+		Materialization test = new Materialization();
+		test.testCompaction();
+	}
+	
+	/**
+	 * Test causal stability tracking and the automatic compaction it drives
+	 */
+	@Test
+	public void testStability() {
+		Materialization test = new Materialization();
+		test.testStability();
+	}
+	
+	/**
+	 * Test merging the states of replicas, including bootstrapping an empty replica from a peer
+	 * @throws IOException results when the CRDT cannot be encoded or decoded, which fails the test
+	 */
+	@Test
+	public void testMerge() throws IOException {
+		Materialization test = new Materialization();
+		test.testMerge();
+	}
+	
+	/**
+	 * Test synchronizing replicas by exchanging the deltas of operations each lacks
+	 * @throws IOException results when a delta cannot be encoded or decoded, which fails the test
+	 */
+	@Test
+	public void testDelta() throws IOException {
+		Materialization test = new Materialization();
+		test.testDelta();
+	}
+	
+	/**
+	 * Test the Merkle digest of the operations and locating where replicas diverge
+	 */
+	@Test
+	public void testDigest() {
+		Materialization test = new Materialization();
+		test.testDigest();
+	}
+	
+	/**
+	 * Test the Merkle digest root of a fixed set of operations is the same in every JVM
+	 * @throws IOException The patches could not be parsed
+	 */
+	@Test
+	public void testDigestRoot() throws IOException {
+		Materialization test = new Materialization();
+		test.testDigestRoot();
+	}
+	
+	/**
+	 * Test the in place replay engine against applying each JSON Patch with Operation.processOperation
+	 */
+	@Test
+	public void testReplayEngine() {
+		Materialization test = new Materialization();
+		test.testReplayEngine();
+	}
+	
+	/**
+	 * Test the effective set the CRDT maintains as operations arrive agrees with the ADD set less the REMOVE set
+	 */
+	@Test
+	public void testEffectiveSet() {
+		Materialization test = new Materialization();
+		test.testEffectiveSet();
+	}
+	
+	/**
+	 * Test the copies of the ADD and REMOVE sets are independent of the CRDT, while the views of them are live and read only
+	 */
+	@Test
+	public void testSetAccess() {
+		Materialization test = new Materialization();
+		test.testSetAccess();
+	}
+	
+	/**
+	 * Test documents handed out by the CRDT do not share nodes with the checkpoints and Baseline it retains
+	 * @throws IOException results when an operation cannot be encoded, which fails the test
+	 */
+	@Test
+	public void testDocumentIsolation() throws IOException {
+		Materialization test = new Materialization();
+		test.testDocumentIsolation();
+	}
+	
+	/**
+	 * Measure the JSON Patch parsing saved across repeated replays of the CRDT document
+	 */
+	@Test
+	public void testReplayParsing() {
+		Materialization test = new Materialization();
+		test.testReplayParsing();
+	}
+}
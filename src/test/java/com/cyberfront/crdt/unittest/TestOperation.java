@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.Operation.OperationType;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * This contains a class used for performing unit tests on the ordering of operations.  Operations drawn from few timestamps,
+ * identifiers and patches, so that many of them tie on some of their fields, must be ordered as they were before the ordering was
+ * optimized, and must compare as equal exactly when equals() holds.
+ */
+public class TestOperation {
+	public static class Ordering extends AssessmentSupport {
+		/** Number of operations to compare pairwise in each trial */
+		private static final int OPERATION_COUNT = 96;
+		
+		/** Number of distinct timestamps the operations are drawn from */
+		private static final int TIMESTAMP_COUNT = 3;
+		
+		/** Number of distinct identifiers the operations are drawn from */
+		private static final int ID_COUNT = 3;
+		
+		/** Number of distinct generated patches the UPDATE operations are drawn from */
+		private static final int PATCH_COUNT = 4;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestOperation.Ordering.class);
+		
+		/**
+		 * The ordering of operations before it was optimized, which boxed each field and hashed the patch tree on every comparison
+		 */
+		private static final Comparator<Operation> BASELINE = (lhs, rhs) -> {
+			int rv = Long.compare(lhs.getTimestamp(), rhs.getTimestamp());
+			rv = 0 == rv ? ObjectUtils.compare(lhs.getType(), rhs.getType()) : rv;
+			rv = 0 == rv ? ObjectUtils.compare(lhs.getId(), rhs.getId()) : rv;
+			rv = 0 == rv ? ObjectUtils.compare(null == lhs.getOp() ? null : lhs.getOp().hashCode(), null == rhs.getOp() ? null : rhs.getOp().hashCode()) : rv;
+			return rv;
+		};
+		
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Ordering() {
+			super();
+		}
+		
+		/**
+		 * Generate a patch adding the given text at a fixed path.  Text with equal hash codes yields patches with equal hash codes.
+		 * @param text The text the patch adds
+		 * @return The patch
+		 */
+		private static JsonNode generateCollision(String text) {
+			ArrayNode rv = getMapper().createArrayNode();
+			rv.add(generateOperation(ADD, "/a", TextNode.valueOf(text)));
+			return rv;
+		}
+		
+		/**
+		 * Generate operations drawn from few timestamps, identifiers and patches, including two patches with equal hash codes
+		 * @return The operations generated
+		 */
+		private static List<Operation> generateOperations() {
+			List<UUID> ids = new ArrayList<>();
+			List<JsonNode> patches = new ArrayList<>();
+			List<Operation> rv = new ArrayList<>();
+			
+			for (int i = 0; i < ID_COUNT; ++i) {
+				ids.add(UUID.randomUUID());
+			}
+			
+			for (int i = 0; i < PATCH_COUNT; ++i) {
+				patches.add(generateOperations(2, 0.25, 0.25, 0.25, 0.25));
+			}
+			
+			patches.add(generateCollision("Aa"));
+			patches.add(generateCollision("BB"));
+			
+			for (int i = 0; i < OPERATION_COUNT; ++i) {
+				OperationType type = OperationType.values()[Support.getRandom().nextInt(OperationType.values().length)];
+				UUID id = ids.get(Support.getRandom().nextInt(ids.size()));
+				long timestamp = Support.getRandom().nextInt(TIMESTAMP_COUNT);
+				JsonNode patch = OperationType.UPDATE == type ? patches.get(Support.getRandom().nextInt(patches.size())).deepCopy() : null;
+				
+				rv.add(new Operation(id, type, patch, timestamp));
+			}
+			
+			return rv;
+		}
+		
+		/**
+		 * Test every pair of operations is ordered as the baseline orders it wherever the baseline distinguishes them, that the
+		 * ordering is antisymmetric, and that operations compare as equal exactly when they are equal
+		 */
+		public void test() {
+			logger.info("\n** TestOperation.Ordering.test: {\"count\":" + this.getTrialCount() + ", \"operationCount\":" + OPERATION_COUNT + "}");
+			
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				List<Operation> ops = generateOperations();
+				long baselineTies = 0;
+				
+				for (Operation lhs : ops) {
+					for (Operation rhs : ops) {
+						int expected = Integer.signum(BASELINE.compare(lhs, rhs));
+						int actual = Integer.signum(lhs.compareTo(rhs));
+						
+						if (0 != expected) {
+							assertEquals(expected, actual, "Ordering differs from the baseline: " + lhs + " / " + rhs);
+						} else if (!lhs.equals(rhs)) {
+							++baselineTies;
+						}
+						
+						assertEquals(-actual, Integer.signum(rhs.compareTo(lhs)), "Ordering not antisymmetric: " + lhs + " / " + rhs);
+						assertEquals(lhs.equals(rhs), 0 == actual, "Ordering disagrees with equals: " + lhs + " / " + rhs);
+					}
+				}
+				
+				assertEquals(new HashSet<>(ops).size(), new TreeSet<>(ops).size(), "Sorted set dropped distinct operations: ");
+				
+				UUID id = UUID.randomUUID();
+				Operation aa = new Operation(id, OperationType.UPDATE, generateCollision("Aa"), 0L);
+				Operation bb = new Operation(id, OperationType.UPDATE, generateCollision("BB"), 0L);
+				NavigableSet<Operation> collided = new TreeSet<>();
+				collided.add(aa);
+				collided.add(bb);
+				
+				assertEquals(aa.hashCode(), bb.hashCode(), "Patches chosen to collide do not: ");
+				assertNotEquals(0, aa.compareTo(bb), "Operations with colliding patches compare as equal: ");
+				assertTrue(collided.contains(aa) && collided.contains(bb) && 2 == collided.size(), "Operation with colliding patch dropped: ");
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"baselineTies\":" + baselineTies + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test the ordering of operations agrees with the baseline ordering and with equals()
+	 */
+	@Test
+	public void testOrdering() {
+		Ordering test = new Ordering();
+		test.test();
+	}
+}
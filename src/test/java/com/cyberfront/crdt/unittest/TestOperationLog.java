@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.log.OperationLog;
+import com.cyberfront.crdt.log.OperationLog.SyncPolicy;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * This contains a class used for performing unit tests on the operation log.  Operations pushed to a CRDTManager are logged, and
+ * a second CRDTManager rebuilt from the log must hold the same operations and document, including after the log is damaged by a
+ * torn or corrupted final record.
+ */
+public class TestOperationLog {
+	public static class Logging extends AssessmentSupport {
+		/** Constant defining the number of states to use in the testing */
+		private static final long STATE_COUNT = 256L;
+		
+		/** Probability of rejecting a given UPDATE operation */
+		private static final double REJECTION_PROBABILITY = 0.10d;
+		
+		/** Time between consecutive operations */
+		private static final long TIMESTAMP_STEP = 10L;
+		
+		/** Segment size small enough that the log spans several segments */
+		private static final long SEGMENT_SIZE = 1024L;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestOperationLog.Logging.class);
+
+		/**
+		 * The Harness class exposes delivery of operation managers to the CRDT being tested
+		 */
+		private static class Harness extends CRDTManager {
+			/**
+			 * Deliver the operation manager to the CRDT 
+			 * @param mgr The operation manager to deliver
+			 */
+			public void deliver(OperationManager mgr) {
+				this.push(mgr);
+			}
+		}
+		
+		/** Number of states to prepare for the testing suite */
+		private final long stateCount;
+
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Logging() {
+			super();
+			this.stateCount = STATE_COUNT;
+		}
+
+		/**
+		 * Constructor to deliberately initialize each field to the associated values provided
+		 * @param stateCount The number of state transitions for the test
+		 * @param trialCount Trial count to use for the test activity
+		 * @param abbreviatedFactor Abbreviation factor to use the basis of this CreateTest instance when the abbreviated flag is set
+		 * @param stressedFactor Stressed factor to use when the the stressed flag is set
+		 * @param abbreviated Abbreviated flag which indicates when to divide different test parameters by the abbreviatedFactor
+		 * @param stressed Stressed flag which indicates when to multiply different test parameters by the stressedFactor
+		 */
+		public Logging(long stateCount, long trialCount, long abbreviatedFactor, long stressedFactor, boolean abbreviated, boolean stressed) {
+			super(trialCount, abbreviatedFactor, stressedFactor, abbreviated, stressed);
+			this.stateCount = stateCount;
+		}
+
+		/**
+		 * Get the number of state transitions for this test suite
+		 * @return The number of state transition for this test suite
+		 */
+		public long getStateCount() {
+			return this.stateCount * this.getStressedFactor() / this.getAbbreviatedFactor();
+		}
+
+		/**
+		 * Generate the operation managers for a CREATE, a sequence of UPDATE operations, some of them rejected, and a DELETE
+		 * @return The list of operation managers in timestamp order
+		 */
+		private List<OperationManager> generateManagers() {
+			List<OperationManager> rv = new ArrayList<>();
+			Collection<AbstractDataType> objects = generateObjectSequence(this.getStateCount(), 0.1);
+			long timestamp = 0;
+
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateCreate(timestamp)));
+			
+			for (JsonNode diff : generateDifferenceSequence(generateJsonSequence(objects))) {
+				timestamp += TIMESTAMP_STEP;
+				Operation update = new Operation(diff, timestamp);
+				rv.add(new OperationManager(StatusType.PENDING, update));
+				
+				if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+					rv.add(new OperationManager(StatusType.REJECTED, update));
+				}
+			}
+			
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateDelete(timestamp + TIMESTAMP_STEP)));
+
+			return rv;
+		}
+		
+		/**
+		 * Open the log in the given directory with the sync policy and segment size used for testing
+		 * @param directory The directory holding the log
+		 * @param policy The sync policy to use
+		 * @return The log opened
+		 * @throws IOException results when the log cannot be opened
+		 */
+		private static OperationLog open(Path directory, SyncPolicy policy) throws IOException {
+			OperationLog rv = new OperationLog(directory);
+			rv.setSyncPolicy(policy);
+			rv.setSegmentSize(SEGMENT_SIZE);
+			return rv;
+		}
+		
+		/**
+		 * Rebuild a CRDTManager from the log in the given directory and compare it with the expected one
+		 * @param directory The directory holding the log
+		 * @param expected The CRDTManager the rebuilt one must match
+		 * @return A new harness, recovered from the log and still attached to it
+		 * @throws IOException results when the log cannot be read
+		 */
+		private static Harness assessRecovery(Path directory, CRDTManager expected) throws IOException {
+			Harness rv = new Harness();
+			rv.recover(open(directory, SyncPolicy.PER_OPERATION));
+			
+			assertEquals(expected.getCrdt().copyAddSet(), rv.getCrdt().copyAddSet(), "Recovered ADD set mismatch: ");
+			assertEquals(expected.getCrdt().copyRemSet(), rv.getCrdt().copyRemSet(), "Recovered REMOVE set mismatch: ");
+			assertEquals(expected.getCrdt().getDocument(), rv.getCrdt().getDocument(), "Recovered document mismatch: ");
+			
+			return rv;
+		}
+		
+		/**
+		 * Append bytes to the last segment of the log, as a crash part way through writing a record would
+		 * @param directory The directory holding the log
+		 * @param bytes The bytes to append
+		 * @throws IOException results when the segment cannot be written
+		 */
+		private static void appendToLastSegment(Path directory, byte[] bytes) throws IOException {
+			try (FileChannel channel = FileChannel.open(lastSegment(directory), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+				channel.write(ByteBuffer.wrap(bytes));
+			}
+		}
+		
+		/**
+		 * Retrieve the last segment of the log 
+		 * @param directory The directory holding the log
+		 * @return The last segment of the log
+		 * @throws IOException results when the directory cannot be read
+		 */
+		private static Path lastSegment(Path directory) throws IOException {
+			try (Stream<Path> segments = Files.list(directory)) {
+				List<Path> sorted = segments.sorted().collect(Collectors.toList());
+				return sorted.get(sorted.size() - 1);
+			}
+		}
+		
+		/**
+		 * Delete the directory holding the log and its segments
+		 * @param directory The directory to delete
+		 * @throws IOException results when the directory cannot be deleted
+		 */
+		private static void delete(Path directory) throws IOException {
+			try (Stream<Path> paths = Files.walk(directory)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(path);
+				}
+			}
+		}
+
+		/**
+		 * Test a CRDTManager rebuilt from its operation log matches the original, under each sync policy, after the final record is
+		 * torn, and after the final record is corrupted 
+		 * @throws IOException results when the log cannot be written or read, which fails the test
+		 */
+		public void test() throws IOException {
+			logger.info("\n** TestOperationLog.Logging.test: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				SyncPolicy policy = SyncPolicy.values()[trial % SyncPolicy.values().length];
+				Path directory = Files.createTempDirectory("operation-log");
+				
+				try {
+					List<OperationManager> managers = this.generateManagers();
+					OperationManager last = managers.remove(managers.size() - 1);
+					Harness original = new Harness();
+					Harness expected = new Harness();
+					
+					original.recover(open(directory, policy));
+					for (OperationManager mgr : managers) {
+						original.deliver(mgr);
+						expected.deliver(mgr);
+					}
+					original.getLog().close();
+					
+					assertTrue(1 < original.getLog().getSegmentCount(), "Log did not span several segments: ");
+					
+					appendToLastSegment(directory, new byte[] { 0, 0, 1, 0, 1, 2, 3, 4, 5 });
+					Harness recovered = assessRecovery(directory, original);
+					
+					recovered.deliver(last);
+					expected.deliver(last);
+					recovered.getLog().close();
+					
+					long size = Files.size(lastSegment(directory));
+					try (FileChannel channel = FileChannel.open(lastSegment(directory), StandardOpenOption.WRITE)) {
+						channel.write(ByteBuffer.wrap(new byte[] { 0x55 }), size - 1);
+					}
+					
+					Harness corrupted = new Harness();
+					corrupted.recover(open(directory, SyncPolicy.PER_OPERATION));
+					corrupted.getLog().close();
+					
+					assertEquals(expected.getCrdt().getAddCount() - 1, corrupted.getCrdt().getAddCount(), "Corrupted final record not dropped: ");
+					assertTrue(!corrupted.getCrdt().isDeleted(), "Corrupted final record delivered: ");
+					
+					logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"policy\":\"" + policy + "\", \"records\":" +
+							(managers.size() + 1) + ", \"segments\":" + recovered.getLog().getSegmentCount() + "}");
+				} finally {
+					delete(directory);
+				}
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test recovery of a CRDTManager from its operation log 
+	 * @throws IOException results when the log cannot be written or read, which fails the test
+	 */
+	@Test
+	public void testOperationLog() throws IOException {
+		Logging test = new Logging();
+		test.test();
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2018 Cybernetic Frontiers LLC
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ */
+package com.cyberfront.crdt.unittest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Test;
+
+import com.cyberfront.crdt.CRDTManager;
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.OperationManager;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
+import com.cyberfront.crdt.sample.data.AbstractDataType;
+import com.cyberfront.crdt.store.MappedSegmentStore;
+import com.cyberfront.crdt.support.Support;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * This contains a class used for performing unit tests on archiving operations to the mapped segment store.  A CRDTManager whose
+ * older UPDATE operations are archived must hold the same operations and documents as one which is not, both immediately and after
+ * further operations arrive, including operations landing before the archive horizon and rejections of archived operations.
+ */
+public class TestSegmentStore {
+	public static class Archive extends AssessmentSupport {
+		/** Constant defining the number of states to use in the testing */
+		private static final long STATE_COUNT = 256L;
+		
+		/** Probability of rejecting a given UPDATE operation */
+		private static final double REJECTION_PROBABILITY = 0.10d;
+		
+		/** Time between consecutive operations */
+		private static final long TIMESTAMP_STEP = 10L;
+		
+		/** Segment size small enough that the store spans several segments */
+		private static final int SEGMENT_SIZE = 1024;
+		
+		/** Checkpoint interval small enough that the archived history holds several checkpoints */
+		private static final int CHECKPOINT_INTERVAL = 4;
+
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestSegmentStore.Archive.class);
+		
+		/** Mapper used to compare the JSON form of the CRDTs */
+		private static final ObjectMapper mapper = new ObjectMapper();
+
+		/**
+		 * The Harness class exposes delivery of operation managers to the CRDT being tested
+		 */
+		private static class Harness extends CRDTManager {
+			/**
+			 * Instantiate a harness whose CRDT records checkpoints at the interval used for testing
+			 */
+			public Harness() {
+				this.getCrdt().setCheckpointInterval(CHECKPOINT_INTERVAL);
+			}
+			
+			/**
+			 * Deliver the operation manager to the CRDT 
+			 * @param mgr The operation manager to deliver
+			 */
+			public void deliver(OperationManager mgr) {
+				this.push(mgr);
+			}
+		}
+		
+		/** Number of states to prepare for the testing suite */
+		private final long stateCount;
+
+		/**
+		 * Default constructor which initialized fields to their default values
+		 */
+		public Archive() {
+			super();
+			this.stateCount = STATE_COUNT;
+		}
+
+		/**
+		 * Constructor to deliberately initialize each field to the associated values provided
+		 * @param stateCount The number of state transitions for the test
+		 * @param trialCount Trial count to use for the test activity
+		 * @param abbreviatedFactor Abbreviation factor to use the basis of this CreateTest instance when the abbreviated flag is set
+		 * @param stressedFactor Stressed factor to use when the the stressed flag is set
+		 * @param abbreviated Abbreviated flag which indicates when to divide different test parameters by the abbreviatedFactor
+		 * @param stressed Stressed flag which indicates when to multiply different test parameters by the stressedFactor
+		 */
+		public Archive(long stateCount, long trialCount, long abbreviatedFactor, long stressedFactor, boolean abbreviated, boolean stressed) {
+			super(trialCount, abbreviatedFactor, stressedFactor, abbreviated, stressed);
+			this.stateCount = stateCount;
+		}
+
+		/**
+		 * Get the number of state transitions for this test suite
+		 * @return The number of state transition for this test suite
+		 */
+		public long getStateCount() {
+			return this.stateCount * this.getStressedFactor() / this.getAbbreviatedFactor();
+		}
+
+		/**
+		 * Generate the operation managers for a CREATE and a sequence of UPDATE operations, some of them rejected
+		 * @return The list of operation managers in timestamp order
+		 */
+		private List<OperationManager> generateManagers() {
+			List<OperationManager> rv = new ArrayList<>();
+			Collection<AbstractDataType> objects = generateObjectSequence(this.getStateCount(), 0.1);
+			long timestamp = 0;
+
+			rv.add(new OperationManager(StatusType.APPROVED, CRDTManager.generateCreate(timestamp)));
+			
+			for (JsonNode diff : generateDifferenceSequence(generateJsonSequence(objects))) {
+				timestamp += TIMESTAMP_STEP;
+				Operation update = new Operation(diff, timestamp);
+				rv.add(new OperationManager(StatusType.PENDING, update));
+				
+				if (Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+					rv.add(new OperationManager(StatusType.REJECTED, update));
+				}
+			}
+			
+			return rv;
+		}
+		
+		/**
+		 * Compare the operations, documents and JSON form of a CRDTManager with archived operations against one without
+		 * @param expected The CRDTManager without archived operations
+		 * @param actual The CRDTManager with archived operations
+		 * @param horizon The archive horizon
+		 */
+		private static void assessEquivalence(CRDTManager expected, CRDTManager actual, long horizon) {
+			assertEquals(expected.getCrdt().copyAddSet(), actual.getCrdt().copyAddSet(), "Archived ADD set mismatch: ");
+			assertEquals(expected.getCrdt().copyRemSet(), actual.getCrdt().copyRemSet(), "Archived REMOVE set mismatch: ");
+			assertEquals(expected.getCrdt().getDocument(), actual.getCrdt().getDocument(), "Archived document mismatch: ");
+			assertEquals(expected.getCrdt().getInvalidOperations(), actual.getCrdt().getInvalidOperations(), "Archived invalid operations mismatch: ");
+			assertEquals(expected.getCrdt().getDocument(horizon / 2), actual.getCrdt().getDocument(horizon / 2), "Archived historical document mismatch: ");
+			assertEquals(mapper.valueToTree(expected.getCrdt()), mapper.valueToTree(actual.getCrdt()), "Archived JSON form mismatch: ");
+		}
+		
+		/**
+		 * Count the archived operations in the ADD and REMOVE sets of a CRDTManager
+		 * @param mgr The CRDTManager to inspect
+		 * @return The number of distinct archived operations in the ADD and REMOVE sets
+		 */
+		private static long countArchived(CRDTManager mgr) {
+			Collection<Operation> operations = new TreeSet<>(mgr.getCrdt().copyAddSet());
+			operations.addAll(mgr.getCrdt().copyRemSet());
+			
+			return operations.stream().filter(Operation::isArchived).count();
+		}
+		
+		/**
+		 * Delete the directory holding the store and its segments
+		 * @param directory The directory to delete
+		 * @throws IOException results when the directory cannot be deleted
+		 */
+		private static void delete(Path directory) throws IOException {
+			try (Stream<Path> paths = Files.walk(directory)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(path);
+				}
+			}
+		}
+
+		/**
+		 * Test a CRDTManager whose older UPDATE operations are archived matches one which is not, before and after further operations
+		 * arrive in random order, including operations before the horizon and rejections of archived operations
+		 * @throws IOException results when the store cannot be written or read, which fails the test
+		 */
+		public void test() throws IOException {
+			logger.info("\n** TestSegmentStore.Archive.test: {\"count\":" + this.getTrialCount() + ", \"stateCount\":" + this.getStateCount()+ "}");
+
+			for (int trial=0; trial<this.getTrialCount(); ++trial) {
+				Path directory = Files.createTempDirectory("segment-store");
+				
+				try (MappedSegmentStore store = new MappedSegmentStore(directory, SEGMENT_SIZE)) {
+					List<OperationManager> managers = this.generateManagers();
+					List<OperationManager> early = new ArrayList<>();
+					List<OperationManager> late = new ArrayList<>();
+					long horizon = managers.get(managers.size() - 1).getOperation().getTimestamp() / 2;
+					Harness archived = new Harness();
+					Harness expected = new Harness();
+					
+					for (OperationManager mgr : managers) {
+						(Support.getRandom().nextDouble() < 0.75 ? early : late).add(mgr);
+					}
+					
+					for (OperationManager mgr : early) {
+						archived.deliver(mgr);
+						expected.deliver(mgr);
+					}
+					
+					long count = archived.archive(horizon, store);
+					
+					assertTrue(0 < count, "No operations archived: ");
+					assertEquals(count, countArchived(archived), "Archived operation count mismatch: ");
+					assessEquivalence(expected, archived, horizon);
+					
+					for (OperationManager mgr : early) {
+						if (mgr.getOperation().isUpdate() && mgr.getOperation().getTimestamp() <= horizon && Support.getRandom().nextDouble() < REJECTION_PROBABILITY) {
+							late.add(new OperationManager(StatusType.REJECTED, mgr.getOperation()));
+						}
+					}
+					
+					Collections.shuffle(late, Support.getRandom());
+					for (OperationManager mgr : late) {
+						archived.deliver(mgr);
+						expected.deliver(mgr);
+					}
+					
+					assessEquivalence(expected, archived, horizon);
+					
+					logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"archived\":" + count + ", \"late\":" + late.size() +
+							", \"segments\":" + store.getSegmentCount() + ", \"bytes\":" + store.getSize() + "}");
+				} finally {
+					delete(directory);
+				}
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+	
+	/**
+	 * Test archiving the history of a CRDTManager to the mapped segment store 
+	 * @throws IOException results when the store cannot be written or read, which fails the test
+	 */
+	@Test
+	public void testSegmentStore() throws IOException {
+		Archive test = new Archive();
+		test.test();
+	}
+}
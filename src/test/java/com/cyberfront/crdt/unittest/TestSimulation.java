@@ -22,23 +22,39 @@
  */
 package com.cyberfront.crdt.unittest;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.jupiter.api.Test;
 
+import com.cyberfront.crdt.operation.Operation;
+import com.cyberfront.crdt.operation.Operation.OperationType;
+import com.cyberfront.crdt.operation.OperationManager.StatusType;
 import com.cyberfront.crdt.sample.data.AbstractDataType;
 import com.cyberfront.crdt.sample.simulation.Executive;
+import com.cyberfront.crdt.sample.simulation.HeapScheduler;
+import com.cyberfront.crdt.sample.simulation.Message;
+import com.cyberfront.crdt.sample.simulation.MessageScheduler;
 import com.cyberfront.crdt.sample.simulation.Node;
 import com.cyberfront.crdt.sample.simulation.SimCRDTManager;
+import com.cyberfront.crdt.sample.simulation.SimOperationManager;
+import com.cyberfront.crdt.sample.simulation.TimingWheelScheduler;
+import com.cyberfront.crdt.support.Support;
 import com.cyberfront.crdt.unittest.AssessmentSupport;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fge.jsonpatch.diff.JsonDiff;	// Use this with jsonpatch
@@ -134,6 +150,21 @@ public class TestSimulation {
 
 		/** Flag set to check the content consistency of CRDT objects on all nodes */
 		private boolean assessValidity;
+		
+		/** Number of worker threads to run the simulation with; one runs it sequentially */
+		private int workerCount = 1;
+		
+		/** Minimum delay in delivering a message from one node to another */
+		private long minimumDelay = Executive.DEFAULT_MINIMUM_DELAY;
+		
+		/** Number of events between rounds of replica acknowledgements, which compact the CRDTs; zero disables them */
+		private long stabilityInterval = 0;
+		
+		/** Seed from which to run the simulation, or null to continue from the current random number generator */
+		private Long seed = null;
+		
+		/** Summary of the final state of the last trial run, which is the same for each run from the same seed */
+		private String fingerprint = null;
 
 		/**
 		 * Default constructor which sets all of the fields to the defaults values specified 
@@ -371,6 +402,101 @@ public class TestSimulation {
 			this.assessOperationCountConsistency = assessOperationCountConsistency;
 		}
 		
+		/**
+		 * Get the number of worker threads to run the simulation with
+		 * @return The number of worker threads
+		 */
+		public int getWorkerCount() {
+			return this.workerCount;
+		}
+
+		/**
+		 * Set the number of worker threads to run the simulation with
+		 * @param workerCount The number of worker threads; one runs the simulation sequentially
+		 */
+		public void setWorkerCount(int workerCount) {
+			this.workerCount = workerCount;
+		}
+		
+		/**
+		 * Get the minimum delay in delivering a message from one node to another
+		 * @return The minimum delay in delivering a message
+		 */
+		public long getMinimumDelay() {
+			return this.minimumDelay;
+		}
+
+		/**
+		 * Set the minimum delay in delivering a message from one node to another, which bounds the windows of parallel execution
+		 * @param minimumDelay The minimum delay in delivering a message
+		 */
+		public void setMinimumDelay(long minimumDelay) {
+			this.minimumDelay = minimumDelay;
+		}
+		
+		/**
+		 * Get the number of events between rounds of replica acknowledgements, which compact the CRDTs
+		 * @return The number of events between rounds of acknowledgements; zero when they are disabled
+		 */
+		public long getStabilityInterval() {
+			return this.stabilityInterval;
+		}
+
+		/**
+		 * Set the number of events between rounds of replica acknowledgements, which compact the CRDTs
+		 * @param stabilityInterval The number of events between rounds of acknowledgements; zero disables them
+		 */
+		public void setStabilityInterval(long stabilityInterval) {
+			this.stabilityInterval = stabilityInterval;
+		}
+		
+		/**
+		 * Get the seed from which to run the simulation
+		 * @return The seed, or null to continue from the current random number generator
+		 */
+		public Long getSeed() {
+			return this.seed;
+		}
+
+		/**
+		 * Set the seed from which to run the simulation
+		 * @param seed The seed, or null to continue from the current random number generator
+		 */
+		public void setSeed(Long seed) {
+			this.seed = seed;
+		}
+		
+		/**
+		 * Get the summary of the final state of the last trial run, consisting of the final timestamp and the value of every
+		 * object on every node
+		 * @return The summary of the final state of the last trial
+		 */
+		public String getFingerprint() {
+			return this.fingerprint;
+		}
+		
+		/**
+		 * Summarize the final state of the simulation by the final timestamp and the value of every object on every node, in order
+		 * of their identifiers
+		 * @return The summary of the final state of the simulation
+		 */
+		private String fingerprint() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"timestamp\":" + Executive.getExecutive().getTimestamp() + ",\"nodes\":[");
+			String delimiter = "";
+			
+			for (Node node : new TreeMap<>(Executive.getExecutive().getNodes()).values()) {
+				for (UUID id : new TreeSet<>(node.getDatastore().keySet())) {
+					sb.append(delimiter + "{\"node\":\"" + node.getId() + "\",\"object\":\"" + id + "\",\"value\":" + 
+							getMapper().valueToTree(node.getDatastore().get(id).getObject()) + "}");
+					delimiter = ",";
+				}
+			}
+			
+			sb.append("]}");
+			return sb.toString();
+		}
+		
 		/**
 		 * Perform the count consistency check to ensure each node has the same number of elements, which should
 		 * be equal to the total number of CreateOperations which were performed.
@@ -446,7 +572,7 @@ public class TestSimulation {
 			assertTrue( opCount == addCount - remCount, "crdt has unmatch remove operations: " + crdt.toString());
 			
 			// If all of the operations have been rejected, then just return 
-			if (opCount == 0) {
+			if (opCount == 0 && null == crdt.getCrdt().getBaseline()) {
 				return;
 			}
 			
@@ -575,6 +701,10 @@ public class TestSimulation {
 							",\"nodeCount\":" + this.getNodeCount() + 
 							",\"rejectProbability\":" + this.getRejectionProbability() + 
 							",\"updateProbability\":" + this.getUpdateProbability() + 
+							",\"workerCount\":" + this.getWorkerCount() + 
+							",\"minimumDelay\":" + this.getMinimumDelay() + 
+							",\"stabilityInterval\":" + this.getStabilityInterval() + 
+							",\"seed\":" + (null == this.getSeed() ? Support.getSeed() : this.getSeed()) + 
 							"}");
 			Executive executive = Executive.getExecutive();
 			String crud = "";
@@ -584,6 +714,10 @@ public class TestSimulation {
 			crud += updateCount > 0 ? 'U' : 'x';
 			crud += deleteCount > 0 ? 'D' : 'x';
 			
+			if (null != this.getSeed()) {
+				Support.setSeed(this.getSeed());
+			}
+			
 			for (long trial=0; trial<this.getTrialCount(); ++trial) {
 				logger.info("\n   simulateTest: " + crud + "; trial " + (trial+1) + " of " + this.getTrialCount() + ".");
 				
@@ -595,10 +729,15 @@ public class TestSimulation {
 				executive.setNodeCount(this.getNodeCount());
 				executive.setRejectProbability(this.getRejectionProbability());
 				executive.setUpdateProbability(this.getUpdateProbability());
+				executive.setWorkerCount(this.getWorkerCount());
+				executive.setMinimumDelay(this.getMinimumDelay());
+				executive.setStabilityInterval(this.getStabilityInterval());
 				
+				long start = System.nanoTime();
 				executive.execute();
-				logger.info("      Final Simulation Timestamp: " + executive.getTimestamp());
+				logger.info("      Final Simulation Timestamp: " + executive.getTimestamp() + "; elapsed " + ((System.nanoTime() - start) / 1000000) + " ms");
 				
+				this.fingerprint = this.fingerprint();
 				assessSimulation();
 			}
 			
@@ -606,6 +745,108 @@ public class TestSimulation {
 		}
 	}
 
+	/**
+	 * The Scheduling class compares the schedulers which hold the messages pending delivery in the MessageRouter.  It runs the hold
+	 * model, in which a fixed number of messages are pending and each one delivered is replaced by another due a random delay later,
+	 * as when a node answers the messages it receives.
+	 */
+	public static class Scheduling extends AssessmentSupport {
+		/** Logger to use when displaying state information */
+		private static final Logger logger = LogManager.getLogger(TestSimulation.Scheduling.class);
+		
+		/** Number of messages pending delivery throughout the hold model */
+		private static final int PENDING_COUNT = 65536;
+		
+		/** Number of messages delivered and replaced by another */
+		private static final int HOLD_COUNT = 262144;
+		
+		/** Number of bits in the slot index of a wheel too small for the delays, so its messages often overflow into its heap */
+		private static final int SMALL_SLOT_BITS = 12;
+		
+		/**
+		 * Plan the delivery times of the messages of the hold model.  The first PENDING_COUNT are pending at the start, and each of
+		 * the rest replaces one delivered, with a delay after the delivery time of the message it replaces.
+		 * @return The delivery times of the messages in the order they are added
+		 */
+		private long[] plan() {
+			long[] rv = new long[PENDING_COUNT + HOLD_COUNT];
+			PriorityQueue<Long> pending = new PriorityQueue<>();
+			
+			for (int i = 0; i < rv.length; ++i) {
+				long now = i < PENDING_COUNT ? 0L : pending.poll();
+				rv[i] = now + Support.getRandom().nextInt((int) Executive.MAXIMUM_DELAY + 1);
+				pending.add(rv[i]);
+			}
+			
+			return rv;
+		}
+		
+		/**
+		 * Run the hold model with the given scheduler
+		 * @param scheduler The scheduler to hold the messages pending delivery
+		 * @param messages The messages in the order they are added
+		 * @param delivered The delivery times of the messages in the order they are delivered
+		 * @return The time taken to run the hold model in nanoseconds
+		 */
+		private long run(MessageScheduler scheduler, List<Message<AbstractDataType>> messages, long[] delivered) {
+			long start = System.nanoTime();
+			int count = 0;
+			
+			for (int i = 0; i < PENDING_COUNT; ++i) {
+				scheduler.add(messages.get(i));
+			}
+			
+			for (int i = PENDING_COUNT; i < messages.size(); ++i) {
+				delivered[count++] = scheduler.poll().getDeliveryTime();
+				scheduler.add(messages.get(i));
+			}
+			
+			while (!scheduler.isEmpty()) {
+				delivered[count++] = scheduler.poll().getDeliveryTime();
+			}
+			
+			return System.nanoTime() - start;
+		}
+		
+		/**
+		 * Run the hold model with the heap and the timing wheel schedulers, ensuring both deliver every message in order of delivery
+		 * time, and report the time each takes
+		 */
+		public void test() {
+			logger.info("\n** TestSimulation.Scheduling.test: {\"trialCount\":" + this.getTrialCount() + ",\"pendingCount\":" + PENDING_COUNT +
+					",\"holdCount\":" + HOLD_COUNT + "}");
+			
+			for (long trial = 0; trial < this.getTrialCount(); ++trial) {
+				long[] times = this.plan();
+				int[] next = { 0 };
+				SimOperationManager<AbstractDataType> mgr = new SimOperationManager<>(StatusType.APPROVED, new Operation(OperationType.READ, 0L),
+						UUID.randomUUID(), AbstractDataType.class);
+				List<Message<AbstractDataType>> messages = Message.multicast(UUID.randomUUID(), Collections.nCopies(times.length, UUID.randomUUID()),
+						mgr, id -> times[next[0]++]);
+				
+				long[] expected = times.clone();
+				long[] heap = new long[times.length];
+				long[] wheel = new long[times.length];
+				long[] small = new long[times.length];
+				Arrays.sort(expected);
+				
+				long heapTime = this.run(new HeapScheduler(), messages, heap);
+				long wheelTime = this.run(new TimingWheelScheduler(), messages, wheel);
+				this.run(new TimingWheelScheduler(SMALL_SLOT_BITS), messages, small);
+				
+				assertArrayEquals(expected, heap, "Heap delivery order mismatch: ");
+				assertArrayEquals(expected, wheel, "Timing wheel delivery order mismatch: ");
+				assertArrayEquals(expected, small, "Overflowing timing wheel delivery order mismatch: ");
+				
+				logger.info("   trial " + (trial+1) + " of " + this.getTrialCount() + ": {\"messages\":" + times.length +
+						", \"heapMillis\":" + (heapTime / 1000000) + ", \"wheelMillis\":" + (wheelTime / 1000000) + "}");
+			}
+			
+			logger.info("   SUCCESS");
+		}
+	}
+
+
 	/**
 	 * This test will perform a qualitative assessment of the ability to perform create
 	 * operations on a CRDT and have those operations propagate across all the nodes in
@@ -656,6 +897,74 @@ public class TestSimulation {
 		test.test();
 	}
 
+	/**
+	 * This test will perform a qualitative assessment of running the simulation in parallel windows across several worker threads,
+	 * with every operation type, and have the operations propagate consistently across all the nodes
+	 */
+	@Test
+	public void testParallel() {
+		Simulation test = new Simulation();
+		test.setWorkerCount(4);
+		test.setMinimumDelay(256);
+		test.test();
+	}
+
+	/**
+	 * This test will perform a qualitative assessment of compacting each CRDT as the replicas acknowledge the operations they have
+	 * received, with every operation type, and have the operations propagate consistently across all the nodes
+	 */
+	@Test
+	public void testStability() {
+		Simulation test = new Simulation();
+		test.setStabilityInterval(64);
+		test.test();
+		
+		assertTrue(Executive.getExecutive().getNodes().values().stream()
+				.flatMap(node -> node.getDatastore().values().stream())
+				.anyMatch(crdt -> null != crdt.getCrdt().getBaseline()), "No CRDT compacted: ");
+	}
+
+	/**
+	 * This test will assess that a simulation run from a seed is replayed exactly, whether it is run sequentially or in parallel
+	 * windows, and however many worker threads the parallel windows are partitioned among
+	 */
+	@Test
+	public void testReplay() {
+		long seed = Support.getRandom().nextLong();
+		Simulation[] tests = new Simulation[4];
+		
+		for (int i = 0; i < tests.length; ++i) {
+			tests[i] = new Simulation();
+			tests[i].setCreateCount(64);
+			tests[i].setReadCount(128);
+			tests[i].setUpdateCount(256);
+			tests[i].setDeleteCount(8);
+			tests[i].setSeed(seed);
+		}
+		
+		tests[2].setWorkerCount(2);
+		tests[2].setMinimumDelay(256);
+		tests[3].setWorkerCount(4);
+		tests[3].setMinimumDelay(256);
+		
+		for (Simulation test : tests) {
+			test.test();
+		}
+		
+		assertEquals(tests[0].getFingerprint(), tests[1].getFingerprint(), "Sequential replay from seed " + seed + " diverged");
+		assertEquals(tests[2].getFingerprint(), tests[3].getFingerprint(), "Parallel replay from seed " + seed + " diverged");
+	}
+
+	/**
+	 * This test will compare the timing wheel scheduler of the MessageRouter against the heap it replaced, ensuring both deliver the
+	 * messages in order and reporting the time each takes
+	 */
+	@Test
+	public void testScheduling() {
+		Scheduling test = new Scheduling();
+		test.test();
+	}
+
 	/**
 	 * This test will perform a behavioral and stability assessment of the ability to perform create, read and update
 	 * operations on a CRDT and have those operations propagate across all the nodes in